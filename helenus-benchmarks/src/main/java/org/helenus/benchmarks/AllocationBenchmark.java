@@ -0,0 +1,45 @@
+package org.helenus.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the memory allocated by encoding a single entity into its batch
+ * of insertions and by decoding a single row into an entity. Run it through
+ * {@link #main(String[])} (or with {@code -prof gc}) - the allocation per
+ * operation is reported as {@code gc.alloc.rate.norm}, in bytes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AllocationBenchmark extends EntityManagerState {
+
+    private int next;
+
+    @Benchmark
+    public void encode() {
+        entityManager.persist(entities[next++ % ROWS]);
+    }
+
+    @Benchmark
+    public Object decode() {
+        return entityManager.getById(shape.getEntityClass(), ids[next++ % ROWS]);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(AllocationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .forks(1)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,60 @@
+package org.helenus.benchmarks;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.helenus.EntityManagerImpl;
+import org.helenus.validation.ValidationMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * An entity manager over the stubbed keyspace, seeded with rows of every
+ * shape. Benchmarks extend it to get the entity shape parameter and the
+ * seeded keys.
+ */
+@State(Scope.Benchmark)
+public class EntityManagerState {
+
+    public static final int ROWS = 100;
+
+    @Param({"NARROW", "WIDE", "SUPER", "PRIMITIVE"})
+    public Shape shape;
+
+    public StubCassandra cassandra;
+    public EntityManagerImpl entityManager;
+    public String[] ids;
+    public Object[] entities;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cassandra = new StubCassandra();
+        entityManager = new EntityManagerImpl(getEntityClasses());
+        entityManager.setHectorTemplate(cassandra.getHectorTemplate());
+        entityManager.setValidationMode(ValidationMode.NONE);
+
+        ids = new String[ROWS];
+        entities = new Object[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            ids[i] = "key-" + i;
+            entities[i] = shape.sample(ids[i]);
+        }
+
+        cassandra.setRecording(true);
+        for (Object entity : entities) {
+            entityManager.persist(entity);
+        }
+        cassandra.setRecording(false);
+    }
+
+    public static Set<Class<?>> getEntityClasses() {
+        Set<Class<?>> classes = new HashSet<Class<?>>();
+        for (Shape shape : Shape.values()) {
+            classes.add(shape.getEntityClass());
+        }
+        return classes;
+    }
+}
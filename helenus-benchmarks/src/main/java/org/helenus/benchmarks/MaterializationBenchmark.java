@@ -0,0 +1,41 @@
+package org.helenus.benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures loading entities - turning the returned rows into populated
+ * objects. Rows of regular column families are loaded with a single
+ * multiget of {@link #batchSize} keys. Super column families can't be
+ * multiget by getList, so they are loaded one by one with getById.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MaterializationBenchmark extends EntityManagerState {
+
+    @Param({"1", "20"})
+    public int batchSize;
+
+    private int next;
+
+    @Benchmark
+    public void load(Blackhole blackhole) {
+        int from = next;
+        next = (next + batchSize) % (ROWS - batchSize);
+        if (shape == Shape.SUPER) {
+            for (int i = from; i < from + batchSize; i++) {
+                blackhole.consume(entityManager.getById(shape.getEntityClass(), ids[i]));
+            }
+        } else {
+            blackhole.consume(entityManager.getList(shape.getEntityClass(),
+                    (Object[]) Arrays.copyOfRange(ids, from, from + batchSize)));
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package org.helenus.benchmarks;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.helenus.EntityManagerImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures building the mapping metadata of a single class - reading the
+ * annotations, resolving serializers and precomputing the column layout
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MetadataBenchmark {
+
+    @Param({"NARROW", "WIDE", "SUPER"})
+    public Shape shape;
+
+    @Benchmark
+    public EntityManagerImpl buildMetadata() {
+        return new EntityManagerImpl(Collections.<Class<?>>singleton(shape.getEntityClass()));
+    }
+}
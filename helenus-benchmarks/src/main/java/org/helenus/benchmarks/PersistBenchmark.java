@@ -0,0 +1,24 @@
+package org.helenus.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+/**
+ * Measures persisting a single entity - serializing its fields and building
+ * the batch of insertions. The stubbed keyspace discards the batch.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PersistBenchmark extends EntityManagerState {
+
+    private int next;
+
+    @Benchmark
+    public void persist() {
+        entityManager.persist(entities[next++ % ROWS]);
+    }
+}
@@ -0,0 +1,62 @@
+package org.helenus.benchmarks;
+
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import me.prettyprint.cassandra.model.Serializer;
+
+import org.helenus.serializers.SerializerRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the round trip of a key or column value through the serializer
+ * that the registry resolves for its type
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SerializationBenchmark {
+
+    @Param({"String", "Long", "Integer", "Date", "UUID"})
+    public String type;
+
+    private Serializer<Object> serializer;
+    private Object value;
+    private byte[] bytes;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        if (type.equals("String")) {
+            value = "a typical column value";
+        } else if (type.equals("Long")) {
+            value = 1234567890123L;
+        } else if (type.equals("Integer")) {
+            value = 1234567;
+        } else if (type.equals("Date")) {
+            value = new Date(1300000000000L);
+        } else {
+            value = UUID.fromString("3f2504e0-4f89-11d3-9a0c-0305e82c3301");
+        }
+        serializer = (Serializer<Object>) new SerializerRegistry().getSerializer(value.getClass());
+        bytes = serializer.toBytes(value);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.toBytes(value);
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return serializer.fromBytes(bytes);
+    }
+}
@@ -0,0 +1,51 @@
+package org.helenus.benchmarks;
+
+import org.helenus.benchmarks.entities.NarrowEntity;
+import org.helenus.benchmarks.entities.PrimitiveEntity;
+import org.helenus.benchmarks.entities.SuperColumnEntity;
+import org.helenus.benchmarks.entities.WideEntity;
+
+/**
+ * The entity shapes the benchmarks are run with
+ */
+public enum Shape {
+    NARROW(NarrowEntity.class) {
+        @Override
+        public Object sample(String id) {
+            return NarrowEntity.sample(id);
+        }
+    },
+    WIDE(WideEntity.class) {
+        @Override
+        public Object sample(String id) {
+            return WideEntity.sample(id);
+        }
+    },
+    SUPER(SuperColumnEntity.class) {
+        @Override
+        public Object sample(String id) {
+            return SuperColumnEntity.sample(id);
+        }
+    },
+    PRIMITIVE(PrimitiveEntity.class) {
+        @Override
+        public Object sample(String id) {
+            return PrimitiveEntity.sample(id);
+        }
+    };
+
+    private final Class<?> entityClass;
+
+    private Shape(Class<?> entityClass) {
+        this.entityClass = entityClass;
+    }
+
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    /**
+     * Creates a fully populated entity of this shape with the given key
+     */
+    public abstract Object sample(String id);
+}
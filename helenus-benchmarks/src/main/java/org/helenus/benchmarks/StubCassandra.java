@@ -0,0 +1,229 @@
+package org.helenus.benchmarks;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import me.prettyprint.cassandra.model.ConfigurableConsistencyLevel;
+import me.prettyprint.cassandra.serializers.StringSerializer;
+import me.prettyprint.cassandra.service.BatchMutation;
+import me.prettyprint.cassandra.service.CassandraClient;
+import me.prettyprint.cassandra.service.CassandraClientPool;
+import me.prettyprint.cassandra.service.CassandraHost;
+import me.prettyprint.cassandra.service.Cluster;
+import me.prettyprint.cassandra.service.Keyspace;
+import me.prettyprint.cassandra.service.spring.HectorTemplate;
+import me.prettyprint.cassandra.service.spring.HectorTemplateImpl;
+
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.ColumnOrSuperColumn;
+import org.apache.cassandra.thrift.ColumnParent;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.Mutation;
+import org.apache.cassandra.thrift.SlicePredicate;
+import org.apache.cassandra.thrift.SuperColumn;
+
+/**
+ * An in-process stand-in for a Cassandra node, plugged below hector's
+ * client pool. Rows are kept in memory, so the benchmarks measure the
+ * mapping and serialization done by helenus and hector rather than the
+ * network and the server.
+ *
+ * Mutations are stored only while recording is on - the rows are seeded
+ * once, and persist benchmarks build and submit their batches without
+ * growing the store.
+ */
+public class StubCassandra implements InvocationHandler {
+
+    private static final String KEYSPACE = "bench";
+
+    // column family -> row key -> column (or super column) name -> Column / SuperColumn
+    private final Map<String, Map<ByteBuffer, TreeMap<ByteBuffer, Object>>> store =
+        new HashMap<String, Map<ByteBuffer, TreeMap<ByteBuffer, Object>>>();
+
+    private final CassandraClientPool pool;
+    private final CassandraClient client;
+    private final Keyspace keyspace;
+    private final CassandraHost host = new CassandraHost("localhost", 9160);
+    private final HectorTemplateImpl hectorTemplate;
+
+    private volatile boolean recording;
+
+    public StubCassandra() {
+        ClassLoader loader = getClass().getClassLoader();
+        pool = (CassandraClientPool) Proxy.newProxyInstance(loader, new Class<?>[] {CassandraClientPool.class}, this);
+        client = (CassandraClient) Proxy.newProxyInstance(loader, new Class<?>[] {CassandraClient.class}, this);
+        keyspace = (Keyspace) Proxy.newProxyInstance(loader, new Class<?>[] {Keyspace.class}, this);
+
+        Cluster cluster = new Cluster("bench", pool);
+        hectorTemplate = new HectorTemplateImpl(cluster, KEYSPACE, 1,
+                "org.apache.cassandra.locator.SimpleStrategy", new ConfigurableConsistencyLevel());
+        hectorTemplate.init();
+    }
+
+    public HectorTemplate getHectorTemplate() {
+        return hectorTemplate;
+    }
+
+    public void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        if (method.getDeclaringClass() == Object.class) {
+            if (name.equals("equals")) {
+                return proxy == args[0];
+            }
+            if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            return "StubCassandra(" + method.getDeclaringClass().getSimpleName() + ")";
+        }
+
+        // pool and client
+        if (name.equals("borrowClient")) {
+            return client;
+        }
+        if (name.equals("releaseClient") || name.equals("releaseKeyspace")) {
+            return null;
+        }
+        if (name.equals("getKeyspace")) {
+            return keyspace;
+        }
+        if (name.equals("getCassandraHost")) {
+            return host;
+        }
+
+        // keyspace
+        if (name.equals("getClient")) {
+            return client;
+        }
+        if (name.equals("getName")) {
+            return KEYSPACE;
+        }
+        if (name.equals("getConsistencyLevel")) {
+            return ConsistencyLevel.ONE;
+        }
+        if (name.equals("getSlice") || name.equals("getSuperSlice")) {
+            return getSlice(toBytes(args[0]), (ColumnParent) args[1], (SlicePredicate) args[2]);
+        }
+        if (name.equals("multigetSlice") || name.equals("multigetSuperSlice")) {
+            return multigetSlice((Collection<?>) args[0], (ColumnParent) args[1], (SlicePredicate) args[2]);
+        }
+        if (name.equals("batchMutate")) {
+            if (recording) {
+                store(args[0] instanceof BatchMutation ? getMutationMap((BatchMutation<?>) args[0]) : (Map<?, ?>) args[0]);
+            }
+            return null;
+        }
+        throw new UnsupportedOperationException("Not supported by the stub: " + method);
+    }
+
+    private byte[] toBytes(Object key) {
+        return key instanceof String ? StringSerializer.get().toBytes((String) key) : (byte[]) key;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private List getSlice(byte[] key, ColumnParent parent, SlicePredicate predicate) {
+        List result = new ArrayList();
+        TreeMap<ByteBuffer, Object> row = getRow(parent.getColumn_family(), key, false);
+        if (row == null) {
+            return result;
+        }
+        if (predicate.isSetColumn_names()) {
+            for (byte[] name : predicate.getColumn_names()) {
+                Object column = row.get(ByteBuffer.wrap(name));
+                if (column != null) {
+                    result.add(column);
+                }
+            }
+            return result;
+        }
+        int count = predicate.isSetSlice_range() ? predicate.getSlice_range().getCount() : Integer.MAX_VALUE;
+        for (Object column : row.values()) {
+            if (result.size() == count) {
+                break;
+            }
+            result.add(column);
+        }
+        return result;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private Map<byte[], List> multigetSlice(Collection<?> keys, ColumnParent parent, SlicePredicate predicate) {
+        Map<byte[], List> result = new LinkedHashMap<byte[], List>();
+        for (Object key : keys) {
+            byte[] keyBytes = toBytes(key);
+            result.put(keyBytes, getSlice(keyBytes, parent, predicate));
+        }
+        return result;
+    }
+
+    private synchronized TreeMap<ByteBuffer, Object> getRow(String columnFamily, byte[] key, boolean create) {
+        Map<ByteBuffer, TreeMap<ByteBuffer, Object>> rows = store.get(columnFamily);
+        if (rows == null) {
+            if (!create) {
+                return null;
+            }
+            rows = new HashMap<ByteBuffer, TreeMap<ByteBuffer, Object>>();
+            store.put(columnFamily, rows);
+        }
+        TreeMap<ByteBuffer, Object> row = rows.get(ByteBuffer.wrap(key));
+        if (row == null && create) {
+            row = new TreeMap<ByteBuffer, Object>();
+            rows.put(ByteBuffer.wrap(key), row);
+        }
+        return row;
+    }
+
+    private synchronized void store(Map<?, ?> mutationMap) {
+        for (Map.Entry<?, ?> rowEntry : mutationMap.entrySet()) {
+            byte[] key = toBytes(rowEntry.getKey());
+            for (Map.Entry<?, ?> cfEntry : ((Map<?, ?>) rowEntry.getValue()).entrySet()) {
+                TreeMap<ByteBuffer, Object> row = getRow((String) cfEntry.getKey(), key, true);
+                for (Object mutation : (List<?>) cfEntry.getValue()) {
+                    ColumnOrSuperColumn cosc = ((Mutation) mutation).getColumn_or_supercolumn();
+                    if (cosc == null) {
+                        // deletions are not needed by the benchmarks
+                        continue;
+                    }
+                    if (cosc.isSetColumn()) {
+                        row.put(ByteBuffer.wrap(cosc.getColumn().getName()), cosc.getColumn());
+                    } else {
+                        SuperColumn superColumn = cosc.getSuper_column();
+                        ByteBuffer superName = ByteBuffer.wrap(superColumn.getName());
+                        SuperColumn existing = (SuperColumn) row.get(superName);
+                        if (existing != null) {
+                            for (Column column : superColumn.getColumns()) {
+                                existing.getColumns().add(column);
+                            }
+                        } else {
+                            row.put(superName, superColumn);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private Map<?, ?> getMutationMap(BatchMutation<?> batchMutation) {
+        try {
+            Field field = BatchMutation.class.getDeclaredField("mutationMap");
+            field.setAccessible(true);
+            return (Map<?, ?>) field.get(batchMutation);
+        } catch (Exception ex) {
+            throw new IllegalStateException("Unable to read the batch mutation", ex);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.helenus.benchmarks.entities;
+
+import java.util.Date;
+
+import org.helenus.annotation.CassandraColumn;
+import org.helenus.annotation.CassandraColumnFamily;
+import org.helenus.annotation.CassandraKey;
+
+/**
+ * A typical entity with a handful of columns of different types
+ */
+@CassandraColumnFamily(name = "narrow")
+public class NarrowEntity {
+
+    @CassandraKey
+    private String id;
+
+    @CassandraColumn
+    private String name;
+
+    @CassandraColumn
+    private String email;
+
+    @CassandraColumn
+    private Long balance;
+
+    @CassandraColumn
+    private Integer logins;
+
+    @CassandraColumn
+    private Boolean active;
+
+    @CassandraColumn
+    private Date registered;
+
+    public static NarrowEntity sample(String id) {
+        NarrowEntity entity = new NarrowEntity();
+        entity.id = id;
+        entity.name = "name-" + id;
+        entity.email = id + "@example.com";
+        entity.balance = 1000L;
+        entity.logins = 42;
+        entity.active = Boolean.TRUE;
+        entity.registered = new Date(1300000000000L);
+        return entity;
+    }
+
+    public String getId() {
+        return id;
+    }
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,52 @@
+package org.helenus.benchmarks.entities;
+
+import org.helenus.annotation.CassandraColumn;
+import org.helenus.annotation.CassandraColumnFamily;
+import org.helenus.annotation.CassandraKey;
+
+/**
+ * An entity whose columns are all primitive numbers and flags
+ */
+@CassandraColumnFamily(name = "primitive")
+public class PrimitiveEntity {
+
+    @CassandraKey
+    private String id;
+
+    @CassandraColumn
+    private long balance;
+
+    @CassandraColumn
+    private int logins;
+
+    @CassandraColumn
+    private short level;
+
+    @CassandraColumn
+    private boolean active;
+
+    @CassandraColumn
+    private double score;
+
+    @CassandraColumn
+    private float rating;
+
+    public static PrimitiveEntity sample(String id) {
+        PrimitiveEntity entity = new PrimitiveEntity();
+        entity.id = id;
+        entity.balance = 1000L;
+        entity.logins = 42;
+        entity.level = 3;
+        entity.active = true;
+        entity.score = 98.5;
+        entity.rating = 4.5f;
+        return entity;
+    }
+
+    public String getId() {
+        return id;
+    }
+    public long getBalance() {
+        return balance;
+    }
+}
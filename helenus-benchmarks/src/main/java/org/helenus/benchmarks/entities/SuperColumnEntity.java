@@ -0,0 +1,56 @@
+package org.helenus.benchmarks.entities;
+
+import org.helenus.annotation.CassandraColumn;
+import org.helenus.annotation.CassandraColumnFamily;
+import org.helenus.annotation.CassandraKey;
+import org.helenus.annotation.CassandraSuperColumn;
+
+/**
+ * An entity stored as two super columns with three columns each
+ */
+@CassandraColumnFamily(name = "supercolumn")
+public class SuperColumnEntity {
+
+    @CassandraKey
+    private String id;
+
+    @CassandraSuperColumn(name = "home")
+    private String home;
+
+    @CassandraColumn(name = "street", targetSuperColumnField = "home")
+    private String homeStreet;
+
+    @CassandraColumn(name = "city", targetSuperColumnField = "home")
+    private String homeCity;
+
+    @CassandraColumn(name = "zip", targetSuperColumnField = "home")
+    private Integer homeZip;
+
+    @CassandraSuperColumn(name = "work")
+    private String work;
+
+    @CassandraColumn(name = "street", targetSuperColumnField = "work")
+    private String workStreet;
+
+    @CassandraColumn(name = "city", targetSuperColumnField = "work")
+    private String workCity;
+
+    @CassandraColumn(name = "zip", targetSuperColumnField = "work")
+    private Integer workZip;
+
+    public static SuperColumnEntity sample(String id) {
+        SuperColumnEntity entity = new SuperColumnEntity();
+        entity.id = id;
+        entity.homeStreet = "1 Home Street";
+        entity.homeCity = "Sofia";
+        entity.homeZip = 1000;
+        entity.workStreet = "2 Work Street";
+        entity.workCity = "Plovdiv";
+        entity.workZip = 4000;
+        return entity;
+    }
+
+    public String getId() {
+        return id;
+    }
+}
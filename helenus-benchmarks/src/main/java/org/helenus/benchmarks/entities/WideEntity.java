@@ -0,0 +1,154 @@
+package org.helenus.benchmarks.entities;
+
+import org.helenus.annotation.CassandraColumn;
+import org.helenus.annotation.CassandraColumnFamily;
+import org.helenus.annotation.CassandraKey;
+
+/**
+ * An entity with 32 string columns, to show how the mapping cost grows with
+ * the number of columns
+ */
+@CassandraColumnFamily(name = "wide")
+public class WideEntity {
+
+    @CassandraKey
+    private String id;
+
+    @CassandraColumn
+    private String column00;
+
+    @CassandraColumn
+    private String column01;
+
+    @CassandraColumn
+    private String column02;
+
+    @CassandraColumn
+    private String column03;
+
+    @CassandraColumn
+    private String column04;
+
+    @CassandraColumn
+    private String column05;
+
+    @CassandraColumn
+    private String column06;
+
+    @CassandraColumn
+    private String column07;
+
+    @CassandraColumn
+    private String column08;
+
+    @CassandraColumn
+    private String column09;
+
+    @CassandraColumn
+    private String column10;
+
+    @CassandraColumn
+    private String column11;
+
+    @CassandraColumn
+    private String column12;
+
+    @CassandraColumn
+    private String column13;
+
+    @CassandraColumn
+    private String column14;
+
+    @CassandraColumn
+    private String column15;
+
+    @CassandraColumn
+    private String column16;
+
+    @CassandraColumn
+    private String column17;
+
+    @CassandraColumn
+    private String column18;
+
+    @CassandraColumn
+    private String column19;
+
+    @CassandraColumn
+    private String column20;
+
+    @CassandraColumn
+    private String column21;
+
+    @CassandraColumn
+    private String column22;
+
+    @CassandraColumn
+    private String column23;
+
+    @CassandraColumn
+    private String column24;
+
+    @CassandraColumn
+    private String column25;
+
+    @CassandraColumn
+    private String column26;
+
+    @CassandraColumn
+    private String column27;
+
+    @CassandraColumn
+    private String column28;
+
+    @CassandraColumn
+    private String column29;
+
+    @CassandraColumn
+    private String column30;
+
+    @CassandraColumn
+    private String column31;
+
+    public static WideEntity sample(String id) {
+        WideEntity entity = new WideEntity();
+        entity.id = id;
+        entity.column00 = "value-00-" + id;
+        entity.column01 = "value-01-" + id;
+        entity.column02 = "value-02-" + id;
+        entity.column03 = "value-03-" + id;
+        entity.column04 = "value-04-" + id;
+        entity.column05 = "value-05-" + id;
+        entity.column06 = "value-06-" + id;
+        entity.column07 = "value-07-" + id;
+        entity.column08 = "value-08-" + id;
+        entity.column09 = "value-09-" + id;
+        entity.column10 = "value-10-" + id;
+        entity.column11 = "value-11-" + id;
+        entity.column12 = "value-12-" + id;
+        entity.column13 = "value-13-" + id;
+        entity.column14 = "value-14-" + id;
+        entity.column15 = "value-15-" + id;
+        entity.column16 = "value-16-" + id;
+        entity.column17 = "value-17-" + id;
+        entity.column18 = "value-18-" + id;
+        entity.column19 = "value-19-" + id;
+        entity.column20 = "value-20-" + id;
+        entity.column21 = "value-21-" + id;
+        entity.column22 = "value-22-" + id;
+        entity.column23 = "value-23-" + id;
+        entity.column24 = "value-24-" + id;
+        entity.column25 = "value-25-" + id;
+        entity.column26 = "value-26-" + id;
+        entity.column27 = "value-27-" + id;
+        entity.column28 = "value-28-" + id;
+        entity.column29 = "value-29-" + id;
+        entity.column30 = "value-30-" + id;
+        entity.column31 = "value-31-" + id;
+        return entity;
+    }
+
+    public String getId() {
+        return id;
+    }
+}
@@ -0,0 +1,345 @@
+package org.helenus;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.helenus.utils.DaemonThreadFactory;
+
+/**
+ * Executes the operations of an {@link EntityManager} on a bounded executor
+ * and returns futures, so that independent reads and writes can be issued
+ * in parallel and joined afterwards.
+ *
+ * A timeout can be attached to the returned futures with
+ * {@link #withTimeout(long, TimeUnit)}. It is counted from the submission,
+ * and once it elapses the operation is cancelled (interrupting it, if it is
+ * running), whether or not anyone is waiting on the future. get() then
+ * throws an {@link ExecutionException} caused by a {@link TimeoutException},
+ * and get(timeout, unit) the TimeoutException itself.
+ *
+ * Operations that run on the calling thread (because the queue is full)
+ * leave its interrupt status as it was, even if they are cancelled while
+ * running.
+ */
+public class AsyncEntityManager {
+
+    private static final ScheduledThreadPoolExecutor TIMEOUTS = new ScheduledThreadPoolExecutor(1,
+            new DaemonThreadFactory("helenus-async-timeout"));
+
+    private final EntityManager entityManager;
+    private final ExecutorService executor;
+    private final long timeoutNanos;
+    private final boolean ownsExecutor;
+
+    /**
+     * Creates an instance with a pool of the given number of threads and a
+     * queue with the given capacity. When the queue is full, operations are
+     * executed by the calling thread.
+     */
+    public AsyncEntityManager(EntityManager entityManager, int threads, int queueCapacity) {
+        this(entityManager, new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(queueCapacity),
+                new DaemonThreadFactory("helenus-async"),
+                new ThreadPoolExecutor.CallerRunsPolicy()), 0, true);
+    }
+
+    public AsyncEntityManager(EntityManager entityManager, ExecutorService executor) {
+        this(entityManager, executor, 0, false);
+    }
+
+    private AsyncEntityManager(EntityManager entityManager, ExecutorService executor,
+            long timeoutNanos, boolean ownsExecutor) {
+        this.entityManager = entityManager;
+        this.executor = executor;
+        this.timeoutNanos = timeoutNanos;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    /**
+     * @return a view of this instance, sharing its executor, whose futures
+     * time out after the given period
+     */
+    public AsyncEntityManager withTimeout(long timeout, TimeUnit unit) {
+        return new AsyncEntityManager(entityManager, executor, unit.toNanos(timeout), false);
+    }
+
+    public <T> Future<T> getById(final Class<T> clazz, final Serializable id) {
+        return submit(new Callable<T>() {
+            @Override
+            public T call() {
+                return entityManager.getById(clazz, id);
+            }
+        });
+    }
+
+    public <T> Future<T> getById(final Class<T> clazz, final Serializable id,
+            final Set<String> properties) {
+        return submit(new Callable<T>() {
+            @Override
+            public T call() {
+                return entityManager.getById(clazz, id, properties);
+            }
+        });
+    }
+
+    public <T> Future<T> persist(final T e) {
+        return submit(new Callable<T>() {
+            @Override
+            public T call() {
+                return entityManager.persist(e);
+            }
+        });
+    }
+
+    public <T> Future<T> update(final T e) {
+        return submit(new Callable<T>() {
+            @Override
+            public T call() {
+                return entityManager.update(e);
+            }
+        });
+    }
+
+    public Future<Void> persistAll(final Collection<?> entities) {
+        return submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                entityManager.persistAll(entities);
+                return null;
+            }
+        });
+    }
+
+    public Future<Void> resolveDependentKeys(final Collection<?> entities) {
+        return submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                entityManager.resolveDependentKeys(entities);
+                return null;
+            }
+        });
+    }
+
+    public <T> Future<List<T>> getByPropertyValue(final Class<T> clazz,
+            final String propertyName, final Object value) {
+        return submit(new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+                return entityManager.getByPropertyValue(clazz, propertyName, value);
+            }
+        });
+    }
+
+    public <T> Future<List<T>> getByPropertyValue(final Class<T> clazz,
+            final String propertyName, final Object value, final Set<String> properties) {
+        return submit(new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+                return entityManager.getByPropertyValue(clazz, propertyName, value, properties);
+            }
+        });
+    }
+
+    public <T> Future<List<T>> getByQuery(final EntityQuery<T> query) {
+        return submit(new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+                return entityManager.getByQuery(query);
+            }
+        });
+    }
+
+    public <T, K> Future<List<T>> getList(final Class<T> clazz, final K... ids) {
+        return submit(new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+                return entityManager.getList(clazz, ids);
+            }
+        });
+    }
+
+    public <T, K> Future<MultigetResult<K, T>> getAll(final Class<T> clazz, final K... ids) {
+        return submit(new Callable<MultigetResult<K, T>>() {
+            @Override
+            public MultigetResult<K, T> call() {
+                return entityManager.getAll(clazz, ids);
+            }
+        });
+    }
+
+    public <T, K> Future<List<T>> getList(final Class<T> clazz,
+            final Set<String> properties, final K... ids) {
+        return submit(new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+                return entityManager.getList(clazz, properties, ids);
+            }
+        });
+    }
+
+    public <T, K> Future<List<T>> getList(final Class<T> clazz, final K id,
+            final boolean inverse, final Object startColumnName, final int count) {
+        return submit(new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+                return entityManager.getList(clazz, id, inverse, startColumnName, count);
+            }
+        });
+    }
+
+    public <T, K> Future<List<T>> getList(final Class<T> clazz, final K id,
+            final boolean inverse, final Object startColumnName, final boolean reversed,
+            final int count) {
+        return submit(new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+                return entityManager.getList(clazz, id, inverse, startColumnName, reversed, count);
+            }
+        });
+    }
+
+    public <T> Future<List<T>> findByInverse(final Class<T> clazz, final Object inverseKey,
+            final Object startColumnName, final Object endColumnName, final int count) {
+        return submit(new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+                return entityManager.findByInverse(clazz, inverseKey, startColumnName, endColumnName, count);
+            }
+        });
+    }
+
+    private <T> Future<T> submit(Callable<T> task) {
+        AsyncTask<T> future = new AsyncTask<T>(task);
+        if (timeoutNanos > 0) {
+            // scheduled before the task can start, so that done() sees the timer
+            future.timer = TIMEOUTS.schedule(future.canceller, timeoutNanos, TimeUnit.NANOSECONDS);
+        }
+        executor.execute(future);
+        return future;
+    }
+
+    /**
+     * Waits for all of the given futures, which are usually issued in
+     * parallel, for at most the given time in total. If the time elapses,
+     * the unfinished operations are cancelled.
+     *
+     * @return the results, in the order of the futures
+     */
+    public static <T> List<T> joinAll(List<? extends Future<? extends T>> futures,
+            long timeout, TimeUnit unit) throws InterruptedException,
+            ExecutionException, TimeoutException {
+        List<T> results = new ArrayList<T>(futures.size());
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            for (Future<? extends T> future : futures) {
+                results.add(future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            }
+        } catch (TimeoutException ex) {
+            cancelAll(futures);
+            throw ex;
+        } catch (ExecutionException ex) {
+            cancelAll(futures);
+            throw ex;
+        }
+        return results;
+    }
+
+    private static void cancelAll(List<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * Shuts down the executor, unless it was passed to the constructor
+     */
+    public void shutdown() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    public EntityManager getEntityManager() {
+        return entityManager;
+    }
+
+    /**
+     * An operation, which is cancelled by the timeout scheduler when its
+     * time is up, if it has a timeout
+     */
+    private static class AsyncTask<T> extends FutureTask<T> {
+        private volatile boolean timedOut;
+        private volatile ScheduledFuture<?> timer;
+        private final Runnable canceller = new Runnable() {
+            @Override
+            public void run() {
+                timedOut = true;
+                cancel(true);
+            }
+        };
+
+        AsyncTask(Callable<T> callable) {
+            super(callable);
+        }
+
+        @Override
+        public void run() {
+            boolean wasInterrupted = Thread.currentThread().isInterrupted();
+            super.run();
+            // the thread may be the caller's, which must not be left
+            // interrupted by the cancellation of the operation
+            if (isCancelled() && !wasInterrupted) {
+                Thread.interrupted();
+            }
+        }
+
+        @Override
+        protected void done() {
+            ScheduledFuture<?> scheduled = timer;
+            if (scheduled != null && scheduled.cancel(false)) {
+                // don't keep the finished task queued until its deadline
+                TIMEOUTS.remove((Runnable) scheduled);
+            }
+        }
+
+        @Override
+        public T get() throws InterruptedException, ExecutionException {
+            try {
+                return super.get();
+            } catch (CancellationException ex) {
+                if (timedOut) {
+                    throw new ExecutionException(new TimeoutException("The operation timed out"));
+                }
+                throw ex;
+            }
+        }
+
+        @Override
+        public T get(long timeout, TimeUnit unit) throws InterruptedException,
+                ExecutionException, TimeoutException {
+            try {
+                return super.get(timeout, unit);
+            } catch (CancellationException ex) {
+                if (timedOut) {
+                    throw new TimeoutException("The operation timed out");
+                }
+                throw ex;
+            }
+        }
+    }
+}
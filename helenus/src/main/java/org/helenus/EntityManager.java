@@ -1,26 +1,153 @@
 package org.helenus;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import me.prettyprint.cassandra.service.spring.HectorTemplate;
 
+import org.helenus.storage.StorageBackend;
+
 public interface EntityManager {
 
     void init();
 
     <T> T getById(Class<T> clazz, Serializable id);
 
+    /**
+     * Same as {@link #getById(Class, Serializable)}, but only the given
+     * properties are fetched; the other fields are left null. Unfetched fields
+     * that are still null when the entity is persisted or updated are not
+     * written. A null set of properties fetches the whole entity. Rows that
+     * have none of the requested columns stored are treated as missing.
+     */
+    <T> T getById(Class<T> clazz, Serializable id, Set<String> properties);
+
     <T> T persist(T e);
 
+    /**
+     * Writes the changes made to an entity since it was loaded or persisted:
+     * only changed columns are written, and fields set to null are deleted.
+     * Entities without a tracked snapshot are persisted whole.
+     */
+    <T> T update(T e);
+
+    /**
+     * Persists all given entities (which may be of different mapped types),
+     * coalescing their rows and inverse column family entries into as few
+     * batch mutations as possible
+     */
+    void persistAll(Collection<?> entities);
+
+    /**
+     * Loads the entities referenced through the {@code @CassandraDependentKey}
+     * fields of the given entities, which only hold their keys unless the
+     * reference is eager. The references are loaded with a single multiget
+     * per referenced class and replace the key-only instances; references to
+     * missing entities are left as they are.
+     */
+    void resolveDependentKeys(Collection<?> entities);
+
     <T> List<T> getByPropertyValue(Class<T> clazz,
             String propertyName, Object value);
 
+    /**
+     * Same as {@link #getByPropertyValue(Class, String, Object)}, fetching
+     * only the given properties
+     */
+    <T> List<T> getByPropertyValue(Class<T> clazz,
+            String propertyName, Object value, Set<String> properties);
+
+    /**
+     * Lazily iterates over the entities whose indexed property has the given
+     * value. Rows are fetched pageSize at a time, and only the current page is
+     * kept in memory, so the iteration can be abandoned at any point.
+     */
+    <T> Iterator<T> iterateByPropertyValue(Class<T> clazz,
+            String propertyName, Object value, int pageSize);
+
+    /**
+     * Creates a query on the secondary indexes of the given class, which can
+     * combine several equality and range expressions
+     */
+    <T> EntityQuery<T> createQuery(Class<T> clazz);
+
+    <T> List<T> getByQuery(EntityQuery<T> query);
+
+    /**
+     * Lazily iterates over the entities matching the query, fetching
+     * {@link EntityQuery#getPageSize()} rows at a time
+     */
+    <T> Iterator<T> iterateByQuery(EntityQuery<T> query);
+
+    /**
+     * The template the entity manager was configured with, or null if it
+     * was given a different storage backend
+     */
     HectorTemplate getHectorTemplate();
 
+    StorageBackend getStorageBackend();
+
+    /**
+     * Reads the entities with the given keys, in the order of the keys.
+     * Missing entities are skipped.
+     */
     <T, K> List<T> getList(Class<T> clazz, K... ids);
 
+    /**
+     * Same as {@link #getList(Class, Object...)}, fetching only the given
+     * properties
+     */
+    <T, K> List<T> getList(Class<T> clazz, Set<String> properties, K... ids);
+
+    /**
+     * Same as {@link #getList(Class, Object...)}, but the entities are keyed
+     * by their requested keys, and the keys of missing entities are reported
+     */
+    <T, K> MultigetResult<K, T> getAll(Class<T> clazz, K... ids);
+
+    /**
+     * Reads one slice of a wide row, in which each (super) column holds one
+     * entity. For the inverse column family, the row is the one named after
+     * the entities' (super) column name, and the referenced entities are
+     * returned, in the order of their inverse column names.
+     */
     <T, K> List<T> getList(Class<T> clazz, K id, boolean inverse,
             Object startColumnName, int count);
 
+    /**
+     * Same as {@link #getList(Class, Object, boolean, Object, int)}, optionally
+     * reading the columns in reverse order
+     */
+    <T, K> List<T> getList(Class<T> clazz, K id, boolean inverse,
+            Object startColumnName, boolean reversed, int count);
+
+    /**
+     * Lazily iterates over a wide row, reading pageSize columns at a time and
+     * using the last column name of each slice as the start of the next one,
+     * so that rows of any width can be walked without loading them whole
+     */
+    <T, K> Iterator<T> iterateList(Class<T> clazz, K id, boolean inverse,
+            Object startColumnName, boolean reversed, int pageSize);
+
+    /**
+     * Reads the entities referenced by one row of the inverse column family -
+     * the one named after the entities' (super) column name. The slice of
+     * inverse columns between the given names (inclusive; null means
+     * unbounded) is read first, and the entities it references are then
+     * fetched with a single chunked multiget.
+     */
+    <T> List<T> findByInverse(Class<T> clazz, Object inverseKey, Object startColumnName,
+            Object endColumnName, int count);
+
+    /**
+     * Same as {@link #findByInverse(Class, Object, Object, Object, int)}, but
+     * streams the entities, reading pageSize inverse columns (and the entities
+     * they reference) at a time
+     */
+    <T> Iterator<T> iterateByInverse(Class<T> clazz, Object inverseKey, Object startColumnName,
+            Object endColumnName, boolean reversed, int pageSize);
+
 }
\ No newline at end of file
@@ -1,53 +1,51 @@
 package org.helenus;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.collect.MapMaker;
 
-import javax.validation.ConstraintViolationException;
-import javax.validation.Validation;
-import javax.validation.Validator;
-import javax.validation.ValidatorFactory;
-
-import me.prettyprint.cassandra.model.AbstractSliceQuery;
-import me.prettyprint.cassandra.model.ColumnSlice;
-import me.prettyprint.cassandra.model.HColumn;
-import me.prettyprint.cassandra.model.HSuperColumn;
-import me.prettyprint.cassandra.model.HectorTransportException;
-import me.prettyprint.cassandra.model.IndexedSlicesQuery;
-import me.prettyprint.cassandra.model.MultigetSliceQuery;
-import me.prettyprint.cassandra.model.Mutator;
-import me.prettyprint.cassandra.model.NotFoundException;
-import me.prettyprint.cassandra.model.Row;
-import me.prettyprint.cassandra.model.Rows;
 import me.prettyprint.cassandra.model.Serializer;
-import me.prettyprint.cassandra.model.SliceQuery;
-import me.prettyprint.cassandra.model.SuperSliceQuery;
-import me.prettyprint.cassandra.serializers.BytesSerializer;
-import me.prettyprint.cassandra.serializers.SerializerTypeInferer;
 import me.prettyprint.cassandra.serializers.StringSerializer;
-import me.prettyprint.cassandra.serializers.TypeInferringSerializer;
-import me.prettyprint.cassandra.serializers.UUIDSerializer;
-import me.prettyprint.cassandra.service.CassandraClient;
-import me.prettyprint.cassandra.service.Cluster;
 import me.prettyprint.cassandra.service.spring.HectorTemplate;
-import me.prettyprint.hector.api.query.ColumnQuery;
 
 import org.apache.cassandra.db.marshal.BytesType;
-import org.apache.cassandra.thrift.Cassandra;
 import org.apache.cassandra.thrift.CfDef;
+import org.apache.cassandra.thrift.Clock;
+import org.apache.cassandra.thrift.Column;
 import org.apache.cassandra.thrift.ColumnDef;
+import org.apache.cassandra.thrift.IndexClause;
+import org.apache.cassandra.thrift.IndexExpression;
+import org.apache.cassandra.thrift.IndexOperator;
 import org.apache.cassandra.thrift.IndexType;
-import org.apache.cassandra.thrift.KsDef;
-import org.apache.commons.beanutils.BeanUtils;
+import org.apache.cassandra.thrift.Mutation;
+import org.apache.cassandra.thrift.SlicePredicate;
+import org.apache.cassandra.thrift.SliceRange;
+import org.apache.cassandra.thrift.SuperColumn;
 import org.apache.commons.lang.ClassUtils;
 import org.apache.commons.lang.StringUtils;
 import org.helenus.annotation.CassandraColumn;
@@ -60,8 +58,24 @@ import org.helenus.annotation.CassandraKey;
 import org.helenus.annotation.CassandraSecondaryIndex;
 import org.helenus.annotation.CassandraSuperColumn;
 import org.helenus.annotation.CassandraSuperColumnName;
+import org.helenus.cache.CachedRow;
+import org.helenus.cache.EntityCache;
+import org.helenus.cache.QueryCache;
+import org.helenus.index.EntityIndex;
+import org.helenus.metrics.MetricsListener;
+import org.helenus.metrics.Operation;
+import org.helenus.storage.HectorStorageBackend;
+import org.helenus.storage.StorageBackend;
 import org.helenus.structure.AnnotatedClass;
 import org.helenus.structure.AnnotatedField;
+import org.helenus.serializers.CompressingSerializer;
+import org.helenus.serializers.CompressionCodec;
+import org.helenus.serializers.SerializerRegistry;
+import org.helenus.structure.FieldPropertyAccessor;
+import org.helenus.structure.PrimitiveCodec;
+import org.helenus.utils.DaemonThreadFactory;
+import org.helenus.validation.EntityValidator;
+import org.helenus.validation.ValidationMode;
 import org.scannotation.AnnotationDB;
 import org.scannotation.ClasspathUrlFinder;
 import org.slf4j.Logger;
@@ -71,11 +85,69 @@ public class EntityManagerImpl implements EntityManager {
 
     private HectorTemplate hectorTemplate;
 
+    private StorageBackend storageBackend;
+
     private static final Logger logger = LoggerFactory.getLogger(EntityManagerImpl.class);
 
     private boolean dropKeyspace;
 
-    private Map<Class<?>, AnnotatedClass> classes = new HashMap<Class<?>, AnnotatedClass>();
+    // compiled in the constructor and never modified afterwards
+    private final Map<Class<?>, AnnotatedClass> classes;
+
+    // the mapped classes by column family name, to resolve written mutations
+    private final Map<String, AnnotatedClass> columnFamilies;
+
+    private final SerializerRegistry serializerRegistry;
+
+    private final Map<Class<?>, CompressionCodec> codecs = new HashMap<Class<?>, CompressionCodec>();
+
+    private EntityValidator entityValidator = new EntityValidator();
+
+    private int batchMaxColumns = 1000;
+
+    private long batchMaxBytes = 2 * 1024 * 1024;
+
+    private int batchParallelism = 4;
+    private int indexPageSize = 1000;
+
+    private int multigetChunkSize = 100;
+
+    private int multigetRetries = 1;
+
+    private int writeBehindFlushSize = 1000;
+
+    private int writeBehindMaxPending = 100000;
+
+    private long writeBehindFlushInterval = 100;
+
+    private long writeBehindMaxWait = 10000;
+
+    private volatile WriteBehindBuffer writeBehindBuffer;
+
+    // guards replacing the write-behind buffer, but not closing it, as its
+    // flusher may need the worker pool while it is being closed
+    private final Object writeBehindLock = new Object();
+
+    private ExecutorService executorService;
+
+    // guards the lazily created executor alone, so that looking it up
+    // never waits for other operations of the entity manager
+    private final Object executorLock = new Object();
+
+    private EntityCache entityCache;
+
+    private QueryCache queryCache;
+
+    private boolean trackChanges;
+
+    private MetricsListener metricsListener;
+    private final ThreadLocal<OperationMeasurement> currentMeasurement = new ThreadLocal<OperationMeasurement>();
+    // snapshots are held weakly, by identity, for as long as the entities are in use
+    private final ConcurrentMap<Object, EntitySnapshot> snapshots = new MapMaker().weakKeys().makeMap();
+    // the projections that entities were loaded with, held the same way
+    private final ConcurrentMap<Object, Projection> projections = new MapMaker().weakKeys().makeMap();
+
+    private boolean ownsExecutorService;
 
     static {
         //TODO
@@ -87,9 +159,14 @@ public class EntityManagerImpl implements EntityManager {
     }
 
     public EntityManagerImpl(Set<Class<?>> entityClasses) {
+        this(entityClasses, new SerializerRegistry());
+    }
+
+    public EntityManagerImpl(Set<Class<?>> entityClasses, SerializerRegistry serializerRegistry) {
+        this.serializerRegistry = serializerRegistry;
+        Map<Class<?>, AnnotatedClass.Builder> builders = new IdentityHashMap<Class<?>, AnnotatedClass.Builder>();
         for (Class<?> clazz : entityClasses) {
-            AnnotatedClass ac = new AnnotatedClass();
-            ac.setClazz(clazz);
+            AnnotatedClass.Builder ac = new AnnotatedClass.Builder(clazz);
             CassandraColumnFamily cf = clazz.getAnnotation(CassandraColumnFamily.class);
             if (cf == null) {
                 throw new IllegalStateException("You must not provide classes that are not mapped with @CassandraColumnFamily");
@@ -105,15 +182,19 @@ public class EntityManagerImpl implements EntityManager {
                 columnFamilyName = clazz.getSimpleName().toLowerCase();
             }
             ac.setColumnFamilyName(columnFamilyName);
+            ac.setCached(cf.cached());
+            ac.setQueriesCached(cf.cacheQueries());
 
             Field[] fields = clazz.getDeclaredFields();
-            Map<String, AnnotatedField> annotatedFields = new HashMap<String, AnnotatedField>();
             for (Field field : fields) {
-                AnnotatedField af = new AnnotatedField();
-                af.setField(field);
+                AnnotatedField.Builder af = new AnnotatedField.Builder(field);
+                af.setAccessor(new FieldPropertyAccessor(field));
+                af.setSerializer(getSerializer(field.getType()));
 
                 if (field.isAnnotationPresent(CassandraInverseColumnName.class)) {
                     ac.setInverseColumnNameField(field.getName());
+                    ac.setInverseColumnNameAccessor(af.getAccessor());
+                    ac.setInverseColumnNameSerializer(af.getSerializer());
                 }
 
                 CassandraColumn column = field.getAnnotation(CassandraColumn.class);
@@ -137,7 +218,15 @@ public class EntityManagerImpl implements EntityManager {
 
                 if (isKey || isDependentKey) {
                     ac.setKeyFieldName(field.getName());
+                    ac.setKeyAccessor(af.getAccessor());
+                    ac.setKeySerializer(af.getSerializer());
                     ac.setDependentKey(isDependentKey);
+                    // random UUIDs can only be stored in UUID and String keys
+                    ac.setKeyGenerated(!isDependentKey
+                            && (field.getType() == UUID.class || field.getType() == String.class));
+                    if (isDependentKey) {
+                        ac.setEagerDependentKey(field.getAnnotation(CassandraDependentKey.class).eager());
+                    }
                     continue;
                 }
                 boolean isSecondaryIndex = field.isAnnotationPresent(CassandraSecondaryIndex.class);
@@ -151,6 +240,11 @@ public class EntityManagerImpl implements EntityManager {
                 af.setSuperColumnName(superColumnName);
                 af.setColumnNameField(columnNameField);
                 af.setSuperColumnNameField(superColumnNameField);
+                if (columnNameField != null) {
+                    af.setNameAccessor(FieldPropertyAccessor.forProperty(field.getType(), columnNameField));
+                } else if (superColumnNameField != null) {
+                    af.setNameAccessor(FieldPropertyAccessor.forProperty(field.getType(), superColumnNameField));
+                }
 
                 if (column != null) {
                     if (!column.targetSuperColumnField().isEmpty()) {
@@ -158,61 +252,108 @@ public class EntityManagerImpl implements EntityManager {
                     }
                 }
                 if (isSecondaryIndex) {
-                    String secondaryIndexName = field.getAnnotation(CassandraSecondaryIndex.class).name();
+                    CassandraSecondaryIndex secondaryIndex = field.getAnnotation(CassandraSecondaryIndex.class);
+                    String secondaryIndexName = secondaryIndex.name();
                     if (secondaryIndexName.isEmpty()) {
                         secondaryIndexName = StringUtils.capitalize(field.getName());
                     }
                     af.setSecondaryIndexName(secondaryIndexName);
+                    af.setIndexSelectivity(secondaryIndex.selectivity());
                 }
-
-                if (superColumn != null || superColumnNameField != null) {
-                    ac.setHasSuperColumn(true);
+                if (column != null) {
+                    boolean columnThreshold = column.compressionThreshold() != -1;
+                    // indexed values are compared by the cluster, so they can't be compressed
+                    if (isSecondaryIndex && columnThreshold) {
+                        throw new IllegalStateException("Columns with a secondary index can't be compressed. Class/Field: " + clazz.getName() + "/" + field.getName());
+                    }
+                    // values stored before compression was enabled must not be
+                    // mistaken for compressed ones, see CompressingSerializer
+                    if (columnThreshold && field.getType() != String.class && field.getType() != byte[].class) {
+                        throw new IllegalStateException("Only String and byte[] columns can be compressed. Class/Field: " + clazz.getName() + "/" + field.getName());
+                    }
+                    int threshold = columnThreshold ? column.compressionThreshold()
+                            : field.getType() == String.class ? cf.compressionThreshold() : -1;
+                    if (threshold >= 0 && !isSecondaryIndex) {
+                        af.setSerializer(new CompressingSerializer<Object>(af.getSerializer(),
+                                getCodec(column.compressionCodec()), threshold));
+                    }
                 }
+                af.setPrimitiveCodec(PrimitiveCodec.forField(field.getType(), af.getSerializer()));
 
                 if (column != null || superColumn != null
                         || columnNameField != null
                         || superColumnNameField != null) {
-                    annotatedFields.put(field.getName(), af);
+                    ac.addField(af);
                 }
             }
-            ac.setFields(annotatedFields);
-            classes.put(clazz, ac);
+            builders.put(clazz, ac);
         }
 
         try {
-            for (AnnotatedClass ac : classes.values()) {
+            for (AnnotatedClass.Builder ac : builders.values()) {
                 if (ac.hasDependentKey()) {
                     Field field = ac.getClazz().getDeclaredField(ac.getKeyFieldName());
-                    AnnotatedClass targetMeta = classes.get(field.getType());
+                    AnnotatedClass.Builder targetMeta = builders.get(field.getType());
                     if (targetMeta == null) {
                         throw new IllegalStateException("No mapped columnFamily with type " + field.getType() + " required by Class/field: " + ac.getClazz().getName() + "/" + field.getName());
                     }
                     ac.setDependentKeyFieldName(targetMeta.getKeyFieldName());
-                }
-
-                if (ac.hasInverse()) {
-                    int superColumns = 0;
-                    int columns = 0;
-                    for (AnnotatedField field : ac.getFields().values()) {
-                        if (field.isSuperColumn()) {
-                            superColumns++;
-                        } else {
-                            columns ++;
-                        }
-                    }
-                    // for inverse, only one super column def is allowed,
-                    // or if no super column exists, only one column def
-                    // (this does not mean the CF will have one column -
-                    // it means the object has one field based on which
-                    // columns are generated
-                    if (superColumns > 1 || (superColumns == 0 && columns > 1)) {
-                        throw new IllegalStateException("For an inverse definition you must have only one SuperColumn, or if you don't have a SuperColumn, you must have only one Column");
-                    }
+                    ac.setDependentKeyAccessor(targetMeta.getKeyAccessor());
+                    ac.setKeySerializer(targetMeta.getKeySerializer());
                 }
             }
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
+        Map<Class<?>, AnnotatedClass> classes = new IdentityHashMap<Class<?>, AnnotatedClass>();
+        Map<String, AnnotatedClass> columnFamilies = new HashMap<String, AnnotatedClass>();
+        for (AnnotatedClass.Builder builder : builders.values()) {
+            AnnotatedClass ac = builder.build();
+            if (ac.hasInverse()) {
+                int superColumns = 0;
+                int columns = 0;
+                for (AnnotatedField field : ac.getFields()) {
+                    if (field.isSuperColumn()) {
+                        superColumns++;
+                    } else {
+                        columns ++;
+                    }
+                }
+                // for inverse, only one super column def is allowed,
+                // or if no super column exists, only one column def
+                // (this does not mean the CF will have one column -
+                // it means the object has one field based on which
+                // columns are generated
+                if (superColumns > 1 || (superColumns == 0 && columns > 1)) {
+                    throw new IllegalStateException("For an inverse definition you must have only one SuperColumn, or if you don't have a SuperColumn, you must have only one Column");
+                }
+            }
+            classes.put(ac.getClazz(), ac);
+            columnFamilies.put(ac.getColumnFamilyName(), ac);
+        }
+        this.classes = classes;
+        this.columnFamilies = columnFamilies;
+    }
+
+    @SuppressWarnings("unchecked")
+    private CompressionCodec getCodec(Class<? extends CompressionCodec> codecClass) {
+        CompressionCodec codec = codecs.get(codecClass);
+        if (codec == null) {
+            try {
+                codec = codecClass.newInstance();
+            } catch (Exception ex) {
+                throw new IllegalStateException("Unable to instantiate compression codec " + codecClass.getName(), ex);
+            }
+            codecs.put(codecClass, codec);
+        }
+        return codec;
+    }
+
+    // each field's serializer only ever handles values of the field's type,
+    // which are read and written through the untyped property accessors
+    @SuppressWarnings("unchecked")
+    private Serializer<Object> getSerializer(Class<?> type) {
+        return (Serializer<Object>) serializerRegistry.getSerializer(type);
     }
 
     private String getSuperColumnName(Field field,
@@ -243,27 +384,25 @@ public class EntityManagerImpl implements EntityManager {
      */
     @Override
     public void init() {
-        // validate the schema
-        Cluster cluster = hectorTemplate.getCluster();
-        String keyspaceName = hectorTemplate.getKeyspace();
-        CassandraClient cClient = cluster.borrowClient();
+        entityValidator.init();
 
-        Cassandra.Client client = cClient.getCassandra();
+        // validate the schema
         try {
             if (dropKeyspace) {
-                client.system_drop_keyspace(keyspaceName);
+                storageBackend.dropKeyspace();
             }
         } catch (Exception ex) {
             logger.error("Unable to drop keyspace", ex);
         }
+        boolean keyspaceExists;
         try {
-            cClient.getKeyspace(keyspaceName);
-        } catch (NotFoundException ex) {
-            KsDef def = new KsDef();
-            def.setName(keyspaceName);
-            def.setStrategy_class(hectorTemplate.getReplicationStrategyClass());
-            def.setReplication_factor(hectorTemplate.getReplicationFactor());
-
+            keyspaceExists = storageBackend.keyspaceExists();
+        } catch (RuntimeException ex) {
+            logger.error("Problem getting keyspace", ex);
+            return;
+        }
+        if (!keyspaceExists) {
+            String keyspaceName = storageBackend.getKeyspaceName();
             try {
                 List<CfDef> cfDefs = new ArrayList<CfDef>(classes.size());
                 for (AnnotatedClass clazz : classes.values()) {
@@ -271,7 +410,7 @@ public class EntityManagerImpl implements EntityManager {
                     CfDef cfDef = new CfDef(keyspaceName, cfName);
                     cfDefs.add(cfDef);
                     String validationClass = BytesType.class.getName();
-                    for (AnnotatedField field : clazz.getFields().values()) {
+                    for (AnnotatedField field : clazz.getFields()) {
                         if (field.isSecondaryIndex()) {
                             ColumnDef cd = new ColumnDef();
                             cd.setName(StringSerializer.get().toBytes(field.getColumnName()));
@@ -286,39 +425,44 @@ public class EntityManagerImpl implements EntityManager {
                         CfDef inverseCfDef = new CfDef(keyspaceName, clazz.getColumnFamilyName() + clazz.getInverseColumnFamilySuffix());
                         cfDefs.add(inverseCfDef);
                     }
-
-                    //client.system_add_column_family(cfDef);
                 }
-                def.setCf_defs(cfDefs);
-                client.system_add_keyspace(def);
+                storageBackend.createKeyspace(cfDefs);
             } catch (Exception e) {
                 logger.error("Problem creating keyspace and column families", e);
                 throw new RuntimeException(e);
             }
-        } catch (HectorTransportException ex) {
-            logger.error("Problem getting keyspace", ex);
         }
-
     }
 
     private static Set<Class<?>> findEntityClasses() {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (classLoader == null) {
+            classLoader = EntityManagerImpl.class.getClassLoader();
+        }
+        Set<Class<?>> entityClasses = EntityIndex.load(classLoader);
+        // roots compiled without the index processor are still scanned
+        List<URL> unindexedRoots = EntityIndex.findUnindexedRoots(ClasspathUrlFinder.findClassPaths(), classLoader);
+        if (!unindexedRoots.isEmpty()) {
+            logger.info("Scanning " + unindexedRoots.size() + " classpath entries without an entity index ("
+                    + EntityIndex.RESOURCE_NAME + ")");
+            entityClasses.addAll(scanEntityClasses(unindexedRoots.toArray(new URL[unindexedRoots.size()])));
+        }
+        return entityClasses;
+    }
+
+    private static Set<Class<?>> scanEntityClasses(URL[] urls) {
         Set<Class<?>> entityClasses = new HashSet<Class<?>>();
 
         AnnotationDB annotationDb = new AnnotationDB();
-        URL[] urls = ClasspathUrlFinder.findClassPaths();
+        annotationDb.setScanFieldAnnotations(false);
+        annotationDb.setScanMethodAnnotations(false);
+        annotationDb.setScanParameterAnnotations(false);
         try {
             annotationDb.scanArchives(urls);
-            Map<String, Set<String>> index = annotationDb.getClassIndex();
-
-            if (index != null) {
-                Set<String> strSet = index.keySet();
-                if (strSet != null) {
-                    for (String str : strSet) {
-                        Class<?> clazz = ClassUtils.getClass(str);
-                        if (clazz.isAnnotationPresent(CassandraColumnFamily.class)) {
-                            entityClasses.add(clazz);
-                        }
-                    }
+            Set<String> classNames = annotationDb.getAnnotationIndex().get(CassandraColumnFamily.class.getName());
+            if (classNames != null) {
+                for (String className : classNames) {
+                    entityClasses.add(ClassUtils.getClass(className));
                 }
             }
         } catch (Exception e) {
@@ -333,26 +477,68 @@ public class EntityManagerImpl implements EntityManager {
      */
     @Override
     public <T> T getById(Class<T> clazz, Serializable id) {
-        AnnotatedClass meta = getAnnotatedClass(clazz);
-
-        String key = id.toString();
+        return getById(clazz, id, null);
+    }
 
+    /* (non-Javadoc)
+     * @see org.helenus.EntityManager#getById(java.lang.Class, java.io.Serializable, java.util.Set)
+     */
+    @Override
+    public <T> T getById(Class<T> clazz, Serializable id, Set<String> properties) {
+        OperationMeasurement measurement = startMeasurement(Operation.GET_BY_ID, clazz);
         try {
-            T instance = clazz.newInstance();
+            AnnotatedClass meta = getAnnotatedClass(clazz);
+            Projection projection = getProjection(meta, properties);
+
+            try {
+                T entity = getEntity(clazz, meta, id, projection);
+                if (entity != null && meta.hasEagerDependentKey()) {
+                    resolveDependentKeys(Collections.singletonList(entity), meta);
+                }
+                return entity;
+            } catch (Exception ex) {
+                logger.error("Exception when getting object by id", ex);
+                markFailed(measurement);
+                return null;
+            }
+        } catch (RuntimeException ex) {
+            markFailed(measurement);
+            throw ex;
+        } finally {
+            stopMeasurement(measurement);
+        }
+    }
 
-            for (AnnotatedField field : meta.getFields().values()) {
-                ColumnQuery<String, String, byte[]> columnQuery = hectorTemplate.createColumnQuery(BytesSerializer.get());
-                columnQuery.setName(field.getColumnName()).setKey(key).setColumnFamily(meta.getColumnFamilyName());
-                HColumn<String, byte[]> column = columnQuery.execute().get();
-                byte[] bytesValue = column.getValue();
-                Object value = SerializerTypeInferer.getSerializer(field.getField().getType()).fromBytes(bytesValue);
-                BeanUtils.setProperty(instance, field.getField().getName(), value);
+    private <T> T getEntity(Class<T> clazz, AnnotatedClass meta, Serializable id,
+            Projection projection) throws InstantiationException, IllegalAccessException {
+        byte[] keyBytes = meta.getKeySerializer().toBytes(id);
+        long generation = getCacheGeneration(meta);
+        if (isCached(meta)) {
+            CachedRow row = entityCache.get(clazz, keyBytes);
+            if (row != null) {
+                return createEntity(clazz, meta, id, row, projection);
             }
+        }
 
-            return instance;
-        } catch (Exception ex) {
-            logger.error("Exception when getting object by id", ex);
-            return null;
+        // all mapped (super) columns are fetched in a single round trip
+        if (meta.hasSuperColumn()) {
+            SlicePredicate predicate = projection != null ? getNamesPredicate(projection.getSuperColumnNames())
+                    : getNamesPredicate(meta.getSuperColumnNameBytes());
+            List<SuperColumn> superColumns = storageBackend.getSuperSlice(meta.getColumnFamilyName(),
+                    keyBytes, predicate);
+            if (superColumns.isEmpty()) {
+                return null;
+            }
+            return createSuperEntity(clazz, meta, keyBytes, superColumns, projection, generation);
+        } else {
+            SlicePredicate predicate = projection != null ? getNamesPredicate(projection.getColumnNames())
+                    : getNamesPredicate(meta.getColumnNameBytes());
+            List<Column> columns = storageBackend.getSlice(meta.getColumnFamilyName(),
+                    keyBytes, predicate);
+            if (columns.isEmpty()) {
+                return null;
+            }
+            return createEntity(clazz, meta, keyBytes, columns, projection, generation);
         }
     }
 
@@ -370,288 +556,1934 @@ public class EntityManagerImpl implements EntityManager {
      * @see org.helenus.IEntityManager#persist(T)
      */
     @Override
-    @SuppressWarnings({ "unchecked", "rawtypes" })
     public <T> T persist(T e) {
-        AnnotatedClass meta = getAnnotatedClass(e.getClass());
-        ValidatorFactory factory;
+        OperationMeasurement measurement = startMeasurement(Operation.PERSIST, e.getClass());
         try {
-            Class clazz = Class.forName("org.hibernate.validator.HibernateValidator");
-            factory = Validation.byProvider(clazz).configure().buildValidatorFactory();
-        } catch (ClassNotFoundException ex) {
-            factory = Validation.buildDefaultValidatorFactory();
-        }
-        Validator validator = factory.getValidator();
-        Set constraintViolations = validator.validate(e);
-        if (constraintViolations.size() > 0) {
-            throw new ConstraintViolationException(constraintViolations);
+            AnnotatedClass meta = getAnnotatedClass(e.getClass());
+            entityValidator.validate(e, meta);
+
+            // the row and its inverse entry are written with a single batch_mutate
+            MutationBatch batch = new MutationBatch();
+            addInsertions(e, meta, batch);
+            measureWrite(1, batch);
+            execute(batch);
+            trackChanges(e, meta);
+            return e;
+        } catch (RuntimeException ex) {
+            markFailed(measurement);
+            throw ex;
+        } finally {
+            stopMeasurement(measurement);
         }
+    }
 
-        Object key = getKey(e, meta);
+    /* (non-Javadoc)
+     * @see org.helenus.EntityManager#persistAll(java.util.Collection)
+     */
+    @Override
+    public void persistAll(Collection<?> entities) {
+        OperationMeasurement measurement = startMeasurement(Operation.PERSIST_ALL, null);
+        try {
+            List<Object> entityList = new ArrayList<Object>(entities);
+            List<AnnotatedClass> metas = new ArrayList<AnnotatedClass>(entityList.size());
+            for (Object e : entityList) {
+                metas.add(getAnnotatedClass(e.getClass()));
+            }
+            entityValidator.validateAll(entityList, metas);
 
-        if (key == null) {
-            logger.debug("Inserting a new entity of type " + e.getClass());
-            return persist(e, meta, UUID.randomUUID());
-        } else {
-            return persist(e, meta, key);
+            MutationBatch batch = new MutationBatch();
+            for (int i = 0; i < entityList.size(); i++) {
+                addInsertions(entityList.get(i), metas.get(i), batch);
+            }
+            measureWrite(entityList.size(), batch);
+            execute(batch.split(batchMaxColumns, batchMaxBytes));
+            for (int i = 0; i < entityList.size(); i++) {
+                trackChanges(entityList.get(i), metas.get(i));
+            }
+        } catch (RuntimeException ex) {
+            markFailed(measurement);
+            throw ex;
+        } finally {
+            stopMeasurement(measurement);
         }
     }
 
     private Object getKey(Object entity, AnnotatedClass meta) {
-        try {
-            if (!meta.hasDependentKey()) {
-                return BeanUtils.getProperty(entity, meta.getKeyFieldName());
+        if (!meta.hasDependentKey()) {
+            return meta.getKeyAccessor().get(entity);
+        } else {
+            Object keyHoldingObject = meta.getKeyAccessor().get(entity);
+            Object key = keyHoldingObject != null ? meta.getDependentKeyAccessor().get(keyHoldingObject) : null;
+            if (key == null) {
+                throw new IllegalStateException("The dependee of a dependent key must be set. Class/field: " + meta.getClazz().getName() + " / " + meta.getKeyFieldName());
             } else {
-                Object keyHoldingObject = BeanUtils.getProperty(entity, meta.getKeyFieldName());
-                Object key = BeanUtils.getProperty(keyHoldingObject, meta.getDependentKeyFieldName());
-                if (key == null) {
-                    throw new IllegalStateException("The dependee of a dependent key must be set. Class/field: " + meta.getClazz().getName() + " / " + meta.getKeyFieldName());
-                } else {
-                    return key;
-                }
+                return key;
             }
-        } catch (Exception ex) {
-            throw new RuntimeException(ex);
         }
     }
 
-    @SuppressWarnings({ "unchecked", "rawtypes" })
-    private <T> T persist(T e, AnnotatedClass meta, Object key) {
+    private Object generateKey(AnnotatedClass meta) {
+        if (!meta.isKeyGenerated()) {
+            throw new IllegalStateException("Keys of type " + meta.getKeyAccessor().getType().getName()
+                    + " can't be generated, so they must be set before persisting. Class/field: "
+                    + meta.getClazz().getName() + "/" + meta.getKeyFieldName());
+        }
+        UUID key = UUID.randomUUID();
+        if (meta.getKeyAccessor().getType() == String.class) {
+            return key.toString();
+        }
+        return key;
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.EntityManager#resolveDependentKeys(java.util.Collection)
+     */
+    @Override
+    public void resolveDependentKeys(Collection<?> entities) {
+        Map<AnnotatedClass, List<Object>> byClass = new LinkedHashMap<AnnotatedClass, List<Object>>();
+        for (Object e : entities) {
+            AnnotatedClass meta = getAnnotatedClass(e.getClass());
+            if (!meta.hasDependentKey()) {
+                continue;
+            }
+            List<Object> list = byClass.get(meta);
+            if (list == null) {
+                list = new ArrayList<Object>();
+                byClass.put(meta, list);
+            }
+            list.add(e);
+        }
+        for (Map.Entry<AnnotatedClass, List<Object>> entry : byClass.entrySet()) {
+            resolveDependentKeys(entry.getValue(), entry.getKey());
+        }
+    }
 
-        Set<HColumn<String, byte[]>> columns = new HashSet<HColumn<String, byte[]>>();
-        Set<HSuperColumn<?, ?, ?>> superColumns = new HashSet<HSuperColumn<?, ?, ?>>();
+    /**
+     * Replaces the key-only instances referenced by the dependent key of the
+     * given entities (all of the given class) with the loaded entities,
+     * reading all of them with a single multiget
+     */
+    private void resolveDependentKeys(List<?> entities, AnnotatedClass meta) {
+        if (entities.isEmpty()) {
+            return;
+        }
+        Class<?> targetClass = meta.getKeyAccessor().getType();
+        AnnotatedClass targetMeta = getAnnotatedClass(targetClass);
+        Serializer<Object> keySerializer = targetMeta.getKeySerializer();
+
+        // entities sharing a reference are resolved with the same instance
+        Map<ByteBuffer, Object> keys = new LinkedHashMap<ByteBuffer, Object>(entities.size() * 2);
+        for (Object e : entities) {
+            Object key = getKey(e, meta);
+            keys.put(ByteBuffer.wrap(keySerializer.toBytes(key)), key);
+        }
+        List<?> targets = getList(targetClass, (Set<String>) null, keys.values().toArray());
+        Map<ByteBuffer, Object> loaded = new HashMap<ByteBuffer, Object>(targets.size() * 2);
+        for (Object target : targets) {
+            loaded.put(ByteBuffer.wrap(keySerializer.toBytes(getKey(target, targetMeta))), target);
+        }
+        for (Object e : entities) {
+            Object target = loaded.get(ByteBuffer.wrap(keySerializer.toBytes(getKey(e, meta))));
+            if (target != null) {
+                meta.getKeyAccessor().set(e, target);
+            }
+        }
+    }
 
-        try {
-            for (AnnotatedField field : meta.getFields().values()) {
-                //TODO don't use string conversion, but serialization
-                byte[] value = TypeInferringSerializer.get().toBytes(BeanUtils.getProperty(e, field.getField().getName()));
-                //cassandra not accepting null values
-                if (value == null) {
-                    value = new byte[0];
-                }
-                // Nasty parameterization with Object, but no other way
-                if (field.isSuperColumn()) {
-                    List<HColumn<Object,Object>> columnsOfSuperColumn = new ArrayList<HColumn<Object,Object>>();
-                    for (AnnotatedField columnCandidate : meta.getFields().values()) {
-                        HColumn column = hectorTemplate.createColumn(columnCandidate.getColumnName(), value);
-                        columnsOfSuperColumn.add(column);
-                    }
-                    String name = getSuperColumnName(e, field);
-                    HSuperColumn<?,?,?> sc = hectorTemplate.<Object, Object, Object>createSuperColumn(name, columnsOfSuperColumn);
-                    superColumns.add(sc);
-                } else if (!field.hasSuperColumnParent()){ // otherwise they are already created above
+    private void setKey(Object entity, AnnotatedClass meta, Object key) throws InstantiationException, IllegalAccessException {
+        if (!meta.hasDependentKey()) {
+            meta.getKeyAccessor().set(entity, key);
+        } else {
+            // the key belongs to the referenced entity, so only its key is filled
+            Object keyHoldingObject = meta.getKeyAccessor().getType().newInstance();
+            meta.getDependentKeyAccessor().set(keyHoldingObject, key);
+            meta.getKeyAccessor().set(entity, keyHoldingObject);
+        }
+    }
 
-                    String name = getColumnName(e, field);
+    /**
+     * Adds the insertions needed to persist the given entity to the batch
+     *
+     * @return the serialized key of the entity
+     */
+    private byte[] addInsertions(Object e, AnnotatedClass meta, MutationBatch batch) {
+        Object key = getKey(e, meta);
+        if (key == null) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Inserting a new entity of type " + e.getClass());
+            }
+            key = generateKey(meta);
+            // dependent keys are always set, so this is the entity's own key
+            meta.getKeyAccessor().set(e, key);
+        }
+        byte[] keyBytes = meta.getKeySerializer().toBytes(key);
+        String cfName = meta.getColumnFamilyName();
+        // all columns of the entity are written with the same timestamp
+        Clock clock = storageBackend.createClock();
+        Projection projection = projections.get(e);
 
-                    columns.add(hectorTemplate.createColumn(name, value));
+        for (AnnotatedField field : meta.getWriteColumns()) {
+            if (isNotLoaded(e, field, projection)) {
+                continue;
+            }
+            byte[] name = getNameBytes(e, field);
+            if (name == null) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Skipping column of field " + field.getField().getName() + " without a name");
                 }
+                continue;
             }
-            Mutator mutator = hectorTemplate.createMutator();
-            String cfName = meta.getColumnFamilyName();
-            for (HColumn<String,byte[]> column : columns) {
-                logger.debug("Adding insertion for key: " + key + ", column: " + column.getName() + ", cfName:" + cfName);
-                mutator.addInsertion(key, cfName, column);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Adding insertion for key: " + key + ", column: " + field.getField().getName() + ", cfName:" + cfName);
             }
+            batch.addColumn(keyBytes, cfName, new Column(name, getValueBytes(e, field), clock));
+        }
 
-            for (HSuperColumn<?, ?, ?> superColumn : superColumns) {
-                logger.debug("Adding insertion for key: " + key + ", superColumn: " + superColumn.getName() + ", cfName:" + cfName);
-                mutator.addInsertion(key, cfName, superColumn);
+        for (AnnotatedField field : meta.getWriteSuperColumns()) {
+            byte[] name = getNameBytes(e, field);
+            if (name == null || field.getChildFields().isEmpty()) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Skipping super column of field " + field.getField().getName() + " without a name or columns");
+                }
+                continue;
+            }
+            List<Column> columns = new ArrayList<Column>(field.getChildFields().size());
+            for (AnnotatedField child : field.getChildFields().values()) {
+                byte[] childName = getNameBytes(e, child);
+                if (childName != null && !isNotLoaded(e, child, projection)) {
+                    columns.add(new Column(childName, getValueBytes(e, child), clock));
+                }
+            }
+            if (columns.isEmpty()) {
+                continue;
             }
+            SuperColumn superColumn = new SuperColumn(name, columns);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Adding insertion for key: " + key + ", superColumn: " + field.getField().getName() + ", cfName:" + cfName);
+            }
+            batch.addSuperColumn(keyBytes, cfName, superColumn);
+        }
 
-            mutator.execute();
+        handleInverse(e, keyBytes, meta, cfName, batch);
+        return keyBytes;
+    }
 
-            handleInverse(e, key, meta, cfName, mutator);
-        } catch (Exception ex) {
-            throw new RuntimeException(ex);
-        }
-        return e;
+    /**
+     * Whether the field was left out when the entity was loaded, and has not
+     * been set since. Such fields are not written, so that they don't
+     * overwrite the stored values.
+     */
+    private boolean isNotLoaded(Object e, AnnotatedField field, Projection projection) {
+        return projection != null && !projection.includes(field) && field.getAccessor().get(e) == null;
     }
 
-    private <T> String getColumnName(T e, AnnotatedField field)
-            throws IllegalAccessException, InvocationTargetException,
-            NoSuchMethodException {
-        String name = field.getColumnName();
-        // ie if this has been annotated with @CassandraColumnName
-        if (name == null) {
-            String fieldName = field.getColumnNameField();
-            Object target = BeanUtils.getProperty(e, field.getField().getName());
-            name = BeanUtils.getProperty(target, fieldName);
+    private byte[] getNameBytes(Object e, AnnotatedField field) {
+        if (field.getNameBytes() != null) {
+            return field.getNameBytes();
         }
-        return name;
+        String name = getDynamicName(e, field);
+        return name != null ? StringSerializer.get().toBytes(name) : null;
     }
 
-    private <T> String getSuperColumnName(T e, AnnotatedField field)
-            throws IllegalAccessException, InvocationTargetException,
-            NoSuchMethodException {
-        String name = field.getSuperColumnName();
-        // ie if this has been annotated with @CassandraSuperColumnName
-        if (name == null) {
-            String fieldName = field.getSuperColumnNameField();
-            Object target = BeanUtils.getProperty(e, field.getField().getName());
-            name = BeanUtils.getProperty(target, fieldName);
+    private byte[] getValueBytes(Object e, AnnotatedField field) {
+        byte[] value = getNullableValueBytes(e, field);
+        //cassandra not accepting null values
+        return value != null ? value : new byte[0];
+    }
+
+    private byte[] getNullableValueBytes(Object e, AnnotatedField field) {
+        if (field.getPrimitiveCodec() != null) {
+            return field.getPrimitiveCodec().get(field.getField(), e);
         }
-        return name;
+        Object value = field.getAccessor().get(e);
+        return value != null ? field.getSerializer().toBytes(value) : null;
+    }
+
+    private boolean isCached(AnnotatedClass meta) {
+        return entityCache != null && meta.isCached();
     }
 
-    @SuppressWarnings({ "rawtypes", "unchecked" })
-    private <T> void handleInverse(T e, Object key, AnnotatedClass meta,
-            String cfName, Mutator mutator) throws IllegalAccessException,
-            InvocationTargetException, NoSuchMethodException {
+    /**
+     * @return the generation to store rows read from now on with, which
+     * keeps them out of the cache if the class is invalidated meanwhile
+     */
+    private long getCacheGeneration(AnnotatedClass meta) {
+        return isCached(meta) ? entityCache.getGeneration(meta.getClazz()) : 0;
+    }
 
-        cfName = cfName + meta.getInverseColumnFamilySuffix();
+    private boolean isQueryCached(AnnotatedClass meta) {
+        return queryCache != null && meta.isQueriesCached();
+    }
 
-        if (meta.hasInverse()) {
-            Object columnName = BeanUtils.getProperty(e, meta.getInverseColumnNameField());
-            Object value = null;
-            for (AnnotatedField field : meta.getFields().values()) {
-                if (field.isSuperColumn()) {
-                    value = getSuperColumnName(e, field);
-                    break;
-                } else if (!meta.hasSuperColumn()) {
-                    value = getColumnName(e, field);
-                    break;
+    /**
+     * Invalidates the cached rows written by the given mutations, and the
+     * cached lookups of the indexed values they write. This is done once the
+     * mutations are sent (which may be much later than the write in
+     * write-behind mode), so that reads in between can't cache the rows the
+     * mutations replace. Lookups of the values they replace still hold the
+     * keys of the written rows, which are filtered out when those lookups are
+     * read.
+     */
+    private void invalidateCaches(Map<byte[], Map<String, List<Mutation>>> mutations) {
+        if (entityCache == null && queryCache == null) {
+            return;
+        }
+        for (Map.Entry<byte[], Map<String, List<Mutation>>> row : mutations.entrySet()) {
+            for (Map.Entry<String, List<Mutation>> columnFamily : row.getValue().entrySet()) {
+                // inverse column families are not mapped, and not cached
+                AnnotatedClass meta = columnFamilies.get(columnFamily.getKey());
+                if (meta == null) {
+                    continue;
+                }
+                if (isCached(meta)) {
+                    entityCache.invalidate(meta.getClazz(), row.getKey());
+                }
+                if (!isQueryCached(meta) || !meta.hasSecondaryIndex()) {
+                    continue;
+                }
+                for (Mutation mutation : columnFamily.getValue()) {
+                    Column column = mutation.isSetColumn_or_supercolumn()
+                            ? mutation.getColumn_or_supercolumn().getColumn() : null;
+                    AnnotatedField field = column != null ? meta.getColumnField(column.getName()) : null;
+                    if (field != null && field.isSecondaryIndex()) {
+                        queryCache.invalidate(meta.getClazz(), field.getField().getName(), column.getValue());
+                    }
                 }
             }
-            HColumn<?,?> column = hectorTemplate.createColumn(columnName, value);
-
-            mutator.insert(key, cfName, column);
         }
     }
 
-    /* (non-Javadoc)
-     * @see org.helenus.IEntityManager#getByPropertyValue(java.lang.Class, java.lang.String, java.lang.Object)
+    /**
+     * Starts measuring an operation, unless metrics are disabled or another
+     * operation is already being measured on this thread
+     *
+     * @return the measurement, or null if the operation is not measured
      */
-    @Override
-    public <T> List<T> getByPropertyValue(Class<T> clazz, String propertyName, Object value) {
-        AnnotatedClass meta = getAnnotatedClass(clazz);
-
-        AnnotatedField fld = meta.getFields().get(propertyName);
-        if (!fld.isSecondaryIndex()) {
-            throw new IllegalArgumentException("There is no secondary index defined for this property");
+    private OperationMeasurement startMeasurement(Operation operation, Class<?> entityClass) {
+        MetricsListener listener = metricsListener;
+        if (listener == null || currentMeasurement.get() != null) {
+            return null;
         }
+        OperationMeasurement measurement = new OperationMeasurement(listener, operation, entityClass);
+        currentMeasurement.set(measurement);
+        return measurement;
+    }
 
-        String  columnName = fld.getColumnName();
+    private void markFailed(OperationMeasurement measurement) {
+        if (measurement != null) {
+            measurement.markFailed();
+        }
+    }
 
-        IndexedSlicesQuery<UUID, String> query = hectorTemplate.createIndexSlicesQuery(UUIDSerializer.get(), StringSerializer.get());
-        query.setColumnFamily(meta.getColumnFamilyName());
-        fillColumnNames(query, meta);
-        query.addEqualsExpression(columnName, SerializerTypeInferer.getSerializer(value).toBytes(value));
+    private void stopMeasurement(OperationMeasurement measurement) {
+        if (measurement == null) {
+            return;
+        }
+        currentMeasurement.remove();
+        try {
+            measurement.complete();
+        } catch (RuntimeException ex) {
+            logger.warn("Metrics listener failed", ex);
+        }
+    }
 
-        List<T> result = getResultList(clazz, meta, query);
+    private void measureWrite(int rows, MutationBatch batch) {
+        if (metricsListener != null) {
+            OperationMeasurement measurement = currentMeasurement.get();
+            if (measurement != null) {
+                measurement.addRows(rows);
+                measurement.addColumns(batch.getColumnCount(), batch.getByteSize());
+            }
+        }
+    }
 
-        return result;
+    private void execute(MutationBatch batch) {
+        WriteBehindBuffer buffer = writeBehindBuffer;
+        // a buffer that is being closed no longer accepts writes
+        if (buffer != null && buffer.add(batch)) {
+            return;
+        }
+        send(batch);
+    }
 
+    private void execute(List<MutationBatch> batches) {
+        WriteBehindBuffer buffer = writeBehindBuffer;
+        if (buffer != null) {
+            for (int i = 0; i < batches.size(); i++) {
+                if (!buffer.add(batches.get(i))) {
+                    write(batches.subList(i, batches.size()));
+                    return;
+                }
+            }
+            return;
+        }
+        write(batches);
     }
 
-    private <K, V, T> List<T> getResultList(Class<T> clazz, AnnotatedClass meta,
-            AbstractSliceQuery<K, String, V, ? extends Rows<K, String,V>> query) {
-        Rows<K, String, V> rows = query.execute().get();
+    /**
+     * Sends the given batches, bypassing the write-behind buffer
+     */
+    private void write(List<MutationBatch> batches) {
+        if (batches.size() == 1) {
+            send(batches.get(0));
+            return;
+        }
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(batches.size());
+        for (final MutationBatch batch : batches) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    send(batch);
+                    return null;
+                }
+            });
+        }
+        executeAll(tasks);
+    }
 
-        List<T> result = new ArrayList<T>(rows.getCount());
+    private void send(MutationBatch batch) {
+        Map<byte[], Map<String, List<Mutation>>> mutations = batch.toMutationMap();
+        storageBackend.batchMutate(mutations);
+        invalidateCaches(mutations);
+    }
 
+    /**
+     * Executes the given tasks concurrently, keeping at most
+     * batchParallelism of them in flight at a time. If a task fails, the
+     * ones that haven't started are cancelled.
+     *
+     * @return the results of the tasks, in the order of the tasks
+     */
+    private <R> List<R> executeAll(List<? extends Callable<R>> tasks) {
+        if (tasks.size() == 1) {
+            try {
+                return Collections.singletonList(tasks.get(0).call());
+            } catch (RuntimeException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+        CompletionService<R> completionService = new ExecutorCompletionService<R>(getExecutorService());
+        List<Future<R>> futures = new ArrayList<Future<R>>(tasks.size());
+        int submitted = 0;
         try {
-            for (Row<K, String, V> row : rows) {
-                T entity = clazz.newInstance();
-                ColumnSlice<String, V> slice = row.getColumnSlice();
-                for (AnnotatedField af : meta.getFields().values()) {
-                    HColumn<String, V> column = slice.getColumnByName(af.getColumnName());
-                    V value = column.getValue();
-                    if (value instanceof byte[]) {
-                        value = SerializerTypeInferer.<V>getSerializer(af.getField().getType()).fromBytes((byte[]) value);
-                    }
-                    BeanUtils.setProperty(entity, af.getField().getName(), value);
+            for (int completed = 0; completed < tasks.size(); completed++) {
+                while (submitted < tasks.size() && submitted - completed < batchParallelism) {
+                    futures.add(completionService.submit(tasks.get(submitted++)));
                 }
-                BeanUtils.setProperty(entity, meta.getKeyFieldName(), row.getKey());
-                result.add(entity);
+                completionService.take().get();
             }
-        } catch (InstantiationException ex) {
-            throw new RuntimeException(ex);
-        } catch (IllegalAccessException ex) {
-            throw new RuntimeException(ex);
-        } catch (InvocationTargetException ex) {
+            List<R> results = new ArrayList<R>(futures.size());
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
             throw new RuntimeException(ex);
+        } catch (ExecutionException ex) {
+            for (Future<R> future : futures) {
+                future.cancel(false);
+            }
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new RuntimeException(ex.getCause());
         }
-        return result;
     }
 
-    private <K, V, T> void fillColumnNames(AbstractSliceQuery<K, String, V, T> query, AnnotatedClass meta) {
-        String[] columnNames = new String[meta.getFields().size()];
-        int i = 0;
-        for (AnnotatedField field : meta.getFields().values()) {
-            columnNames[i++] = field.getColumnName();
+    private ExecutorService getExecutorService() {
+        synchronized (executorLock) {
+            if (executorService == null) {
+                executorService = Executors.newFixedThreadPool(batchParallelism, new DaemonThreadFactory("helenus-worker"));
+                ownsExecutorService = true;
+            }
+            return executorService;
         }
-        query.setColumnNames(columnNames);
-    }
-
-    /* (non-Javadoc)
-     * @see org.helenus.IEntityManager#getHectorTemplate()
-     */
-    @Override
-    public HectorTemplate getHectorTemplate() {
-        return hectorTemplate;
     }
 
-    public void setHectorTemplate(HectorTemplate cassandraManager) {
-        this.hectorTemplate = cassandraManager;
+    private <T> String getColumnName(T e, AnnotatedField field) {
+        String name = field.getColumnName();
+        // ie if this has been annotated with @CassandraColumnName
+        if (name == null) {
+            name = getDynamicName(e, field);
+        }
+        return name;
     }
 
-    public boolean isDropKeyspace() {
-        return dropKeyspace;
+    private <T> String getSuperColumnName(T e, AnnotatedField field) {
+        String name = field.getSuperColumnName();
+        // ie if this has been annotated with @CassandraSuperColumnName
+        if (name == null) {
+            name = getDynamicName(e, field);
+        }
+        return name;
     }
 
-    public void setDropKeyspace(boolean dropKeyspace) {
-        this.dropKeyspace = dropKeyspace;
+    private <T> String getDynamicName(T e, AnnotatedField field) {
+        Object target = field.getAccessor().get(e);
+        Object name = target != null ? field.getNameAccessor().get(target) : null;
+        return name != null ? name.toString() : null;
     }
 
-    /* (non-Javadoc)
-     * @see org.helenus.IEntityManager#getList(java.lang.Class, K)
+    /**
+     * Adds the inverse column family entry of the given entity: the row key
+     * is the entity's (super) column name, the column name is the value of the
+     * field annotated with @CassandraInverseColumnName and the value is the
+     * entity's key
      */
-    @Override
-    public <T, K> List<T> getList(Class<T> clazz, K... ids) {
-        AnnotatedClass meta = classes.get(clazz);
+    private <T> void handleInverse(T e, byte[] key, AnnotatedClass meta,
+            String cfName, MutationBatch batch) {
+
+        if (!meta.hasInverse()) {
+            return;
+        }
+        byte[] rowKey = getInverseRowKey(e, meta);
+        byte[] inverseColumnName = getInverseColumnName(e, meta);
+        if (rowKey == null || inverseColumnName == null) {
+            logger.debug("Skipping the inverse entry of an entity of type " + e.getClass() + " without a column name");
+            return;
+        }
 
-        MultigetSliceQuery<K, String, byte[]> query = hectorTemplate.createMultigetSliceQuery(TypeInferringSerializer.<K>get(), StringSerializer.get(), BytesSerializer.get());
-        query.setColumnFamily(meta.getColumnFamilyName());
-        fillColumnNames(query, meta);
-        query.setKeys(ids);
+        Column column = new Column(inverseColumnName, key, storageBackend.createClock());
+        batch.addColumn(rowKey, cfName + meta.getInverseColumnFamilySuffix(), column);
+    }
 
-        return getResultList(clazz, meta, query);
+    private byte[] getInverseRowKey(Object e, AnnotatedClass meta) {
+        AnnotatedField field = meta.getSliceField();
+        String name = field.isSuperColumn() ? getSuperColumnName(e, field) : getColumnName(e, field);
+        return name != null ? StringSerializer.get().toBytes(name) : null;
+    }
 
+    private byte[] getInverseColumnName(Object e, AnnotatedClass meta) {
+        Object inverseColumnName = meta.getInverseColumnNameAccessor().get(e);
+        return inverseColumnName != null ? meta.getInverseColumnNameSerializer().toBytes(inverseColumnName) : null;
     }
+
     /* (non-Javadoc)
-     * @see org.helenus.IEntityManager#getList(java.lang.Class, K, boolean, java.lang.Object, int)
+     * @see org.helenus.EntityManager#update(T)
      */
     @Override
-    @SuppressWarnings({ "rawtypes", "unchecked" })
-    public <T, K> List<T> getList(Class<T> clazz, K id, boolean inverse, Object startColumnName, int count) {
-        AnnotatedClass meta = classes.get(clazz);
-        Serializer serializer = SerializerTypeInferer.getSerializer(startColumnName);
-
-        if (meta.hasSuperColumn()) {
-            SuperSliceQuery<K, byte[], byte[], byte[]> query = hectorTemplate.createSuperSliceQuery();
-            query.setKey(id).setRange(serializer.toBytes(startColumnName), null, false, count);
-            setColumnFamilyName(query, meta, inverse);
-        } else {
-            SliceQuery<K, byte[], byte[]> query = hectorTemplate.createSliceQuery();
-            query.setKey(id).setRange(serializer.toBytes(startColumnName), null, false, count);
-            setColumnFamilyName(query, meta, inverse);
+    public <T> T update(T e) {
+        OperationMeasurement measurement = startMeasurement(Operation.UPDATE, e.getClass());
+        try {
+            AnnotatedClass meta = getAnnotatedClass(e.getClass());
+            EntitySnapshot previous = snapshots.get(e);
+            Object key = getKey(e, meta);
+            if (previous == null || key == null) {
+                // the stored state of the entity is not known, so it is written whole
+                return persist(e);
+            }
+            entityValidator.validate(e, meta);
+
+            byte[] keyBytes = meta.getKeySerializer().toBytes(key);
+            EntitySnapshot current = takeSnapshot(e, meta);
+            MutationBatch batch = new MutationBatch();
+            addChanges(keyBytes, meta, previous, current, batch);
+            measureWrite(1, batch);
+            if (!batch.isEmpty()) {
+                execute(batch);
+            }
+            snapshots.put(e, current);
+            return e;
+        } catch (RuntimeException ex) {
+            markFailed(measurement);
+            throw ex;
+        } finally {
+            stopMeasurement(measurement);
+        }
+    }
+
+    /**
+     * Adds the insertions and deletions that turn the previous state of an
+     * entity into the current one. Columns whose name and value are
+     * unchanged are not written, and nulls are deleted rather than written
+     * as empty values.
+     */
+    private void addChanges(byte[] key, AnnotatedClass meta, EntitySnapshot previous,
+            EntitySnapshot current, MutationBatch batch) {
+        String cfName = meta.getColumnFamilyName();
+        Clock clock = storageBackend.createClock();
+
+        for (AnnotatedField field : meta.getWriteColumns()) {
+            int i = field.getIndex();
+            byte[] name = current.getName(i);
+            boolean renamed = current.isNameChanged(previous, i);
+            if (renamed && previous.getName(i) != null) {
+                batch.addDeletion(key, cfName, previous.getName(i), clock);
+            }
+            if (name == null) {
+                continue;
+            }
+            if (current.getValue(i) == null) {
+                if (!renamed && previous.getValue(i) != null) {
+                    batch.addDeletion(key, cfName, name, clock);
+                }
+            } else if (current.isChanged(previous, i)) {
+                batch.addColumn(key, cfName, new Column(name, current.getValue(i), clock));
+            }
+        }
+
+        for (AnnotatedField field : meta.getWriteSuperColumns()) {
+            int i = field.getIndex();
+            byte[] name = current.getName(i);
+            boolean renamed = current.isNameChanged(previous, i);
+            if (renamed && previous.getName(i) != null) {
+                batch.addDeletion(key, cfName, previous.getName(i), clock);
+            }
+            if (name == null) {
+                continue;
+            }
+            List<Column> columns = new ArrayList<Column>();
+            for (AnnotatedField child : field.getChildFields().values()) {
+                int j = child.getIndex();
+                if (current.getName(j) == null || !(renamed || current.isChanged(previous, j))) {
+                    continue;
+                }
+                // sub-columns can't be deleted in a batch, so nulls are still written as empty values
+                byte[] value = current.getValue(j);
+                if (value == null && renamed) {
+                    continue;
+                }
+                columns.add(new Column(current.getName(j), value != null ? value : new byte[0], clock));
+            }
+            if (!columns.isEmpty()) {
+                batch.addSuperColumn(key, cfName, new SuperColumn(name, columns));
+            }
+        }
+
+        if (meta.hasInverse() && current.isInverseChanged(previous)) {
+            String inverseCfName = cfName + meta.getInverseColumnFamilySuffix();
+            if (previous.getInverseRowKey() != null && previous.getInverseColumnName() != null) {
+                batch.addDeletion(previous.getInverseRowKey(), inverseCfName, previous.getInverseColumnName(), clock);
+            }
+            if (current.getInverseRowKey() != null && current.getInverseColumnName() != null) {
+                batch.addColumn(current.getInverseRowKey(), inverseCfName,
+                        new Column(current.getInverseColumnName(), key, clock));
+            }
+        }
+    }
+
+    private EntitySnapshot takeSnapshot(Object e, AnnotatedClass meta) {
+        EntitySnapshot snapshot = new EntitySnapshot(meta.getFields().size());
+        for (AnnotatedField field : meta.getWriteColumns()) {
+            snapshot.set(field.getIndex(), getNameBytes(e, field), getNullableValueBytes(e, field));
+        }
+        for (AnnotatedField field : meta.getWriteSuperColumns()) {
+            snapshot.set(field.getIndex(), getNameBytes(e, field), null);
+            for (AnnotatedField child : field.getChildFields().values()) {
+                snapshot.set(child.getIndex(), getNameBytes(e, child), getNullableValueBytes(e, child));
+            }
+        }
+        if (meta.hasInverse()) {
+            snapshot.setInverse(getInverseRowKey(e, meta), getInverseColumnName(e, meta));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Called for each entity materialized from the store
+     */
+    private void loaded(Object entity, AnnotatedClass meta) {
+        loaded(entity, meta, null);
+    }
+
+    private void loaded(Object entity, AnnotatedClass meta, Projection projection) {
+        if (projection != null) {
+            projections.put(entity, projection);
+        }
+        if (metricsListener != null) {
+            OperationMeasurement measurement = currentMeasurement.get();
+            if (measurement != null) {
+                measurement.addRows(1);
+            }
+        }
+        trackChanges(entity, meta);
+    }
+
+    /**
+     * Records the current state of the entity, if changes are tracked
+     */
+    private void trackChanges(Object e, AnnotatedClass meta) {
+        if (trackChanges) {
+            snapshots.put(e, takeSnapshot(e, meta));
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.IEntityManager#getByPropertyValue(java.lang.Class, java.lang.String, java.lang.Object)
+     */
+    @Override
+    public <T> List<T> getByPropertyValue(Class<T> clazz, String propertyName, Object value) {
+        return getByPropertyValue(clazz, propertyName, value, null);
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.EntityManager#getByPropertyValue(java.lang.Class, java.lang.String, java.lang.Object, java.util.Set)
+     */
+    @Override
+    public <T> List<T> getByPropertyValue(Class<T> clazz, String propertyName, Object value,
+            Set<String> properties) {
+        OperationMeasurement measurement = startMeasurement(Operation.GET_BY_PROPERTY_VALUE, clazz);
+        try {
+            AnnotatedClass meta = getAnnotatedClass(clazz);
+            if (isQueryCached(meta)) {
+                return getCachedByPropertyValue(clazz, meta, propertyName, value, properties);
+            }
+            List<T> result = new ArrayList<T>();
+            Iterator<T> iterator = iterateByPropertyValue(clazz, propertyName, value, indexPageSize, properties);
+            while (iterator.hasNext()) {
+                result.add(iterator.next());
+            }
+            return result;
+        } catch (RuntimeException ex) {
+            markFailed(measurement);
+            throw ex;
+        } finally {
+            stopMeasurement(measurement);
+        }
+    }
+
+    /**
+     * Looks up the keys of the entities with the given property value in the
+     * query cache, and reads the entities with a multiget. On a miss, the
+     * index is queried and the keys it returns are cached.
+     */
+    private <T> List<T> getCachedByPropertyValue(Class<T> clazz, AnnotatedClass meta, String propertyName,
+            Object value, Set<String> properties) {
+        AnnotatedField fld = meta.getField(propertyName);
+        if (fld == null || !fld.isSecondaryIndex()) {
+            throw new IllegalArgumentException("There is no secondary index defined for this property");
+        }
+        byte[] valueBytes = fld.getSerializer().toBytes(value);
+        List<byte[]> keys = queryCache.get(clazz, propertyName, valueBytes);
+        if (keys != null) {
+            Object[] ids = new Object[keys.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = meta.getKeySerializer().fromBytes(keys.get(i));
+            }
+            // the property is needed to drop the entities that no longer have the value
+            if (properties != null && !properties.contains(propertyName)) {
+                properties = new HashSet<String>(properties);
+                properties.add(propertyName);
+            }
+            List<T> result = getList(clazz, properties, ids);
+            for (Iterator<T> iterator = result.iterator(); iterator.hasNext();) {
+                Object current = fld.getAccessor().get(iterator.next());
+                if (current == null || !Arrays.equals(valueBytes, fld.getSerializer().toBytes(current))) {
+                    iterator.remove();
+                    queryCache.invalidate(clazz, propertyName, valueBytes);
+                }
+            }
+            return result;
+        }
+
+        long generation = queryCache.getGeneration(clazz, propertyName, valueBytes);
+        List<T> result = new ArrayList<T>();
+        Iterator<T> iterator = iterateByPropertyValue(clazz, propertyName, value, indexPageSize, properties);
+        while (iterator.hasNext()) {
+            result.add(iterator.next());
+        }
+        keys = new ArrayList<byte[]>(result.size());
+        for (T entity : result) {
+            keys.add(meta.getKeySerializer().toBytes(getKey(entity, meta)));
+        }
+        queryCache.put(clazz, propertyName, valueBytes, keys, generation);
+        return result;
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.EntityManager#iterateByPropertyValue(java.lang.Class, java.lang.String, java.lang.Object, int)
+     */
+    @Override
+    public <T> Iterator<T> iterateByPropertyValue(Class<T> clazz, String propertyName,
+            Object value, int pageSize) {
+        return iterateByPropertyValue(clazz, propertyName, value, pageSize, null);
+    }
+
+    private <T> Iterator<T> iterateByPropertyValue(final Class<T> clazz, String propertyName,
+            Object value, final int pageSize, Set<String> properties) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("The page size must be positive");
+        }
+        AnnotatedClass meta = getAnnotatedClass(clazz);
+        Projection projection = getProjection(meta, properties);
+
+        AnnotatedField fld = meta.getField(propertyName);
+        if (fld == null || !fld.isSecondaryIndex()) {
+            throw new IllegalArgumentException("There is no secondary index defined for this property");
+        }
+
+        IndexExpression expression = new IndexExpression(
+                StringSerializer.get().toBytes(fld.getColumnName()), IndexOperator.EQ,
+                fld.getSerializer().toBytes(value));
+        return iterateIndexed(clazz, meta, Collections.singletonList(expression), pageSize, projection,
+                Operation.GET_BY_PROPERTY_VALUE);
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.EntityManager#createQuery(java.lang.Class)
+     */
+    @Override
+    public <T> EntityQuery<T> createQuery(Class<T> clazz) {
+        return new EntityQuery<T>(this, clazz, indexPageSize);
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.EntityManager#getByQuery(org.helenus.EntityQuery)
+     */
+    @Override
+    public <T> List<T> getByQuery(EntityQuery<T> query) {
+        OperationMeasurement measurement = startMeasurement(Operation.GET_BY_QUERY, query.getEntityClass());
+        try {
+            List<T> result = new ArrayList<T>();
+            Iterator<T> iterator = iterateByQuery(query);
+            while (iterator.hasNext()) {
+                result.add(iterator.next());
+            }
+            return result;
+        } catch (RuntimeException ex) {
+            markFailed(measurement);
+            throw ex;
+        } finally {
+            stopMeasurement(measurement);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.EntityManager#iterateByQuery(org.helenus.EntityQuery)
+     */
+    @Override
+    public <T> Iterator<T> iterateByQuery(EntityQuery<T> query) {
+        AnnotatedClass meta = getAnnotatedClass(query.getEntityClass());
+        Projection projection = getProjection(meta, query.getProperties());
+        return iterateIndexed(query.getEntityClass(), meta, getIndexExpressions(meta, query),
+                query.getPageSize(), projection, Operation.GET_BY_QUERY);
+    }
+
+    /**
+     * Converts the expressions of the query to index expressions. The
+     * equality on the most selective index - the hinted one, or else the one
+     * with the highest selectivity - is placed first, followed by the other
+     * expressions in the order they were added.
+     */
+    private List<IndexExpression> getIndexExpressions(AnnotatedClass meta, EntityQuery<?> query) {
+        List<IndexExpression> expressions = new ArrayList<IndexExpression>(query.getExpressions().size());
+        int primary = -1;
+        int primarySelectivity = Integer.MIN_VALUE;
+        for (EntityQuery.Expression expression : query.getExpressions()) {
+            AnnotatedField field = meta.getField(expression.getPropertyName());
+            if (field == null || field.getColumnName() == null || field.hasSuperColumnParent()) {
+                throw new IllegalArgumentException("Property " + expression.getPropertyName() + " is not a statically named column of " + meta.getClazz().getName());
+            }
+            if (field.isSecondaryIndex() && expression.getOperator() == IndexOperator.EQ) {
+                boolean hinted = expression.getPropertyName().equals(query.getIndexHint());
+                int selectivity = hinted ? Integer.MAX_VALUE : field.getIndexSelectivity();
+                if (selectivity > primarySelectivity) {
+                    primary = expressions.size();
+                    primarySelectivity = selectivity;
+                }
+            }
+            expressions.add(new IndexExpression(field.getNameBytes(), expression.getOperator(),
+                    field.getSerializer().toBytes(expression.getValue())));
+        }
+        if (primary == -1) {
+            throw new IllegalArgumentException("A query on " + meta.getClazz().getName() + " requires an equality on a property with a secondary index");
+        }
+        if (query.getIndexHint() != null && primarySelectivity != Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("There is no equality on the indexed property " + query.getIndexHint());
+        }
+        expressions.add(0, expressions.remove(primary));
+        return expressions;
+    }
+
+    /**
+     * Lazily iterates over the rows matching the given index expressions,
+     * fetching pageSize rows at a time
+     */
+    private <T> Iterator<T> iterateIndexed(final Class<T> clazz, final AnnotatedClass meta,
+            final List<IndexExpression> expressions, final int pageSize, final Projection projection,
+            final Operation operation) {
+        // the filtered columns are also fetched, as only fetched columns are
+        // guaranteed to be checked against the expressions
+        Set<String> names = new LinkedHashSet<String>(projection != null ? Arrays.asList(projection.getColumnNames()) : meta.getColumnNames());
+        for (IndexExpression expression : expressions) {
+            names.add(StringSerializer.get().fromBytes(expression.getColumn_name()));
+        }
+        final SlicePredicate predicate = getNamesPredicate(names.toArray(new String[names.size()]));
+
+        return new PagingIterator<T>() {
+            private byte[] startKey = new byte[0];
+            private boolean firstPage = true;
+
+            @Override
+            protected List<T> fetchNextPage() {
+                if (startKey == null) {
+                    return null;
+                }
+                OperationMeasurement measurement = startMeasurement(operation, clazz);
+                try {
+                    // the start key is inclusive, so every page after the first
+                    // begins with the last row of the previous one
+                    int count = firstPage ? pageSize : pageSize + 1;
+                    IndexClause clause = new IndexClause(expressions, startKey, count);
+                    long generation = getCacheGeneration(meta);
+                    Map<byte[], List<Column>> rows = storageBackend.getIndexedSlices(meta.getColumnFamilyName(), clause, predicate);
+
+                    List<T> page = new ArrayList<T>(rows.size());
+                    for (Map.Entry<byte[], List<Column>> row : rows.entrySet()) {
+                        if (!firstPage && Arrays.equals(row.getKey(), startKey)) {
+                            continue;
+                        }
+                        if (!row.getValue().isEmpty()) {
+                            page.add(createEntity(clazz, meta, row.getKey(), row.getValue(), projection, generation));
+                        }
+                    }
+                    startKey = rows.size() < count ? null : lastKey(rows);
+                    firstPage = false;
+                    if (meta.hasEagerDependentKey()) {
+                        resolveDependentKeys(page, meta);
+                    }
+                    return page;
+                } catch (RuntimeException ex) {
+                    markFailed(measurement);
+                    throw ex;
+                } finally {
+                    stopMeasurement(measurement);
+                }
+            }
+        };
+    }
+
+    private static byte[] lastKey(Map<byte[], List<Column>> rows) {
+        byte[] key = null;
+        for (byte[] rowKey : rows.keySet()) {
+            key = rowKey;
+        }
+        return key;
+    }
+
+    /**
+     * @param generation the cache generation of the class, obtained with
+     * {@link #getCacheGeneration(AnnotatedClass)} before the row was read
+     */
+    private <T> T createEntity(Class<T> clazz, AnnotatedClass meta, byte[] keyBytes,
+            List<Column> columns, Projection projection, long generation) {
+        try {
+            T entity = clazz.newInstance();
+            for (Column column : columns) {
+                setColumnValue(entity, project(meta.getColumnField(column.getName()), projection), column.getValue());
+            }
+            // partial rows are not cached
+            if (isCached(meta) && projection == null) {
+                String[] names = new String[columns.size()];
+                byte[][] values = new byte[columns.size()][];
+                for (int i = 0; i < names.length; i++) {
+                    names[i] = StringSerializer.get().fromBytes(columns.get(i).getName());
+                    values[i] = columns.get(i).getValue();
+                }
+                entityCache.put(clazz, keyBytes, CachedRow.forColumns(names, values), generation);
+            }
+            setKey(entity, meta, meta.getKeySerializer().fromBytes(keyBytes));
+            loaded(entity, meta, projection);
+            return entity;
+        } catch (InstantiationException ex) {
+            throw new RuntimeException(ex);
+        } catch (IllegalAccessException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private <T> T createSuperEntity(Class<T> clazz, AnnotatedClass meta, byte[] keyBytes,
+            List<SuperColumn> superColumns, Projection projection, long generation) {
+        try {
+            T entity = clazz.newInstance();
+            for (SuperColumn superColumn : superColumns) {
+                AnnotatedField superColumnField = meta.getSuperColumnField(superColumn.getName());
+                for (Column column : superColumn.getColumns()) {
+                    setColumnValue(entity, superColumnField != null
+                            ? project(superColumnField.getChildField(column.getName()), projection) : null,
+                            column.getValue());
+                }
+            }
+            if (isCached(meta) && projection == null) {
+                entityCache.put(clazz, keyBytes, toCachedRow(superColumns), generation);
+            }
+            setKey(entity, meta, meta.getKeySerializer().fromBytes(keyBytes));
+            loaded(entity, meta, projection);
+            return entity;
+        } catch (InstantiationException ex) {
+            throw new RuntimeException(ex);
+        } catch (IllegalAccessException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private CachedRow toCachedRow(List<SuperColumn> superColumns) {
+        String[] names = new String[superColumns.size()];
+        CachedRow[] rows = new CachedRow[superColumns.size()];
+        for (int i = 0; i < names.length; i++) {
+            SuperColumn superColumn = superColumns.get(i);
+            names[i] = StringSerializer.get().fromBytes(superColumn.getName());
+            String[] columnNames = new String[superColumn.getColumnsSize()];
+            byte[][] values = new byte[columnNames.length][];
+            for (int j = 0; j < columnNames.length; j++) {
+                Column column = superColumn.getColumns().get(j);
+                columnNames[j] = StringSerializer.get().fromBytes(column.getName());
+                values[j] = column.getValue();
+            }
+            rows[i] = CachedRow.forColumns(columnNames, values);
+        }
+        return CachedRow.forSuperColumns(names, rows);
+    }
+
+    private <T> T createEntity(Class<T> clazz, AnnotatedClass meta, Object key,
+            CachedRow row, Projection projection) throws InstantiationException, IllegalAccessException {
+        T entity = clazz.newInstance();
+        for (int i = 0; i < row.size(); i++) {
+            if (row.isSuperRow()) {
+                AnnotatedField superColumnField = meta.getSuperColumnFields().get(row.getName(i));
+                if (superColumnField == null) {
+                    continue;
+                }
+                CachedRow superColumn = row.getSuperColumn(i);
+                for (int j = 0; j < superColumn.size(); j++) {
+                    setColumnValue(entity, project(superColumnField.getChildFields().get(superColumn.getName(j)), projection), superColumn.getValue(j));
+                }
+            } else {
+                setColumnValue(entity, project(meta.getColumnFields().get(row.getName(i)), projection), row.getValue(i));
+            }
+        }
+        setKey(entity, meta, key);
+        loaded(entity, meta, projection);
+        return entity;
+    }
+
+    /**
+     * @return the field, or null if it is not included in the projection
+     */
+    private AnnotatedField project(AnnotatedField field, Projection projection) {
+        return field == null || projection == null || projection.includes(field) ? field : null;
+    }
+
+    private void setColumnValue(Object entity, AnnotatedField af, byte[] bytesValue) {
+        if (metricsListener != null) {
+            OperationMeasurement measurement = currentMeasurement.get();
+            if (measurement != null) {
+                measurement.addColumns(1, bytesValue.length);
+            }
+        }
+        // columns that are not mapped are ignored
+        if (af == null) {
+            return;
+        }
+        if (af.getPrimitiveCodec() != null) {
+            // nulls are stored as empty values, and leave primitives unset
+            if (bytesValue.length > 0) {
+                af.getPrimitiveCodec().set(af.getField(), entity, bytesValue);
+            }
+            return;
+        }
+        // nulls are stored as empty values
+        Object value = bytesValue.length > 0 ? af.getSerializer().fromBytes(bytesValue) : null;
+        af.getAccessor().set(entity, value);
+    }
+
+    /**
+     * Resolves the fields with the given names, and the (super) columns
+     * that hold them. Super columns are always fetched whole, but only the
+     * requested columns are read from them.
+     *
+     * @return the projection, or null if all fields are requested
+     */
+    private Projection getProjection(AnnotatedClass meta, Set<String> properties) {
+        if (properties == null) {
+            return null;
+        }
+        boolean[] fields = new boolean[meta.getFields().size()];
+        Set<String> columnNames = new LinkedHashSet<String>();
+        Set<String> superColumnNames = new LinkedHashSet<String>();
+        for (String property : properties) {
+            // the key is always set
+            if (property.equals(meta.getKeyFieldName())) {
+                continue;
+            }
+            AnnotatedField field = meta.getField(property);
+            if (field == null) {
+                throw new IllegalArgumentException("Property " + property + " is not mapped in " + meta.getClazz().getName());
+            }
+            AnnotatedField superColumnField = field.hasSuperColumnParent()
+                    ? meta.getField(field.getSuperColumnParentName()) : field;
+            String name = superColumnField.isSuperColumn() ? superColumnField.getSuperColumnName() : field.getColumnName();
+            if (name == null) {
+                throw new IllegalArgumentException("Only properties with static column names can be projected. Class/Field: " + meta.getClazz().getName() + "/" + property);
+            }
+            if (superColumnField.isSuperColumn()) {
+                superColumnNames.add(name);
+            } else {
+                columnNames.add(name);
+            }
+            fields[field.getIndex()] = true;
+            if (field.isSuperColumn()) {
+                for (AnnotatedField child : field.getChildFields().values()) {
+                    fields[child.getIndex()] = true;
+                }
+            }
+        }
+        if (columnNames.isEmpty() && superColumnNames.isEmpty()) {
+            throw new IllegalArgumentException("At least one mapped property of " + meta.getClazz().getName() + " must be requested");
+        }
+        return new Projection(fields, columnNames.toArray(new String[columnNames.size()]),
+                superColumnNames.toArray(new String[superColumnNames.size()]));
+    }
+
+    private SlicePredicate getNamesPredicate(String[] names) {
+        SlicePredicate predicate = new SlicePredicate();
+        for (String name : names) {
+            predicate.addToColumn_names(StringSerializer.get().toBytes(name));
+        }
+        return predicate;
+    }
+
+    /**
+     * @param names serialized names, which are shared by the predicate (so
+     * the list must not be modified)
+     */
+    private SlicePredicate getNamesPredicate(List<byte[]> names) {
+        SlicePredicate predicate = new SlicePredicate();
+        predicate.setColumn_names(names);
+        return predicate;
+    }
+
+    private SlicePredicate getRangePredicate(byte[] start, boolean reversed, int count) {
+        return getRangePredicate(start, new byte[0], reversed, count);
+    }
+
+    private SlicePredicate getRangePredicate(byte[] start, byte[] finish, boolean reversed, int count) {
+        SlicePredicate predicate = new SlicePredicate();
+        predicate.setSlice_range(new SliceRange(start, finish, reversed, count));
+        return predicate;
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.IEntityManager#getHectorTemplate()
+     */
+    @Override
+    public HectorTemplate getHectorTemplate() {
+        return hectorTemplate;
+    }
+
+    /**
+     * Sets the template the entity manager works with, through a
+     * {@link HectorStorageBackend}
+     */
+    public void setHectorTemplate(HectorTemplate cassandraManager) {
+        this.hectorTemplate = cassandraManager;
+        this.storageBackend = new HectorStorageBackend(cassandraManager);
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.EntityManager#getStorageBackend()
+     */
+    @Override
+    public StorageBackend getStorageBackend() {
+        return storageBackend;
+    }
+
+    /**
+     * @param storageBackend the store that entities are read from and
+     *     written to, instead of the one of a hector template
+     */
+    public void setStorageBackend(StorageBackend storageBackend) {
+        this.storageBackend = storageBackend;
+        this.hectorTemplate = null;
+    }
+
+    public ValidationMode getValidationMode() {
+        return entityValidator.getMode();
+    }
+
+    public void setValidationMode(ValidationMode validationMode) {
+        entityValidator.setMode(validationMode);
+    }
+
+    /**
+     * @param validationSampleInterval the number of written entities per
+     * validated entity, when the validation mode is {@link ValidationMode#SAMPLED}
+     */
+    public void setValidationSampleInterval(int validationSampleInterval) {
+        entityValidator.setSampleInterval(validationSampleInterval);
+    }
+
+    public int getBatchMaxColumns() {
+        return batchMaxColumns;
+    }
+
+    /**
+     * @param batchMaxColumns the maximum number of columns sent with a
+     * single batch_mutate call by {@link #persistAll(Collection)}
+     */
+    public void setBatchMaxColumns(int batchMaxColumns) {
+        this.batchMaxColumns = batchMaxColumns;
+    }
+
+    public long getBatchMaxBytes() {
+        return batchMaxBytes;
+    }
+
+    /**
+     * @param batchMaxBytes the maximum size (of keys, column names and
+     * values) sent with a single batch_mutate call by {@link #persistAll(Collection)}
+     */
+    public void setBatchMaxBytes(long batchMaxBytes) {
+        this.batchMaxBytes = batchMaxBytes;
+    }
+
+    public int getBatchParallelism() {
+        return batchParallelism;
+    }
+
+    /**
+     * @param batchParallelism the maximum number of batch_mutate calls of a
+     * single {@link #persistAll(Collection)} (or multiget chunks of a single
+     * read) that are executed concurrently
+     */
+    public void setBatchParallelism(int batchParallelism) {
+        this.batchParallelism = batchParallelism;
+    }
+
+    public int getMultigetChunkSize() {
+        return multigetChunkSize;
+    }
+
+    /**
+     * @param multigetChunkSize the maximum number of keys requested with a
+     * single multiget_slice call by {@link #getList(Class, Object...)}; the
+     * chunks are fetched concurrently, batchParallelism at a time
+     */
+    public void setMultigetChunkSize(int multigetChunkSize) {
+        if (multigetChunkSize < 1) {
+            throw new IllegalArgumentException("The multiget chunk size must be positive");
+        }
+        this.multigetChunkSize = multigetChunkSize;
+    }
+
+    public int getMultigetRetries() {
+        return multigetRetries;
+    }
+
+    /**
+     * @param multigetRetries the number of times a failed multiget chunk is
+     * retried before the whole read fails
+     */
+    public void setMultigetRetries(int multigetRetries) {
+        this.multigetRetries = multigetRetries;
+    }
+
+    /**
+     * Sets the executor used for concurrent requests. If none is set, a
+     * pool with batchParallelism daemon threads is created when first needed
+     */
+    public void setExecutorService(ExecutorService executorService) {
+        synchronized (executorLock) {
+            this.executorService = executorService;
+            this.ownsExecutorService = false;
+        }
+    }
 
-            ColumnSlice<byte[], byte[]> cs = query.execute().get();
+    /**
+     * Releases the resources held by this entity manager. An executor passed
+     * with {@link #setExecutorService(ExecutorService)} is not shut down.
+     */
+    public void destroy() {
+        try {
+            setWriteBehind(false);
+        } finally {
+            synchronized (executorLock) {
+                if (executorService != null && ownsExecutorService) {
+                    executorService.shutdown();
+                    executorService = null;
+                }
+            }
+        }
+    }
 
-            if (!inverse) {
-                for (HColumn<byte[], byte[]> column : cs.getColumns()) {
+    public boolean isWriteBehind() {
+        WriteBehindBuffer buffer = writeBehindBuffer;
+        return buffer != null && !buffer.isClosed();
+    }
 
+    /**
+     * Enables or disables write-behind mode. When enabled, writes return as
+     * soon as their mutations are queued, and a background thread sends them
+     * in batches, coalescing repeated writes of the same columns. Queued
+     * writes are not visible to reads until flushed, and failed flushes are
+     * retried rather than reported to the writers, unless they keep the
+     * queue full for longer than writeBehindMaxWait. Disabling the mode (or
+     * destroying the entity manager) flushes the queued writes. If that
+     * fails, the exception is thrown, and the writes stay queued until
+     * {@link #flush()} or disabling the mode again succeeds.
+     * <p>
+     * The write-behind limits must be set before the mode is enabled.
+     */
+    public void setWriteBehind(boolean writeBehind) {
+        WriteBehindBuffer buffer = writeBehindBuffer;
+        if (writeBehind && (buffer == null || buffer.isClosed())) {
+            if (buffer != null) {
+                // the columns left by a failed close are written first
+                buffer.close();
+            }
+            synchronized (writeBehindLock) {
+                if (writeBehindBuffer == buffer) {
+                    writeBehindBuffer = new WriteBehindBuffer(writeBehindFlushSize, writeBehindMaxPending,
+                            writeBehindFlushInterval, writeBehindMaxWait) {
+                        @Override
+                        protected void write(MutationBatch batch) {
+                            EntityManagerImpl.this.write(batch.split(batchMaxColumns, batchMaxBytes));
+                        }
+                    };
+                }
+            }
+        } else if (!writeBehind && buffer != null) {
+            // writers still holding the buffer write synchronously once it
+            // is closed. If the final flush fails, the buffer is kept, so that
+            // its columns are retried by flush() or by disabling again.
+            buffer.close();
+            synchronized (writeBehindLock) {
+                if (writeBehindBuffer == buffer) {
+                    writeBehindBuffer = null;
                 }
             }
         }
+    }
+
+    /**
+     * Sends the writes queued in write-behind mode
+     */
+    public void flush() {
+        WriteBehindBuffer buffer = writeBehindBuffer;
+        if (buffer != null) {
+            buffer.flush();
+        }
+    }
 
-        return null;
+    /**
+     * @return the number of columns waiting to be written in write-behind
+     * mode
+     */
+    public int getWriteBehindPendingCount() {
+        WriteBehindBuffer buffer = writeBehindBuffer;
+        return buffer != null ? buffer.getPendingCount() : 0;
+    }
+
+    /**
+     * @return the number of columns whose queued write was superseded by a
+     * later write before being sent, in write-behind mode
+     */
+    public long getWriteBehindCoalescedCount() {
+        WriteBehindBuffer buffer = writeBehindBuffer;
+        return buffer != null ? buffer.getCoalescedCount() : 0;
     }
 
-    private void setColumnFamilyName(AbstractSliceQuery query, AnnotatedClass meta, boolean inverse){
+    public int getWriteBehindFlushSize() {
+        return writeBehindFlushSize;
+    }
+
+    /**
+     * @param writeBehindFlushSize the number of queued columns that triggers
+     * a flush in write-behind mode
+     */
+    public void setWriteBehindFlushSize(int writeBehindFlushSize) {
+        this.writeBehindFlushSize = writeBehindFlushSize;
+    }
+
+    public int getWriteBehindMaxPending() {
+        return writeBehindMaxPending;
+    }
+
+    /**
+     * @param writeBehindMaxPending the number of queued columns at which
+     * writers block until a flush makes room, in write-behind mode
+     */
+    public void setWriteBehindMaxPending(int writeBehindMaxPending) {
+        this.writeBehindMaxPending = writeBehindMaxPending;
+    }
+
+    public long getWriteBehindMaxWait() {
+        return writeBehindMaxWait;
+    }
+
+    /**
+     * @param writeBehindMaxWait the maximum time, in milliseconds, that a
+     * writer blocks for room in write-behind mode. A write that times out
+     * fails with an IllegalStateException, caused by the last flush failure
+     * if there was one.
+     */
+    public void setWriteBehindMaxWait(long writeBehindMaxWait) {
+        this.writeBehindMaxWait = writeBehindMaxWait;
+    }
+
+    public long getWriteBehindFlushInterval() {
+        return writeBehindFlushInterval;
+    }
+
+    /**
+     * @param writeBehindFlushInterval the maximum time, in milliseconds, that
+     * writes are queued in write-behind mode
+     */
+    public void setWriteBehindFlushInterval(long writeBehindFlushInterval) {
+        this.writeBehindFlushInterval = writeBehindFlushInterval;
+    }
+
+    public int getIndexPageSize() {
+        return indexPageSize;
+    }
+
+    /**
+     * @param indexPageSize the number of rows fetched per round trip when
+     * getByPropertyValue pages through secondary index matches
+     */
+    public void setIndexPageSize(int indexPageSize) {
+        this.indexPageSize = indexPageSize;
+    }
+
+    public MetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * @param metricsListener receives the measurements of all operations.
+     * Nothing is measured if not set.
+     */
+    public void setMetricsListener(MetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    public boolean isTrackChanges() {
+        return trackChanges;
+    }
+
+    /**
+     * @param trackChanges whether a snapshot of each loaded or persisted
+     * entity is kept, so that {@link #update(Object)} only writes the columns
+     * that have changed since. Off by default.
+     */
+    public void setTrackChanges(boolean trackChanges) {
+        this.trackChanges = trackChanges;
+    }
+
+    public EntityCache getEntityCache() {
+        return entityCache;
+    }
+
+    /**
+     * @param entityCache the cache used for classes mapped with
+     * {@code @CassandraColumnFamily(cached=true)}. No rows are cached if not set.
+     */
+    public void setEntityCache(EntityCache entityCache) {
+        this.entityCache = entityCache;
+    }
+
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * @param queryCache the cache of getByPropertyValue lookups on classes
+     * mapped with {@code @CassandraColumnFamily(cacheQueries=true)}. Lookups
+     * are not cached if not set.
+     */
+    public void setQueryCache(QueryCache queryCache) {
+        this.queryCache = queryCache;
+    }
+
+    public boolean isDropKeyspace() {
+        return dropKeyspace;
+    }
+
+    public void setDropKeyspace(boolean dropKeyspace) {
+        this.dropKeyspace = dropKeyspace;
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.IEntityManager#getList(java.lang.Class, K)
+     */
+    @Override
+    public <T, K> List<T> getList(Class<T> clazz, K... ids) {
+        return getList(clazz, (Set<String>) null, ids);
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.EntityManager#getList(java.lang.Class, java.util.Set, K[])
+     */
+    @Override
+    public <T, K> List<T> getList(Class<T> clazz, Set<String> properties, K... ids) {
+        OperationMeasurement measurement = startMeasurement(Operation.GET_LIST, clazz);
+        try {
+            AnnotatedClass meta = getAnnotatedClass(clazz);
+            List<T> result = new ArrayList<T>(multiget(clazz, meta, getProjection(meta, properties), ids).values());
+            if (meta.hasEagerDependentKey()) {
+                resolveDependentKeys(result, meta);
+            }
+            return result;
+        } catch (RuntimeException ex) {
+            markFailed(measurement);
+            throw ex;
+        } finally {
+            stopMeasurement(measurement);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.EntityManager#getAll(java.lang.Class, K[])
+     */
+    @Override
+    public <T, K> MultigetResult<K, T> getAll(Class<T> clazz, K... ids) {
+        OperationMeasurement measurement = startMeasurement(Operation.GET_LIST, clazz);
+        try {
+            AnnotatedClass meta = getAnnotatedClass(clazz);
+            Map<K, T> entities = multiget(clazz, meta, null, ids);
+            if (meta.hasEagerDependentKey()) {
+                resolveDependentKeys(new ArrayList<T>(entities.values()), meta);
+            }
+            List<K> missingKeys = new ArrayList<K>();
+            for (K id : ids) {
+                if (!entities.containsKey(id) && !missingKeys.contains(id)) {
+                    missingKeys.add(id);
+                }
+            }
+            return new MultigetResult<K, T>(entities, missingKeys);
+        } catch (RuntimeException ex) {
+            markFailed(measurement);
+            throw ex;
+        } finally {
+            stopMeasurement(measurement);
+        }
+    }
+
+    /**
+     * Reads the entities with the given keys, from the cache if possible.
+     * The other keys are split in chunks of multigetChunkSize, which are
+     * fetched concurrently.
+     *
+     * @return the found entities, in the order of their keys (each key is
+     * only included once)
+     */
+    @SuppressWarnings("unchecked")
+    private <T, K> Map<K, T> multiget(Class<T> clazz, AnnotatedClass meta, Projection projection, K[] ids) {
+        Serializer<K> keySerializer = (Serializer<K>) meta.getKeySerializer();
+        Map<K, byte[]> keys = new LinkedHashMap<K, byte[]>(ids.length * 2);
+        Map<ByteBuffer, T> found = new HashMap<ByteBuffer, T>(ids.length * 2);
+        List<byte[]> missingKeys = new ArrayList<byte[]>(ids.length);
+        try {
+            for (K id : ids) {
+                if (keys.containsKey(id)) {
+                    continue;
+                }
+                byte[] key = keySerializer.toBytes(id);
+                keys.put(id, key);
+                CachedRow row = isCached(meta) ? entityCache.get(clazz, key) : null;
+                if (row != null) {
+                    found.put(ByteBuffer.wrap(key), createEntity(clazz, meta, id, row, projection));
+                } else {
+                    missingKeys.add(key);
+                }
+            }
+        } catch (InstantiationException ex) {
+            throw new RuntimeException(ex);
+        } catch (IllegalAccessException ex) {
+            throw new RuntimeException(ex);
+        }
+
+        if (!missingKeys.isEmpty()) {
+            long generation = getCacheGeneration(meta);
+            SlicePredicate predicate = projection != null ? getNamesPredicate(projection.getColumnNames())
+                    : getNamesPredicate(meta.getColumnNameBytes());
+            Map<ByteBuffer, List<Column>> rows = multigetSlice(meta.getColumnFamilyName(),
+                    missingKeys, predicate);
+            for (byte[] key : missingKeys) {
+                List<Column> columns = rows.get(ByteBuffer.wrap(key));
+                // missing rows are returned without columns
+                if (columns != null && !columns.isEmpty()) {
+                    found.put(ByteBuffer.wrap(key), createEntity(clazz, meta, key, columns, projection, generation));
+                }
+            }
+        }
+
+        Map<K, T> result = new LinkedHashMap<K, T>(found.size() * 2);
+        for (Map.Entry<K, byte[]> key : keys.entrySet()) {
+            T entity = found.get(ByteBuffer.wrap(key.getValue()));
+            if (entity != null) {
+                result.put(key.getKey(), entity);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the given rows, in chunks of multigetChunkSize keys that are
+     * fetched concurrently
+     */
+    private Map<ByteBuffer, List<Column>> multigetSlice(String columnFamily, List<byte[]> keys,
+            SlicePredicate predicate) {
+        List<MultigetChunk<List<Column>>> chunks = new ArrayList<MultigetChunk<List<Column>>>();
+        for (int i = 0; i < keys.size(); i += multigetChunkSize) {
+            chunks.add(new MultigetChunk<List<Column>>(columnFamily,
+                    keys.subList(i, Math.min(i + multigetChunkSize, keys.size())), predicate) {
+                @Override
+                protected Map<byte[], List<Column>> fetch() {
+                    return storageBackend.multigetSlice(columnFamily, keys, predicate);
+                }
+            });
+        }
+        return merge(executeAll(chunks), keys.size());
+    }
+
+    /**
+     * Same as {@link #multigetSlice(String, List, SlicePredicate)}, for super
+     * column families
+     */
+    private Map<ByteBuffer, List<SuperColumn>> multigetSuperSlice(String columnFamily, List<byte[]> keys,
+            SlicePredicate predicate) {
+        List<MultigetChunk<List<SuperColumn>>> chunks = new ArrayList<MultigetChunk<List<SuperColumn>>>();
+        for (int i = 0; i < keys.size(); i += multigetChunkSize) {
+            chunks.add(new MultigetChunk<List<SuperColumn>>(columnFamily,
+                    keys.subList(i, Math.min(i + multigetChunkSize, keys.size())), predicate) {
+                @Override
+                protected Map<byte[], List<SuperColumn>> fetch() {
+                    return storageBackend.multigetSuperSlice(columnFamily, keys, predicate);
+                }
+            });
+        }
+        return merge(executeAll(chunks), keys.size());
+    }
+
+    private static <R> Map<ByteBuffer, R> merge(List<Map<byte[], R>> chunks, int size) {
+        Map<ByteBuffer, R> rows = new HashMap<ByteBuffer, R>(size * 2);
+        for (Map<byte[], R> chunk : chunks) {
+            for (Map.Entry<byte[], R> row : chunk.entrySet()) {
+                rows.put(ByteBuffer.wrap(row.getKey()), row.getValue());
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Fetches one chunk of the keys of a multiget, retrying it up to
+     * multigetRetries times if it fails
+     */
+    private abstract class MultigetChunk<R> implements Callable<Map<byte[], R>> {
+        protected final String columnFamily;
+        protected final List<byte[]> keys;
+        protected final SlicePredicate predicate;
+
+        MultigetChunk(String columnFamily, List<byte[]> keys, SlicePredicate predicate) {
+            this.columnFamily = columnFamily;
+            this.keys = keys;
+            this.predicate = predicate;
+        }
+
+        protected abstract Map<byte[], R> fetch();
+
+        @Override
+        public Map<byte[], R> call() {
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    return fetch();
+                } catch (RuntimeException ex) {
+                    if (attempt >= multigetRetries) {
+                        throw ex;
+                    }
+                    logger.warn("Multiget of " + keys.size() + " keys from " + columnFamily + " failed, retrying", ex);
+                }
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.IEntityManager#getList(java.lang.Class, K, boolean, java.lang.Object, int)
+     */
+    @Override
+    public <T, K> List<T> getList(Class<T> clazz, K id, boolean inverse, Object startColumnName, int count) {
+        return getList(clazz, id, inverse, startColumnName, false, count);
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.EntityManager#getList(java.lang.Class, K, boolean, java.lang.Object, boolean, int)
+     */
+    @Override
+    public <T, K> List<T> getList(Class<T> clazz, K id, boolean inverse, Object startColumnName,
+            boolean reversed, int count) {
+        OperationMeasurement measurement = startMeasurement(Operation.GET_LIST, clazz);
+        try {
+            AnnotatedClass meta = getSliceableClass(clazz, inverse);
+            byte[] start = getColumnNameBytes(meta, inverse, startColumnName);
+            return getSlice(clazz, meta, id, inverse, start, new byte[0], false, reversed, count).entities;
+        } catch (RuntimeException ex) {
+            markFailed(measurement);
+            throw ex;
+        } finally {
+            stopMeasurement(measurement);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.EntityManager#iterateList(java.lang.Class, K, boolean, java.lang.Object, boolean, int)
+     */
+    @Override
+    public <T, K> Iterator<T> iterateList(Class<T> clazz, K id, boolean inverse,
+            Object startColumnName, boolean reversed, int pageSize) {
+        AnnotatedClass meta = getSliceableClass(clazz, inverse);
+        return iterateSlice(clazz, meta, id, inverse, getColumnNameBytes(meta, inverse, startColumnName),
+                new byte[0], reversed, pageSize);
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.EntityManager#findByInverse(java.lang.Class, java.lang.Object, java.lang.Object, java.lang.Object, int)
+     */
+    @Override
+    public <T> List<T> findByInverse(Class<T> clazz, Object inverseKey, Object startColumnName,
+            Object endColumnName, int count) {
+        OperationMeasurement measurement = startMeasurement(Operation.GET_LIST, clazz);
+        try {
+            AnnotatedClass meta = getSliceableClass(clazz, true);
+            return getSlice(clazz, meta, inverseKey, true, getColumnNameBytes(meta, true, startColumnName),
+                    getColumnNameBytes(meta, true, endColumnName), false, false, count).entities;
+        } catch (RuntimeException ex) {
+            markFailed(measurement);
+            throw ex;
+        } finally {
+            stopMeasurement(measurement);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.EntityManager#iterateByInverse(java.lang.Class, java.lang.Object, java.lang.Object, java.lang.Object, boolean, int)
+     */
+    @Override
+    public <T> Iterator<T> iterateByInverse(Class<T> clazz, Object inverseKey, Object startColumnName,
+            Object endColumnName, boolean reversed, int pageSize) {
+        AnnotatedClass meta = getSliceableClass(clazz, true);
+        return iterateSlice(clazz, meta, inverseKey, true, getColumnNameBytes(meta, true, startColumnName),
+                getColumnNameBytes(meta, true, endColumnName), reversed, pageSize);
+    }
+
+    private <T> Iterator<T> iterateSlice(final Class<T> clazz, final AnnotatedClass meta, final Object id,
+            final boolean inverse, final byte[] firstStart, final byte[] finish, final boolean reversed,
+            final int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("The page size must be positive");
+        }
+
+        return new PagingIterator<T>() {
+            private byte[] start = firstStart;
+            private boolean firstPage = true;
+
+            @Override
+            protected List<T> fetchNextPage() {
+                if (start == null) {
+                    return null;
+                }
+                OperationMeasurement measurement = startMeasurement(Operation.GET_LIST, clazz);
+                try {
+                    // the start column is inclusive, so every page after the first
+                    // begins with the last column of the previous one
+                    int count = firstPage ? pageSize : pageSize + 1;
+                    SlicePage<T> page = getSlice(clazz, meta, id, inverse, start, finish, !firstPage, reversed, count);
+                    start = page.columnCount < count ? null : page.lastColumnName;
+                    firstPage = false;
+                    return page.entities;
+                } catch (RuntimeException ex) {
+                    markFailed(measurement);
+                    throw ex;
+                } finally {
+                    stopMeasurement(measurement);
+                }
+            }
+        };
+    }
+
+    private AnnotatedClass getSliceableClass(Class<?> clazz, boolean inverse) {
+        AnnotatedClass meta = getAnnotatedClass(clazz);
+        if (inverse && !meta.hasInverse()) {
+            throw new IllegalArgumentException("No inverse column family is mapped for " + clazz.getName());
+        }
+        if (meta.getSliceField() == null) {
+            throw new IllegalStateException("Rows of " + clazz.getName() + " can only be sliced if exactly one field has a dynamic (super) column name");
+        }
+        return meta;
+    }
+
+    private byte[] getColumnNameBytes(AnnotatedClass meta, boolean inverse, Object columnName) {
+        if (columnName == null) {
+            return new byte[0];
+        }
+        if (inverse) {
+            return meta.getInverseColumnNameSerializer().toBytes(columnName);
+        }
+        // (super) column names are always stored as strings
+        return StringSerializer.get().toBytes(columnName.toString());
+    }
+
+    /**
+     * Reads one slice of a wide row. Each (super) column of the row is an
+     * entity, or for inverse rows - a reference to the entity that is
+     * resolved with a single multiget.
+     */
+    private <T> SlicePage<T> getSlice(Class<T> clazz, AnnotatedClass meta, Object id, boolean inverse,
+            byte[] start, byte[] finish, boolean startExclusive, boolean reversed, int count) {
+        AnnotatedField sliceField = meta.getSliceField();
         String cfName = meta.getColumnFamilyName();
-        if (meta.hasInverse() && inverse) {
-            cfName +=  meta.getInverseColumnFamilySuffix();
+        SlicePage<T> page = new SlicePage<T>();
+        try {
+            if (inverse) {
+                String name = id.toString();
+                List<Column> columns = storageBackend.getSlice(cfName + meta.getInverseColumnFamilySuffix(),
+                        StringSerializer.get().toBytes(name), getRangePredicate(start, finish, reversed, count));
+                page.setColumns(columns.size(), columns.isEmpty() ? null : columns.get(columns.size() - 1).getName());
+                if (startExclusive && !columns.isEmpty() && Arrays.equals(columns.get(0).getName(), start)) {
+                    columns = columns.subList(1, columns.size());
+                }
+                page.entities = resolveInverse(clazz, meta, name, columns);
+            } else if (sliceField.isSuperColumn()) {
+                List<SuperColumn> superColumns = storageBackend.getSuperSlice(cfName,
+                        meta.getKeySerializer().toBytes(id), getRangePredicate(start, finish, reversed, count));
+                page.setColumns(superColumns.size(), superColumns.isEmpty() ? null : superColumns.get(superColumns.size() - 1).getName());
+                page.entities = new ArrayList<T>(superColumns.size());
+                for (SuperColumn superColumn : superColumns) {
+                    if (startExclusive && Arrays.equals(superColumn.getName(), start)) {
+                        continue;
+                    }
+                    if (isOtherField(meta.getSuperColumnFields(), sliceField, superColumn.getName())) {
+                        continue;
+                    }
+                    T entity = clazz.newInstance();
+                    for (Column column : superColumn.getColumns()) {
+                        String columnName = StringSerializer.get().fromBytes(column.getName());
+                        setColumnValue(entity, sliceField.getChildFields().get(columnName), column.getValue());
+                    }
+                    setKey(entity, meta, id);
+                    loaded(entity, meta);
+                    page.entities.add(entity);
+                }
+            } else {
+                List<Column> columns = storageBackend.getSlice(cfName,
+                        meta.getKeySerializer().toBytes(id), getRangePredicate(start, finish, reversed, count));
+                page.setColumns(columns.size(), columns.isEmpty() ? null : columns.get(columns.size() - 1).getName());
+                page.entities = new ArrayList<T>(columns.size());
+                for (Column column : columns) {
+                    if (startExclusive && Arrays.equals(column.getName(), start)) {
+                        continue;
+                    }
+                    if (isOtherField(meta.getColumnFields(), sliceField, column.getName())) {
+                        continue;
+                    }
+                    T entity = clazz.newInstance();
+                    setColumnValue(entity, sliceField, column.getValue());
+                    setKey(entity, meta, id);
+                    loaded(entity, meta);
+                    page.entities.add(entity);
+                }
+            }
+        } catch (InstantiationException ex) {
+            throw new RuntimeException(ex);
+        } catch (IllegalAccessException ex) {
+            throw new RuntimeException(ex);
+        }
+        if (meta.hasEagerDependentKey()) {
+            resolveDependentKeys(page.entities, meta);
+        }
+        return page;
+    }
+
+    /**
+     * Whether the column with the given name is a statically named column of
+     * another field, stored in the same row as the sliced columns
+     */
+    private boolean isOtherField(Map<String, AnnotatedField> staticFields, AnnotatedField sliceField, byte[] name) {
+        if (staticFields.isEmpty()) {
+            return false;
+        }
+        AnnotatedField field = staticFields.get(StringSerializer.get().fromBytes(name));
+        return field != null && field != sliceField;
+    }
+
+    /**
+     * Loads the entities referenced by the given inverse columns (named after
+     * the entities' inverse column name, with the entities' keys as values),
+     * preserving the order of the columns
+     */
+    private <T> List<T> resolveInverse(Class<T> clazz, AnnotatedClass meta, String name,
+            List<Column> columns) throws InstantiationException, IllegalAccessException {
+        if (columns.isEmpty()) {
+            return new ArrayList<T>(0);
+        }
+        AnnotatedField sliceField = meta.getSliceField();
+        byte[][] keys = new byte[columns.size()][];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = columns.get(i).getValue();
+        }
+        SlicePredicate predicate = getNamesPredicate(new String[] {name});
+
+        Map<ByteBuffer, T> entities = new HashMap<ByteBuffer, T>(keys.length * 2);
+        if (sliceField.isSuperColumn()) {
+            Map<ByteBuffer, List<SuperColumn>> rows = multigetSuperSlice(meta.getColumnFamilyName(),
+                    Arrays.asList(keys), predicate);
+            for (Map.Entry<ByteBuffer, List<SuperColumn>> row : rows.entrySet()) {
+                List<SuperColumn> superColumns = row.getValue();
+                if (superColumns.isEmpty()) {
+                    continue;
+                }
+                T entity = clazz.newInstance();
+                for (Column column : superColumns.get(0).getColumns()) {
+                    String columnName = StringSerializer.get().fromBytes(column.getName());
+                    setColumnValue(entity, sliceField.getChildFields().get(columnName), column.getValue());
+                }
+                entities.put(row.getKey(), entity);
+            }
+        } else {
+            Map<ByteBuffer, List<Column>> rows = multigetSlice(meta.getColumnFamilyName(),
+                    Arrays.asList(keys), predicate);
+            for (Map.Entry<ByteBuffer, List<Column>> row : rows.entrySet()) {
+                List<Column> rowColumns = row.getValue();
+                if (rowColumns.isEmpty()) {
+                    continue;
+                }
+                T entity = clazz.newInstance();
+                setColumnValue(entity, sliceField, rowColumns.get(0).getValue());
+                entities.put(row.getKey(), entity);
+            }
+        }
+
+        List<T> result = new ArrayList<T>(entities.size());
+        for (int i = 0; i < keys.length; i++) {
+            // entities that no longer exist (or are referenced twice) are skipped
+            T entity = entities.remove(ByteBuffer.wrap(keys[i]));
+            if (entity == null) {
+                continue;
+            }
+            setKey(entity, meta, meta.getKeySerializer().fromBytes(keys[i]));
+            Object inverseColumnName = meta.getInverseColumnNameSerializer().fromBytes(columns.get(i).getName());
+            meta.getInverseColumnNameAccessor().set(entity, inverseColumnName);
+            loaded(entity, meta);
+            result.add(entity);
+        }
+        return result;
+    }
+
+    /**
+     * The entities read from one slice of a wide row, along with what is
+     * needed to request the next slice
+     */
+    private static class SlicePage<T> {
+        private List<T> entities;
+        private int columnCount;
+        private byte[] lastColumnName;
+
+        void setColumns(int columnCount, byte[] lastColumnName) {
+            this.columnCount = columnCount;
+            this.lastColumnName = lastColumnName;
         }
-        query.setColumnFamily(cfName);
     }
 }
@@ -0,0 +1,148 @@
+package org.helenus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.cassandra.thrift.IndexOperator;
+
+/**
+ * A query on the secondary indexes of one mapped class, combining equality
+ * and range expressions on its properties. All expressions are sent with a
+ * single get_indexed_slices call, so the rows are filtered by the cluster.
+ * At least one of the expressions must be an equality on a property
+ * annotated with {@code @CassandraSecondaryIndex}; that index is used to find
+ * the candidate rows, and the other expressions are checked against them.
+ * <p>
+ * Range expressions compare the serialized values byte by byte, as the
+ * indexed columns are stored with BytesType validation.
+ */
+public class EntityQuery<T> {
+
+    private final EntityManager entityManager;
+    private final Class<T> entityClass;
+    private final List<Expression> expressions = new ArrayList<Expression>();
+    private String indexHint;
+    private Set<String> properties;
+    private int pageSize;
+
+    EntityQuery(EntityManager entityManager, Class<T> entityClass, int pageSize) {
+        this.entityManager = entityManager;
+        this.entityClass = entityClass;
+        this.pageSize = pageSize;
+    }
+
+    public EntityQuery<T> eq(String propertyName, Object value) {
+        return add(propertyName, IndexOperator.EQ, value);
+    }
+
+    public EntityQuery<T> gt(String propertyName, Object value) {
+        return add(propertyName, IndexOperator.GT, value);
+    }
+
+    public EntityQuery<T> gte(String propertyName, Object value) {
+        return add(propertyName, IndexOperator.GTE, value);
+    }
+
+    public EntityQuery<T> lt(String propertyName, Object value) {
+        return add(propertyName, IndexOperator.LT, value);
+    }
+
+    public EntityQuery<T> lte(String propertyName, Object value) {
+        return add(propertyName, IndexOperator.LTE, value);
+    }
+
+    private EntityQuery<T> add(String propertyName, IndexOperator operator, Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values can't be queried. Property: " + propertyName);
+        }
+        expressions.add(new Expression(propertyName, operator, value));
+        return this;
+    }
+
+    /**
+     * Marks the index of the given property as the most selective one, so
+     * that it is used to find the candidate rows. The property must have an
+     * equality expression. Without a hint, the index with the highest
+     * {@code @CassandraSecondaryIndex(selectivity)} is used.
+     */
+    public EntityQuery<T> useIndex(String propertyName) {
+        this.indexHint = propertyName;
+        return this;
+    }
+
+    /**
+     * Fetches only the given properties of the matching entities
+     * (see {@link EntityManager#getById(Class, java.io.Serializable, Set)})
+     */
+    public EntityQuery<T> properties(Set<String> properties) {
+        this.properties = properties;
+        return this;
+    }
+
+    /**
+     * @param pageSize the number of rows requested with each
+     * get_indexed_slices call
+     */
+    public EntityQuery<T> pageSize(int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("The page size must be positive");
+        }
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    public List<T> list() {
+        return entityManager.getByQuery(this);
+    }
+
+    public Iterator<T> iterate() {
+        return entityManager.iterateByQuery(this);
+    }
+
+    public Class<T> getEntityClass() {
+        return entityClass;
+    }
+
+    public List<Expression> getExpressions() {
+        return Collections.unmodifiableList(expressions);
+    }
+
+    public String getIndexHint() {
+        return indexHint;
+    }
+
+    public Set<String> getProperties() {
+        return properties;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public static class Expression {
+        private final String propertyName;
+        private final IndexOperator operator;
+        private final Object value;
+
+        Expression(String propertyName, IndexOperator operator, Object value) {
+            this.propertyName = propertyName;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        public String getPropertyName() {
+            return propertyName;
+        }
+
+        public IndexOperator getOperator() {
+            return operator;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+    }
+}
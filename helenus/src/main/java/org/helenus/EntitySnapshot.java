@@ -0,0 +1,61 @@
+package org.helenus;
+
+import java.util.Arrays;
+
+/**
+ * The serialized state of an entity as it was last loaded or written,
+ * against which later updates are compared. Names and values are indexed
+ * by {@link org.helenus.structure.AnnotatedField#getIndex()}; a null value
+ * means that the field was null.
+ */
+class EntitySnapshot {
+
+    private final byte[][] names;
+    private final byte[][] values;
+    private byte[] inverseRowKey;
+    private byte[] inverseColumnName;
+
+    EntitySnapshot(int fieldCount) {
+        names = new byte[fieldCount][];
+        values = new byte[fieldCount][];
+    }
+
+    public byte[] getName(int index) {
+        return names[index];
+    }
+
+    public byte[] getValue(int index) {
+        return values[index];
+    }
+
+    public void set(int index, byte[] name, byte[] value) {
+        names[index] = name;
+        values[index] = value;
+    }
+
+    public byte[] getInverseRowKey() {
+        return inverseRowKey;
+    }
+
+    public byte[] getInverseColumnName() {
+        return inverseColumnName;
+    }
+
+    public void setInverse(byte[] inverseRowKey, byte[] inverseColumnName) {
+        this.inverseRowKey = inverseRowKey;
+        this.inverseColumnName = inverseColumnName;
+    }
+
+    public boolean isNameChanged(EntitySnapshot previous, int index) {
+        return !Arrays.equals(names[index], previous.names[index]);
+    }
+
+    public boolean isChanged(EntitySnapshot previous, int index) {
+        return isNameChanged(previous, index) || !Arrays.equals(values[index], previous.values[index]);
+    }
+
+    public boolean isInverseChanged(EntitySnapshot previous) {
+        return !Arrays.equals(inverseRowKey, previous.inverseRowKey)
+                || !Arrays.equals(inverseColumnName, previous.inverseColumnName);
+    }
+}
@@ -0,0 +1,37 @@
+package org.helenus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The entities read by {@link EntityManager#getAll(Class, Object...)}, keyed
+ * by the requested keys in the order in which they were requested, along
+ * with the keys for which no entity exists
+ */
+public class MultigetResult<K, T> {
+
+    private final Map<K, T> entities;
+    private final List<K> missingKeys;
+
+    MultigetResult(Map<K, T> entities, List<K> missingKeys) {
+        this.entities = entities;
+        this.missingKeys = missingKeys;
+    }
+
+    public Map<K, T> getEntities() {
+        return entities;
+    }
+
+    public List<K> getMissingKeys() {
+        return missingKeys;
+    }
+
+    public List<T> getList() {
+        return new ArrayList<T>(entities.values());
+    }
+
+    public T get(K key) {
+        return entities.get(key);
+    }
+}
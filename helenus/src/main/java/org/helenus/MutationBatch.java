@@ -0,0 +1,146 @@
+package org.helenus;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.cassandra.thrift.Clock;
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.ColumnOrSuperColumn;
+import org.apache.cassandra.thrift.Deletion;
+import org.apache.cassandra.thrift.Mutation;
+import org.apache.cassandra.thrift.SlicePredicate;
+import org.apache.cassandra.thrift.SuperColumn;
+
+/**
+ * Collects the column and super column insertions (and deletions) of one or
+ * more entities (including their inverse column family entries), so that
+ * they can be sent in as few batch_mutate calls as possible. Row keys are kept serialized,
+ * so that entities with different key types can share a batch.
+ */
+class MutationBatch {
+
+    private final List<Insertion> insertions = new ArrayList<Insertion>();
+    private int columnCount;
+    private long byteSize;
+
+    public void addColumn(byte[] key, String columnFamily, Column column) {
+        int size = key.length + column.getName().length + column.getValue().length;
+        ColumnOrSuperColumn cosc = new ColumnOrSuperColumn();
+        cosc.setColumn(column);
+        add(new Insertion(key, columnFamily, new Mutation().setColumn_or_supercolumn(cosc), 1, size));
+    }
+
+    public void addSuperColumn(byte[] key, String columnFamily, SuperColumn superColumn) {
+        int size = key.length + superColumn.getName().length;
+        for (Column column : superColumn.getColumns()) {
+            size += column.getName().length + column.getValue().length;
+        }
+        ColumnOrSuperColumn cosc = new ColumnOrSuperColumn();
+        cosc.setSuper_column(superColumn);
+        add(new Insertion(key, columnFamily, new Mutation().setColumn_or_supercolumn(cosc),
+                superColumn.getColumnsSize(), size));
+    }
+
+    /**
+     * Adds the deletion of a column, or of a whole super column in a super
+     * column family
+     */
+    public void addDeletion(byte[] key, String columnFamily, byte[] name, Clock clock) {
+        SlicePredicate predicate = new SlicePredicate();
+        predicate.addToColumn_names(name);
+        Deletion deletion = new Deletion(clock);
+        deletion.setPredicate(predicate);
+        add(new Insertion(key, columnFamily, new Mutation().setDeletion(deletion), 1, key.length + name.length));
+    }
+
+    public void addAll(MutationBatch batch) {
+        for (Insertion insertion : batch.insertions) {
+            add(insertion);
+        }
+    }
+
+    private void add(Insertion insertion) {
+        insertions.add(insertion);
+        columnCount += insertion.columnCount;
+        byteSize += insertion.byteSize;
+    }
+
+    public boolean isEmpty() {
+        return insertions.isEmpty();
+    }
+
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    public long getByteSize() {
+        return byteSize;
+    }
+
+    /**
+     * Splits this batch into batches that have at most the given number of
+     * columns and bytes. A single insertion that exceeds the limits is sent
+     * in a batch of its own.
+     */
+    public List<MutationBatch> split(int maxColumns, long maxBytes) {
+        List<MutationBatch> chunks = new ArrayList<MutationBatch>();
+        MutationBatch current = new MutationBatch();
+        for (Insertion insertion : insertions) {
+            if (!current.isEmpty()
+                    && (current.columnCount + insertion.columnCount > maxColumns
+                    || current.byteSize + insertion.byteSize > maxBytes)) {
+                chunks.add(current);
+                current = new MutationBatch();
+            }
+            current.add(insertion);
+        }
+        if (!current.isEmpty()) {
+            chunks.add(current);
+        }
+        return chunks;
+    }
+
+    /**
+     * Groups the mutations by row key and column family, as expected by batch_mutate
+     */
+    public Map<byte[], Map<String, List<Mutation>>> toMutationMap() {
+        Map<ByteBuffer, Map<String, List<Mutation>>> rows = new HashMap<ByteBuffer, Map<String, List<Mutation>>>();
+        Map<byte[], Map<String, List<Mutation>>> result = new LinkedHashMap<byte[], Map<String, List<Mutation>>>();
+        for (Insertion insertion : insertions) {
+            ByteBuffer key = ByteBuffer.wrap(insertion.key);
+            Map<String, List<Mutation>> row = rows.get(key);
+            if (row == null) {
+                row = new HashMap<String, List<Mutation>>();
+                rows.put(key, row);
+                result.put(insertion.key, row);
+            }
+            List<Mutation> mutations = row.get(insertion.columnFamily);
+            if (mutations == null) {
+                mutations = new ArrayList<Mutation>();
+                row.put(insertion.columnFamily, mutations);
+            }
+            mutations.add(insertion.mutation);
+        }
+        return result;
+    }
+
+    private static class Insertion {
+        private final byte[] key;
+        private final String columnFamily;
+        private final Mutation mutation;
+        private final int columnCount;
+        private final int byteSize;
+
+        Insertion(byte[] key, String columnFamily, Mutation mutation, int columnCount, int byteSize) {
+            this.key = key;
+            this.columnFamily = columnFamily;
+            this.mutation = mutation;
+            this.columnCount = columnCount;
+            this.byteSize = byteSize;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.helenus;
+
+import org.helenus.metrics.MetricsListener;
+import org.helenus.metrics.Operation;
+
+/**
+ * The measurement of an entity manager operation in progress. Only the
+ * outermost operation on a thread is measured; nested calls add their
+ * rows, columns and bytes to it.
+ */
+class OperationMeasurement {
+
+    private final MetricsListener listener;
+    private final Operation operation;
+    private final Class<?> entityClass;
+    private final long startTime = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private int rows;
+    private int columns;
+    private long bytes;
+    private boolean failed;
+
+    OperationMeasurement(MetricsListener listener, Operation operation, Class<?> entityClass) {
+        this.listener = listener;
+        this.operation = operation;
+        this.entityClass = entityClass;
+    }
+
+    public void addRows(int rows) {
+        this.rows += rows;
+    }
+
+    public void addColumns(int columns, long bytes) {
+        this.columns += columns;
+        this.bytes += bytes;
+    }
+
+    public void markFailed() {
+        failed = true;
+    }
+
+    public void complete() {
+        listener.operationCompleted(operation, entityClass, startTime,
+                System.nanoTime() - startNanos, rows, columns, bytes, failed);
+    }
+}
@@ -0,0 +1,53 @@
+package org.helenus;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over results that are fetched from the store one page at a time.
+ * Only the current page is held in memory, and no page is requested until
+ * the previous one has been consumed, so callers can stop iterating at any
+ * point without further round trips.
+ */
+abstract class PagingIterator<T> implements Iterator<T> {
+
+    private Iterator<T> page = Collections.<T>emptyList().iterator();
+    private boolean exhausted;
+
+    /**
+     * @return the next page of results (possibly empty), or null if there
+     * are no more pages
+     */
+    protected abstract List<T> fetchNextPage();
+
+    @Override
+    public boolean hasNext() {
+        while (!page.hasNext()) {
+            if (exhausted) {
+                return false;
+            }
+            List<T> next = fetchNextPage();
+            if (next == null) {
+                exhausted = true;
+                return false;
+            }
+            page = next.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.next();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
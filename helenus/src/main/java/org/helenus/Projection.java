@@ -0,0 +1,37 @@
+package org.helenus;
+
+import org.helenus.structure.AnnotatedField;
+
+/**
+ * The fields requested by a projection read, along with the (super) column
+ * names that are fetched for them. Fields are indexed by
+ * {@link org.helenus.structure.AnnotatedField#getIndex()}.
+ *
+ * Entities loaded with a projection keep a reference to it, so that the
+ * fields that were not fetched (and are still null) are not written back
+ * as empty values.
+ */
+class Projection {
+
+    private final boolean[] fields;
+    private final String[] columnNames;
+    private final String[] superColumnNames;
+
+    Projection(boolean[] fields, String[] columnNames, String[] superColumnNames) {
+        this.fields = fields;
+        this.columnNames = columnNames;
+        this.superColumnNames = superColumnNames;
+    }
+
+    public boolean includes(AnnotatedField field) {
+        return fields[field.getIndex()];
+    }
+
+    public String[] getColumnNames() {
+        return columnNames;
+    }
+
+    public String[] getSuperColumnNames() {
+        return superColumnNames;
+    }
+}
@@ -0,0 +1,347 @@
+package org.helenus;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.cassandra.thrift.Clock;
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.ColumnOrSuperColumn;
+import org.apache.cassandra.thrift.Deletion;
+import org.apache.cassandra.thrift.Mutation;
+import org.apache.cassandra.thrift.SuperColumn;
+import org.helenus.utils.DaemonThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Queues the mutations of writes and sends them from a background thread,
+ * once flushSize columns are pending or every flushInterval milliseconds.
+ * Mutations of the same (sub) column of the same row are coalesced, keeping
+ * the one with the latest timestamp; as timestamps are taken when the write
+ * is made, the outcome is the same as if every write had been sent.
+ * <p>
+ * Writers block while maxPending columns are waiting to be written, for at
+ * most maxWait milliseconds. A flush that fails is logged, and its columns
+ * are queued again (unless they have been overwritten in the meantime) and
+ * retried with the next flush, so writers that keep failing to find room are
+ * given the last flush failure.
+ * <p>
+ * Once the buffer is closed it accepts no more writes, and callers write
+ * them directly instead.
+ */
+abstract class WriteBehindBuffer {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindBuffer.class);
+
+    private final int flushSize;
+    private final int maxPending;
+    private final long flushInterval;
+    private final long maxWait;
+
+    private final Object lock = new Object();
+    private Map<CellKey, Cell> pending = new LinkedHashMap<CellKey, Cell>();
+    // the columns of the flush in progress, which still count against
+    // maxPending, as they are queued again if the flush fails
+    private int flushing;
+    private boolean closed;
+    private final Thread flusher;
+    // the failure of the last flush, or null if it succeeded
+    private volatile RuntimeException flushFailure;
+
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+
+    WriteBehindBuffer(int flushSize, int maxPending, long flushInterval, long maxWait) {
+        this.flushSize = flushSize;
+        this.maxPending = maxPending;
+        this.flushInterval = flushInterval;
+        this.maxWait = maxWait;
+        this.flusher = new DaemonThreadFactory("helenus-write-behind").newThread(new Runnable() {
+            @Override
+            public void run() {
+                flushPeriodically();
+            }
+        });
+        flusher.start();
+    }
+
+    /**
+     * Sends the given batch
+     */
+    protected abstract void write(MutationBatch batch);
+
+    /**
+     * Queues the mutations of the given batch, waiting for a flush if too
+     * many columns are pending
+     *
+     * @return false if the buffer is closed, and the batch was not queued
+     * @throws IllegalStateException if no flush made room within maxWait
+     */
+    public boolean add(MutationBatch batch) {
+        List<Cell> cells = toCells(batch);
+        synchronized (lock) {
+            try {
+                long deadline = System.currentTimeMillis() + maxWait;
+                while (!closed && pending.size() + flushing >= maxPending) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        throw new IllegalStateException("No write-behind flush made room for the write within "
+                                + maxWait + " ms", flushFailure);
+                    }
+                    lock.notifyAll();
+                    lock.wait(remaining);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(ex);
+            }
+            if (closed) {
+                return false;
+            }
+            for (Cell cell : cells) {
+                queue(cell);
+            }
+            if (pending.size() >= flushSize) {
+                lock.notifyAll();
+            }
+            return true;
+        }
+    }
+
+    private void queue(Cell cell) {
+        Cell previous = pending.get(cell.key);
+        if (previous == null) {
+            pending.put(cell.key, cell);
+            return;
+        }
+        coalesced.incrementAndGet();
+        if (cell.timestamp >= previous.timestamp) {
+            pending.put(cell.key, cell);
+        }
+    }
+
+    /**
+     * Writes all pending columns
+     */
+    public synchronized void flush() {
+        Map<CellKey, Cell> cells;
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            cells = pending;
+            pending = new LinkedHashMap<CellKey, Cell>();
+            flushing = cells.size();
+        }
+        try {
+            write(toBatch(cells.values()));
+            flushes.incrementAndGet();
+            flushFailure = null;
+            synchronized (lock) {
+                flushing = 0;
+                lock.notifyAll();
+            }
+        } catch (RuntimeException ex) {
+            flushFailure = ex;
+            synchronized (lock) {
+                // newer writes of the same columns win over the failed ones
+                Map<CellKey, Cell> newer = pending;
+                pending = cells;
+                for (Cell cell : newer.values()) {
+                    queue(cell);
+                }
+                flushing = 0;
+            }
+            throw ex;
+        }
+    }
+
+    private void flushPeriodically() {
+        while (true) {
+            synchronized (lock) {
+                long deadline = System.currentTimeMillis() + flushInterval;
+                try {
+                    long remaining;
+                    while (!closed && pending.size() < flushSize
+                            && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                        lock.wait(remaining);
+                    }
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                if (closed) {
+                    return;
+                }
+            }
+            try {
+                flush();
+            } catch (RuntimeException ex) {
+                logger.error("Failed to flush the write-behind buffer, retrying with the next flush", ex);
+            }
+        }
+    }
+
+    /**
+     * Stops the background thread and writes the pending columns. If that
+     * fails, the exception is thrown and the columns stay queued, to be
+     * written by a later flush() (or close()).
+     */
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    public boolean isClosed() {
+        synchronized (lock) {
+            return closed;
+        }
+    }
+
+    public int getPendingCount() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * @return the number of queued columns that were replaced (or discarded)
+     * by a write of the same column
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    public long getFlushCount() {
+        return flushes.get();
+    }
+
+    private static List<Cell> toCells(MutationBatch batch) {
+        List<Cell> cells = new ArrayList<Cell>(batch.getColumnCount());
+        for (Map.Entry<byte[], Map<String, List<Mutation>>> row : batch.toMutationMap().entrySet()) {
+            byte[] key = row.getKey();
+            for (Map.Entry<String, List<Mutation>> cf : row.getValue().entrySet()) {
+                for (Mutation mutation : cf.getValue()) {
+                    if (mutation.isSetDeletion()) {
+                        Deletion deletion = mutation.getDeletion();
+                        for (byte[] name : deletion.getPredicate().getColumn_names()) {
+                            cells.add(new Cell(key, cf.getKey(), null, name, null, deletion.getClock()));
+                        }
+                        continue;
+                    }
+                    ColumnOrSuperColumn cosc = mutation.getColumn_or_supercolumn();
+                    if (cosc.isSetSuper_column()) {
+                        SuperColumn superColumn = cosc.getSuper_column();
+                        for (Column column : superColumn.getColumns()) {
+                            cells.add(new Cell(key, cf.getKey(), superColumn.getName(), column.getName(),
+                                    column, column.getClock()));
+                        }
+                    } else {
+                        Column column = cosc.getColumn();
+                        cells.add(new Cell(key, cf.getKey(), null, column.getName(), column, column.getClock()));
+                    }
+                }
+            }
+        }
+        return cells;
+    }
+
+    private static MutationBatch toBatch(Collection<Cell> cells) {
+        MutationBatch batch = new MutationBatch();
+        // the sub columns of a super column are sent together
+        Map<CellKey, SuperColumn> superColumns = new LinkedHashMap<CellKey, SuperColumn>();
+        Map<CellKey, Cell> superColumnRows = new LinkedHashMap<CellKey, Cell>();
+        for (Cell cell : cells) {
+            if (cell.column == null) {
+                batch.addDeletion(cell.rowKey, cell.columnFamily, cell.name, cell.clock);
+            } else if (cell.superColumnName == null) {
+                batch.addColumn(cell.rowKey, cell.columnFamily, cell.column);
+            } else {
+                CellKey superColumnKey = new CellKey(cell.rowKey, cell.columnFamily, cell.superColumnName, null);
+                SuperColumn superColumn = superColumns.get(superColumnKey);
+                if (superColumn == null) {
+                    superColumn = new SuperColumn(cell.superColumnName, new ArrayList<Column>());
+                    superColumns.put(superColumnKey, superColumn);
+                    superColumnRows.put(superColumnKey, cell);
+                }
+                superColumn.addToColumns(cell.column);
+            }
+        }
+        for (Map.Entry<CellKey, SuperColumn> superColumn : superColumns.entrySet()) {
+            Cell cell = superColumnRows.get(superColumn.getKey());
+            batch.addSuperColumn(cell.rowKey, cell.columnFamily, superColumn.getValue());
+        }
+        return batch;
+    }
+
+    /**
+     * One queued column insertion (or deletion, if column is null)
+     */
+    private static final class Cell {
+        private final CellKey key;
+        private final byte[] rowKey;
+        private final String columnFamily;
+        private final byte[] superColumnName;
+        private final byte[] name;
+        private final Column column;
+        private final Clock clock;
+        private final long timestamp;
+
+        Cell(byte[] rowKey, String columnFamily, byte[] superColumnName, byte[] name, Column column, Clock clock) {
+            this.key = new CellKey(rowKey, columnFamily, superColumnName, name);
+            this.rowKey = rowKey;
+            this.columnFamily = columnFamily;
+            this.superColumnName = superColumnName;
+            this.name = name;
+            this.column = column;
+            this.clock = clock;
+            this.timestamp = clock.getTimestamp();
+        }
+    }
+
+    private static final class CellKey {
+        private final ByteBuffer rowKey;
+        private final String columnFamily;
+        private final byte[] superColumnName;
+        private final byte[] name;
+        private final int hashCode;
+
+        CellKey(byte[] rowKey, String columnFamily, byte[] superColumnName, byte[] name) {
+            this.rowKey = ByteBuffer.wrap(rowKey);
+            this.columnFamily = columnFamily;
+            this.superColumnName = superColumnName;
+            this.name = name;
+            this.hashCode = 31 * (31 * (31 * this.rowKey.hashCode() + columnFamily.hashCode())
+                    + Arrays.hashCode(superColumnName)) + Arrays.hashCode(name);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof CellKey)) {
+                return false;
+            }
+            CellKey other = (CellKey) obj;
+            return rowKey.equals(other.rowKey) && columnFamily.equals(other.columnFamily)
+                    && Arrays.equals(superColumnName, other.superColumnName)
+                    && Arrays.equals(name, other.name);
+        }
+    }
+}
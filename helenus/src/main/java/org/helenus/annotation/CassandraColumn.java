@@ -5,9 +5,24 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+import org.helenus.serializers.CompressionCodec;
+import org.helenus.serializers.DeflateCodec;
+
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.FIELD)
 public @interface CassandraColumn {
     String name() default "";
     String targetSuperColumnField() default "";
+
+    /**
+     * Values longer than this many bytes are compressed. -1 (the default)
+     * means the threshold of the column family is used. Only String and
+     * byte[] columns can be compressed. Compression can be enabled on a
+     * String column that already holds data, but not on a byte[] column
+     * holding values that start with 0xFE or 0xFF (which would be taken for
+     * compression headers), unless they are rewritten afterwards.
+     */
+    int compressionThreshold() default -1;
+
+    Class<? extends CompressionCodec> compressionCodec() default DeflateCodec.class;
 }
@@ -9,4 +9,25 @@ import java.lang.annotation.Target;
 @Target(ElementType.TYPE)
 public @interface CassandraColumnFamily {
     String name() default "";
+
+    /**
+     * Whether rows of this column family are kept in the entity cache
+     * (if one is configured)
+     */
+    boolean cached() default false;
+
+    /**
+     * Whether the keys found by getByPropertyValue lookups on this column
+     * family are kept in the query cache (if one is configured). Meant for
+     * column families that rarely change.
+     */
+    boolean cacheQueries() default false;
+
+    /**
+     * Values of the String {@code @CassandraColumn} fields longer than this
+     * many bytes are compressed, unless the column sets its own threshold.
+     * Columns of other types are left as they are. -1 (the default) disables
+     * compression.
+     */
+    int compressionThreshold() default -1;
 }
@@ -9,4 +9,12 @@ import java.lang.annotation.Target;
 @Target(ElementType.FIELD)
 public @interface CassandraDependentKey {
 
+    /**
+     * Whether the referenced entity is loaded along with the dependent one.
+     * When a list of entities is read, the references of all of them are
+     * loaded with a single multiget. Otherwise only the key of the referenced
+     * entity is set, and it can be loaded with
+     * {@link org.helenus.EntityManager#resolveDependentKeys(java.util.Collection)}
+     */
+    boolean eager() default false;
 }
@@ -9,4 +9,11 @@ import java.lang.annotation.Target;
 @Target(ElementType.FIELD)
 public @interface CassandraSecondaryIndex {
     String name() default "";
+
+    /**
+     * How selective the index is relative to the other indexes of the class.
+     * When a query has equalities on several indexed properties, the index
+     * with the highest selectivity is used to find the candidate rows.
+     */
+    int selectivity() default 0;
 }
@@ -0,0 +1,74 @@
+package org.helenus.cache;
+
+/**
+ * An immutable copy of the serialized columns of a row. For rows of super
+ * column families, the names are the super column names and each super
+ * column is represented by a nested row.
+ */
+public final class CachedRow {
+
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final String[] names;
+    private final byte[][] values;
+    private final CachedRow[] superColumns;
+    private final int weight;
+
+    private CachedRow(String[] names, byte[][] values, CachedRow[] superColumns) {
+        this.names = names;
+        this.values = values;
+        this.superColumns = superColumns;
+        int weight = ENTRY_OVERHEAD;
+        for (int i = 0; i < names.length; i++) {
+            weight += names[i].length() * 2;
+            weight += values != null ? values[i].length : superColumns[i].weight;
+        }
+        this.weight = weight;
+    }
+
+    /**
+     * Creates a row of the given columns. The values are copied.
+     */
+    public static CachedRow forColumns(String[] names, byte[][] values) {
+        byte[][] copies = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            copies[i] = values[i].clone();
+        }
+        return new CachedRow(names.clone(), copies, null);
+    }
+
+    public static CachedRow forSuperColumns(String[] names, CachedRow[] superColumns) {
+        return new CachedRow(names.clone(), null, superColumns.clone());
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public String getName(int index) {
+        return names[index];
+    }
+
+    /**
+     * @return a copy of the value at the given position, so that callers
+     * cannot modify the cached data
+     */
+    public byte[] getValue(int index) {
+        return values[index].clone();
+    }
+
+    public CachedRow getSuperColumn(int index) {
+        return superColumns[index];
+    }
+
+    public boolean isSuperRow() {
+        return superColumns != null;
+    }
+
+    /**
+     * @return the approximate number of bytes this row occupies
+     */
+    public int getWeight() {
+        return weight;
+    }
+}
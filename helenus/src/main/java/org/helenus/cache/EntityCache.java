@@ -0,0 +1,187 @@
+package org.helenus.cache;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.reardencommerce.kernel.collections.shared.evictable.ConcurrentLinkedHashMap;
+import com.reardencommerce.kernel.collections.shared.evictable.ConcurrentLinkedHashMap.EvictionListener;
+import com.reardencommerce.kernel.collections.shared.evictable.ConcurrentLinkedHashMap.EvictionPolicy;
+
+/**
+ * A read-through cache of entity rows, keyed by entity class and serialized
+ * row key. Rows are evicted in LRU order when either the maximum number of
+ * entries or the maximum total weight (in bytes) is exceeded. Only the
+ * serialized columns are cached, so each read materializes a new entity.
+ * <p>
+ * Like {@link QueryCache}, each invalidation moves the class to a new
+ * generation, and rows read before that are not stored, so a read racing
+ * with a write can't cache the row the write replaced. The bundled map has
+ * no weigher, so the weight is kept alongside it, and only ever adjusted by
+ * the entries that the map's own atomic operations report as added or
+ * removed.
+ */
+public class EntityCache {
+
+    private final ConcurrentLinkedHashMap<CacheKey, CachedRow> rows;
+    private final ConcurrentMap<Class<?>, AtomicLong> generations = new ConcurrentHashMap<Class<?>, AtomicLong>();
+    private final int maxEntries;
+    private final long maxWeight;
+
+    private final AtomicLong weight = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public EntityCache(int maxEntries) {
+        this(maxEntries, Long.MAX_VALUE);
+    }
+
+    public EntityCache(int maxEntries, long maxWeight) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.rows = ConcurrentLinkedHashMap.create(EvictionPolicy.LRU, maxEntries,
+                new EvictionListener<CacheKey, CachedRow>() {
+                    @Override
+                    public void onEviction(CacheKey key, CachedRow row) {
+                        weight.addAndGet(-row.getWeight());
+                        evictions.incrementAndGet();
+                    }
+                });
+    }
+
+    public CachedRow get(Class<?> clazz, byte[] key) {
+        CachedRow row = rows.get(new CacheKey(clazz, key));
+        if (row == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return row;
+    }
+
+    /**
+     * Stores a row read from the store, unless the class has been
+     * invalidated since the read started
+     *
+     * @param generation the generation of the class, obtained with
+     * {@link #getGeneration(Class)} before the row was read
+     */
+    public void put(Class<?> clazz, byte[] key, CachedRow row, long generation) {
+        if (generation != getGeneration(clazz)) {
+            return;
+        }
+        CacheKey cacheKey = new CacheKey(clazz, key);
+        CachedRow previous = rows.put(cacheKey, row);
+        weight.addAndGet(row.getWeight() - (previous != null ? previous.getWeight() : 0));
+        // an invalidation between the check and the put may have missed the row
+        if (generation != getGeneration(clazz) && rows.remove(cacheKey, row)) {
+            weight.addAndGet(-row.getWeight());
+        }
+        if (weight.get() > maxWeight) {
+            evictByWeight();
+        }
+    }
+
+    public long getGeneration(Class<?> clazz) {
+        AtomicLong generation = generations.get(clazz);
+        return generation != null ? generation.get() : 0;
+    }
+
+    public void invalidate(Class<?> clazz, byte[] key) {
+        nextGeneration(clazz);
+        CachedRow previous = rows.remove(new CacheKey(clazz, key));
+        if (previous != null) {
+            weight.addAndGet(-previous.getWeight());
+        }
+    }
+
+    private void nextGeneration(Class<?> clazz) {
+        AtomicLong generation = generations.get(clazz);
+        if (generation == null) {
+            AtomicLong existing = generations.putIfAbsent(clazz, generation = new AtomicLong());
+            if (existing != null) {
+                generation = existing;
+            }
+        }
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Shrinks the map until the weight limit is satisfied, which makes it
+     * evict its least recently used entries, and then restores the capacity
+     */
+    private synchronized void evictByWeight() {
+        int size;
+        while (weight.get() > maxWeight && (size = rows.size()) > 0) {
+            rows.setCapacity(size - 1);
+            if (rows.size() >= size) {
+                break;
+            }
+        }
+        rows.setCapacity(maxEntries);
+    }
+
+    /**
+     * Removes all rows one by one, so that rows stored concurrently are
+     * accounted for
+     */
+    public void clear() {
+        for (AtomicLong generation : generations.values()) {
+            generation.incrementAndGet();
+        }
+        for (CacheKey key : rows.keySet()) {
+            CachedRow previous = rows.remove(key);
+            if (previous != null) {
+                weight.addAndGet(-previous.getWeight());
+            }
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public int getSize() {
+        return rows.size();
+    }
+
+    public long getWeight() {
+        return weight.get();
+    }
+
+    private static final class CacheKey {
+        private final Class<?> clazz;
+        private final byte[] key;
+        private final int hashCode;
+
+        CacheKey(Class<?> clazz, byte[] key) {
+            this.clazz = clazz;
+            this.key = key;
+            this.hashCode = 31 * clazz.hashCode() + Arrays.hashCode(key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey other = (CacheKey) obj;
+            return clazz == other.clazz && Arrays.equals(key, other.key);
+        }
+    }
+}
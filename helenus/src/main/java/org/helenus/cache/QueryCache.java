@@ -0,0 +1,212 @@
+package org.helenus.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.reardencommerce.kernel.collections.shared.evictable.ConcurrentLinkedHashMap;
+import com.reardencommerce.kernel.collections.shared.evictable.ConcurrentLinkedHashMap.EvictionListener;
+import com.reardencommerce.kernel.collections.shared.evictable.ConcurrentLinkedHashMap.EvictionPolicy;
+
+/**
+ * A cache of secondary index lookups, keyed by entity class, property and
+ * serialized property value, holding the row keys of the matching entities.
+ * Entries expire after a fixed time to live, and are evicted in LRU order
+ * when the maximum number of entries is exceeded.
+ * <p>
+ * A write invalidates the lookups of the indexed values it stores, by moving
+ * them to a new generation (the values are spread over a fixed number of
+ * generation stripes). All lookups of a class can also be invalidated at
+ * once. Results of lookups that started before an invalidation are not
+ * stored, so a concurrent write can't leave stale keys behind. Keys of
+ * entities whose value has since changed to another one are not removed;
+ * callers have to check the entities they load.
+ */
+public class QueryCache {
+
+    private final ConcurrentLinkedHashMap<QueryKey, Entry> entries;
+    private static final int STRIPES = 1024;
+
+    private final ConcurrentMap<Class<?>, AtomicLong> generations = new ConcurrentHashMap<Class<?>, AtomicLong>();
+    private final AtomicLongArray valueGenerations = new AtomicLongArray(STRIPES);
+    private final long ttlMillis;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public QueryCache(int maxEntries, long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+        this.entries = ConcurrentLinkedHashMap.create(EvictionPolicy.LRU, maxEntries,
+                new EvictionListener<QueryKey, Entry>() {
+                    @Override
+                    public void onEviction(QueryKey key, Entry entry) {
+                        evictions.incrementAndGet();
+                    }
+                });
+    }
+
+    /**
+     * @return the keys of the entities with the given property value, or null
+     * if the lookup is not cached (or the cached keys are no longer valid)
+     */
+    public List<byte[]> get(Class<?> clazz, String propertyName, byte[] value) {
+        QueryKey key = new QueryKey(clazz, propertyName, value);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (entry.generation != getGeneration(key)) {
+            entries.remove(key);
+            misses.incrementAndGet();
+            return null;
+        }
+        if (entry.expiresAt < System.currentTimeMillis()) {
+            entries.remove(key);
+            expirations.incrementAndGet();
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return new ArrayList<byte[]>(Arrays.asList(entry.keys));
+    }
+
+    /**
+     * Stores the keys found by a lookup, unless the lookup has been
+     * invalidated since it started
+     *
+     * @param generation the generation of the lookup, obtained with
+     * {@link #getGeneration(Class, String, byte[])} before it was made
+     */
+    public void put(Class<?> clazz, String propertyName, byte[] value, List<byte[]> keys, long generation) {
+        QueryKey key = new QueryKey(clazz, propertyName, value);
+        if (generation != getGeneration(key)) {
+            return;
+        }
+        Entry entry = new Entry(keys.toArray(new byte[keys.size()][]), generation,
+                System.currentTimeMillis() + ttlMillis);
+        entries.put(key, entry);
+    }
+
+    public long getGeneration(Class<?> clazz, String propertyName, byte[] value) {
+        return getGeneration(new QueryKey(clazz, propertyName, value));
+    }
+
+    /**
+     * @return the sum of the generations of the class and of the value's
+     * stripe, which changes whenever either of them is invalidated
+     */
+    private long getGeneration(QueryKey key) {
+        AtomicLong generation = generations.get(key.clazz);
+        return (generation != null ? generation.get() : 0) + valueGenerations.get(stripe(key));
+    }
+
+    private static int stripe(QueryKey key) {
+        int hash = key.hashCode;
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        hash ^= (hash >>> 7) ^ (hash >>> 4);
+        return hash & (STRIPES - 1);
+    }
+
+    /**
+     * Invalidates the cached lookup of the given property value, and the ones
+     * sharing its generation stripe
+     */
+    public void invalidate(Class<?> clazz, String propertyName, byte[] value) {
+        QueryKey key = new QueryKey(clazz, propertyName, value);
+        valueGenerations.incrementAndGet(stripe(key));
+        entries.remove(key);
+        invalidations.incrementAndGet();
+    }
+
+    /**
+     * Invalidates all cached lookups of the given class
+     */
+    public void invalidate(Class<?> clazz) {
+        AtomicLong generation = generations.get(clazz);
+        if (generation == null) {
+            AtomicLong existing = generations.putIfAbsent(clazz, generation = new AtomicLong());
+            if (existing != null) {
+                generation = existing;
+            }
+        }
+        generation.incrementAndGet();
+        invalidations.incrementAndGet();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public long getExpirationCount() {
+        return expirations.get();
+    }
+
+    public long getInvalidationCount() {
+        return invalidations.get();
+    }
+
+    public int getSize() {
+        return entries.size();
+    }
+
+    private static final class Entry {
+        private final byte[][] keys;
+        private final long generation;
+        private final long expiresAt;
+
+        Entry(byte[][] keys, long generation, long expiresAt) {
+            this.keys = keys;
+            this.generation = generation;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class QueryKey {
+        private final Class<?> clazz;
+        private final String propertyName;
+        private final byte[] value;
+        private final int hashCode;
+
+        QueryKey(Class<?> clazz, String propertyName, byte[] value) {
+            this.clazz = clazz;
+            this.propertyName = propertyName;
+            this.value = value;
+            this.hashCode = 31 * (31 * clazz.hashCode() + propertyName.hashCode()) + Arrays.hashCode(value);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof QueryKey)) {
+                return false;
+            }
+            QueryKey other = (QueryKey) obj;
+            return clazz == other.clazz && propertyName.equals(other.propertyName)
+                    && Arrays.equals(value, other.value);
+        }
+    }
+}
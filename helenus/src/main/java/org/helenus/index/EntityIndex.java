@@ -0,0 +1,99 @@
+package org.helenus.index;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.scannotation.ClasspathUrlFinder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the index of entity classes generated at compile time by
+ * {@link EntityIndexProcessor}, so that mapped classes can be found without
+ * scanning the classpath. Indexes from all jars on the classpath are merged,
+ * and only the classpath roots without an index have to be scanned.
+ */
+public final class EntityIndex {
+
+    /**
+     * The location of the generated index: one fully qualified class name per line
+     */
+    public static final String RESOURCE_NAME = "META-INF/helenus/entities";
+
+    private static final Logger logger = LoggerFactory.getLogger(EntityIndex.class);
+
+    private EntityIndex() {
+    }
+
+    /**
+     * @return the indexed classes of all classpath roots that have an index
+     */
+    public static Set<Class<?>> load(ClassLoader classLoader) {
+        try {
+            Set<Class<?>> classes = new HashSet<Class<?>>();
+            Enumeration<URL> resources = classLoader.getResources(RESOURCE_NAME);
+            while (resources.hasMoreElements()) {
+                URL resource = resources.nextElement();
+                for (String className : readClassNames(resource)) {
+                    classes.add(Class.forName(className, false, classLoader));
+                }
+            }
+            return classes;
+        } catch (IOException ex) {
+            throw new IllegalStateException("Unable to read the entity index", ex);
+        } catch (ClassNotFoundException ex) {
+            throw new IllegalStateException("An indexed entity class is not on the classpath. Rebuild the module that declares it", ex);
+        }
+    }
+
+    /**
+     * @return the roots of the given classpath that have no index, and so
+     * have to be scanned for entities
+     */
+    public static List<URL> findUnindexedRoots(URL[] classPath, ClassLoader classLoader) {
+        Set<String> indexedRoots = new HashSet<String>();
+        for (URL root : ClasspathUrlFinder.findResourceBases(RESOURCE_NAME, classLoader)) {
+            indexedRoots.add(normalize(root));
+        }
+        List<URL> unindexedRoots = new ArrayList<URL>();
+        for (URL root : classPath) {
+            if (!indexedRoots.contains(normalize(root))) {
+                unindexedRoots.add(root);
+            }
+        }
+        return unindexedRoots;
+    }
+
+    private static String normalize(URL root) {
+        String path = root.toExternalForm();
+        return path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    }
+
+    private static Set<String> readClassNames(URL resource) throws IOException {
+        logger.debug("Reading entity index " + resource);
+        Set<String> classNames = new HashSet<String>();
+        InputStream in = resource.openStream();
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    classNames.add(line);
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return classNames;
+    }
+}
@@ -0,0 +1,105 @@
+package org.helenus.index;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import org.helenus.annotation.CassandraColumnFamily;
+
+/**
+ * Annotation processor that writes the names of all classes annotated with
+ * {@code @CassandraColumnFamily} to {@link EntityIndex#RESOURCE_NAME}. It is
+ * registered as a service, so it runs automatically when a module containing
+ * entities is compiled with helenus on the classpath.
+ * <p>
+ * An incremental compilation only sees the entities that are recompiled, so
+ * the index already in the output directory is merged with them. Previously
+ * indexed classes are kept as long as they still exist and are still mapped.
+ */
+@SupportedAnnotationTypes("org.helenus.annotation.CassandraColumnFamily")
+public class EntityIndexProcessor extends AbstractProcessor {
+
+    private final Set<String> classNames = new TreeSet<String>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() == ElementKind.CLASS) {
+                    classNames.add(processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString());
+                }
+            }
+        }
+        if (roundEnv.processingOver() && !classNames.isEmpty()) {
+            classNames.addAll(readPreviousIndex());
+            writeIndex();
+        }
+        return false;
+    }
+
+    /**
+     * @return the classes of the index left by the previous compilation
+     * that are still annotated entities
+     */
+    private Set<String> readPreviousIndex() {
+        Set<String> previous = new TreeSet<String>();
+        String content;
+        try {
+            FileObject file = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", EntityIndex.RESOURCE_NAME);
+            content = file.getCharContent(true).toString();
+        } catch (IOException ex) {
+            // no previous index (a full build)
+            return previous;
+        } catch (IllegalArgumentException ex) {
+            return previous;
+        }
+        Elements elements = processingEnv.getElementUtils();
+        for (String line : content.split("\n")) {
+            String className = line.trim();
+            if (className.isEmpty() || className.startsWith("#")) {
+                continue;
+            }
+            TypeElement element = elements.getTypeElement(className.replace('$', '.'));
+            if (element != null && element.getAnnotation(CassandraColumnFamily.class) != null) {
+                previous.add(className);
+            }
+        }
+        return previous;
+    }
+
+    private void writeIndex() {
+        try {
+            FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", EntityIndex.RESOURCE_NAME);
+            Writer writer = new OutputStreamWriter(file.openOutputStream(), "UTF-8");
+            try {
+                for (String className : classNames) {
+                    writer.write(className);
+                    writer.write('\n');
+                }
+            } finally {
+                writer.close();
+            }
+        } catch (IOException ex) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write the entity index: " + ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package org.helenus.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps metrics per operation and entity class, each registered as an MBean
+ * named {@code org.helenus:type=Metrics,operation=<method>,entity=<class>}
+ * the first time the operation is performed on the class.
+ */
+public class JmxMetricsListener implements MetricsListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(JmxMetricsListener.class);
+
+    private final MBeanServer mbeanServer;
+    private final String domain;
+    private final ConcurrentMap<String, OperationMetrics> metrics = new ConcurrentHashMap<String, OperationMetrics>();
+
+    public JmxMetricsListener() {
+        this(ManagementFactory.getPlatformMBeanServer(), "org.helenus");
+    }
+
+    public JmxMetricsListener(MBeanServer mbeanServer, String domain) {
+        this.mbeanServer = mbeanServer;
+        this.domain = domain;
+    }
+
+    @Override
+    public void operationCompleted(Operation operation, Class<?> entityClass, long startTime,
+            long elapsedNanos, int rows, int columns, long bytes, boolean failed) {
+        getMetrics(operation, entityClass).record(elapsedNanos, rows, columns, bytes, failed);
+    }
+
+    /**
+     * @return the metrics of the given operation on the given class (null
+     * for operations involving several classes)
+     */
+    public OperationMetrics getMetrics(Operation operation, Class<?> entityClass) {
+        String entity = entityClass != null ? entityClass.getName() : "*";
+        String name = domain + ":type=Metrics,operation=" + operation.getMethodName() + ",entity=" + ObjectName.quote(entity);
+        OperationMetrics operationMetrics = metrics.get(name);
+        if (operationMetrics == null) {
+            OperationMetrics created = new OperationMetrics();
+            operationMetrics = metrics.putIfAbsent(name, created);
+            if (operationMetrics == null) {
+                operationMetrics = created;
+                register(name, created);
+            }
+        }
+        return operationMetrics;
+    }
+
+    private void register(String name, OperationMetrics operationMetrics) {
+        try {
+            mbeanServer.registerMBean(operationMetrics, new ObjectName(name));
+        } catch (JMException ex) {
+            logger.warn("Unable to register metrics MBean " + name, ex);
+        }
+    }
+
+    /**
+     * Unregisters all MBeans registered by this listener
+     */
+    public void destroy() {
+        for (String name : metrics.keySet()) {
+            try {
+                mbeanServer.unregisterMBean(new ObjectName(name));
+            } catch (JMException ex) {
+                logger.warn("Unable to unregister metrics MBean " + name, ex);
+            }
+        }
+        metrics.clear();
+    }
+}
@@ -0,0 +1,69 @@
+package org.helenus.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations in microseconds. Each power of two is
+ * split into four buckets, so percentiles are accurate to within 25%
+ * regardless of the magnitude, using a fixed, small amount of memory.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 248;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(long micros) {
+        counts.incrementAndGet(bucket(Math.max(micros, 0)));
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the upper bound of the bucket containing the given percentile,
+     * in microseconds, or 0 if nothing has been recorded
+     */
+    public long getPercentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank && snapshot[i] > 0) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    static int bucket(long micros) {
+        if (micros < 4) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) ((micros >>> (exponent - 2)) & 3);
+        return (exponent - 1) * 4 + subBucket;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < 4) {
+            return bucket;
+        }
+        int exponent = bucket / 4 + 1;
+        int subBucket = bucket % 4;
+        return ((5L + subBucket) << (exponent - 2)) - 1;
+    }
+}
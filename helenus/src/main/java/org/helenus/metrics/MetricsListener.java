@@ -0,0 +1,24 @@
+package org.helenus.metrics;
+
+/**
+ * Receives the measurements of entity manager operations. Set an
+ * implementation on EntityManagerImpl to enable metrics; nothing is
+ * measured otherwise. Implementations are called on the thread that
+ * performed the operation, so they must be thread-safe and fast.
+ */
+public interface MetricsListener {
+
+    /**
+     * @param operation the operation performed
+     * @param entityClass the entity class the operation was performed on,
+     * or null if it involved several classes
+     * @param startTime the time the operation started, in milliseconds since the epoch
+     * @param elapsedNanos the duration of the operation
+     * @param rows the number of rows (entities) read or written
+     * @param columns the number of columns read or written
+     * @param bytes the number of serialized bytes read or written
+     * @param failed whether the operation failed
+     */
+    void operationCompleted(Operation operation, Class<?> entityClass, long startTime,
+            long elapsedNanos, int rows, int columns, long bytes, boolean failed);
+}
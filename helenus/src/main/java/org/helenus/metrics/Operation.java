@@ -0,0 +1,28 @@
+package org.helenus.metrics;
+
+/**
+ * The entity manager operations that are measured
+ */
+public enum Operation {
+
+    GET_BY_ID("getById"),
+    GET_LIST("getList"),
+    GET_BY_PROPERTY_VALUE("getByPropertyValue"),
+    GET_BY_QUERY("getByQuery"),
+    PERSIST("persist"),
+    PERSIST_ALL("persistAll"),
+    UPDATE("update");
+
+    private final String methodName;
+
+    private Operation(String methodName) {
+        this.methodName = methodName;
+    }
+
+    /**
+     * @return the name of the EntityManager method, used in metric names
+     */
+    public String getMethodName() {
+        return methodName;
+    }
+}
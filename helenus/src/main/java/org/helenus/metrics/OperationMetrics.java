@@ -0,0 +1,106 @@
+package org.helenus.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accumulates the measurements of one operation on one entity class
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong columns = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private volatile long since = System.currentTimeMillis();
+
+    public void record(long elapsedNanos, int rows, int columns, long bytes, boolean failed) {
+        long micros = elapsedNanos / 1000;
+        count.incrementAndGet();
+        if (failed) {
+            errorCount.incrementAndGet();
+        }
+        totalMicros.addAndGet(micros);
+        long max;
+        while (micros > (max = maxMicros.get()) && !maxMicros.compareAndSet(max, micros)) {
+            // retry until the maximum is updated or a larger one is recorded
+        }
+        this.rows.addAndGet(rows);
+        this.columns.addAndGet(columns);
+        this.bytes.addAndGet(bytes);
+        histogram.record(micros);
+    }
+
+    @Override
+    public long getCount() {
+        return count.get();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    @Override
+    public double getThroughputPerSecond() {
+        long elapsedMillis = Math.max(System.currentTimeMillis() - since, 1);
+        return count.get() * 1000d / elapsedMillis;
+    }
+
+    @Override
+    public double getMeanLatency() {
+        long n = count.get();
+        return n == 0 ? 0 : totalMicros.get() / 1000d / n;
+    }
+
+    @Override
+    public double getP50Latency() {
+        return histogram.getPercentile(50) / 1000d;
+    }
+
+    @Override
+    public double getP95Latency() {
+        return histogram.getPercentile(95) / 1000d;
+    }
+
+    @Override
+    public double getP99Latency() {
+        return histogram.getPercentile(99) / 1000d;
+    }
+
+    @Override
+    public double getMaxLatency() {
+        return maxMicros.get() / 1000d;
+    }
+
+    @Override
+    public long getRows() {
+        return rows.get();
+    }
+
+    @Override
+    public long getColumns() {
+        return columns.get();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    @Override
+    public void reset() {
+        count.set(0);
+        errorCount.set(0);
+        totalMicros.set(0);
+        maxMicros.set(0);
+        rows.set(0);
+        columns.set(0);
+        bytes.set(0);
+        histogram.reset();
+        since = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,32 @@
+package org.helenus.metrics;
+
+/**
+ * The metrics of one operation on one entity class, as exposed over JMX.
+ * Durations are in milliseconds.
+ */
+public interface OperationMetricsMBean {
+
+    long getCount();
+
+    long getErrorCount();
+
+    double getThroughputPerSecond();
+
+    double getMeanLatency();
+
+    double getP50Latency();
+
+    double getP95Latency();
+
+    double getP99Latency();
+
+    double getMaxLatency();
+
+    long getRows();
+
+    long getColumns();
+
+    long getBytes();
+
+    void reset();
+}
@@ -0,0 +1,36 @@
+package org.helenus.metrics;
+
+import org.perf4j.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Logs each operation as a perf4j stop watch, tagged with the operation and
+ * the entity class, so that the standard perf4j appenders can aggregate
+ * the timings (e.g. into percentile and TPS statistics and graphs).
+ */
+public class Perf4jMetricsListener implements MetricsListener {
+
+    private final Logger logger;
+
+    public Perf4jMetricsListener() {
+        this(LoggerFactory.getLogger(StopWatch.DEFAULT_LOGGER_NAME));
+    }
+
+    public Perf4jMetricsListener(Logger logger) {
+        this.logger = logger;
+    }
+
+    @Override
+    public void operationCompleted(Operation operation, Class<?> entityClass, long startTime,
+            long elapsedNanos, int rows, int columns, long bytes, boolean failed) {
+        if (!logger.isInfoEnabled()) {
+            return;
+        }
+        String tag = "helenus." + operation.getMethodName()
+                + (entityClass != null ? "." + entityClass.getSimpleName() : "")
+                + (failed ? ".failure" : "");
+        String message = "rows=" + rows + " columns=" + columns + " bytes=" + bytes;
+        logger.info(new StopWatch(startTime, elapsedNanos / 1000000, tag, message).toString());
+    }
+}
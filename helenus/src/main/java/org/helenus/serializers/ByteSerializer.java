@@ -0,0 +1,31 @@
+package org.helenus.serializers;
+
+import me.prettyprint.cassandra.serializers.AbstractSerializer;
+
+/**
+ * Serializes a byte as a single byte.
+ */
+public final class ByteSerializer extends AbstractSerializer<Byte> {
+
+    private static final ByteSerializer instance = new ByteSerializer();
+
+    public static ByteSerializer get() {
+        return instance;
+    }
+
+    @Override
+    public byte[] toBytes(Byte obj) {
+        if (obj == null) {
+            return null;
+        }
+        return new byte[] {obj.byteValue()};
+    }
+
+    @Override
+    public Byte fromBytes(byte[] bytes) {
+        if (bytes == null || bytes.length < 1) {
+            return null;
+        }
+        return Byte.valueOf(bytes[0]);
+    }
+}
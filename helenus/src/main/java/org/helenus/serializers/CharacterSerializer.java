@@ -0,0 +1,32 @@
+package org.helenus.serializers;
+
+import me.prettyprint.cassandra.serializers.AbstractSerializer;
+
+/**
+ * Serializes chars as two big-endian bytes.
+ */
+public final class CharacterSerializer extends AbstractSerializer<Character> {
+
+    private static final CharacterSerializer instance = new CharacterSerializer();
+
+    public static CharacterSerializer get() {
+        return instance;
+    }
+
+    @Override
+    public byte[] toBytes(Character obj) {
+        if (obj == null) {
+            return null;
+        }
+        char value = obj.charValue();
+        return new byte[] {(byte) (value >>> 8), (byte) value};
+    }
+
+    @Override
+    public Character fromBytes(byte[] bytes) {
+        if (bytes == null || bytes.length < 2) {
+            return null;
+        }
+        return Character.valueOf((char) (((bytes[0] & 0xFF) << 8) | (bytes[1] & 0xFF)));
+    }
+}
@@ -0,0 +1,79 @@
+package org.helenus.serializers;
+
+import me.prettyprint.cassandra.model.Serializer;
+import me.prettyprint.cassandra.serializers.AbstractSerializer;
+
+/**
+ * Compresses the values of another serializer that are longer than a
+ * threshold. Compressed values start with the header byte
+ * {@value #COMPRESSED}, which never occurs in UTF-8 text. Shorter values are
+ * stored as they are, so values written before compression was enabled can
+ * still be read; a short value that happens to start with one of the header
+ * bytes is prefixed with {@value #STORED}.
+ * <p>
+ * Values written before compression was enabled are only read correctly if
+ * they don't start with a header byte, which holds for UTF-8 text, but not
+ * for binary values (such as negative numbers). Only text and byte arrays
+ * are compressed for this reason.
+ */
+public final class CompressingSerializer<T> extends AbstractSerializer<T> {
+
+    static final byte COMPRESSED = (byte) 0xFF;
+    static final byte STORED = (byte) 0xFE;
+
+    private final Serializer<T> serializer;
+    private final CompressionCodec codec;
+    private final int threshold;
+
+    public CompressingSerializer(Serializer<T> serializer, CompressionCodec codec, int threshold) {
+        this.serializer = serializer;
+        this.codec = codec;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public byte[] toBytes(T obj) {
+        byte[] bytes = serializer.toBytes(obj);
+        if (bytes == null) {
+            return null;
+        }
+        if (bytes.length > threshold) {
+            byte[] compressed = codec.compress(bytes);
+            // incompressible values are stored as they are
+            if (compressed.length + 1 < bytes.length) {
+                return prefix(COMPRESSED, compressed);
+            }
+        }
+        if (bytes.length > 0 && (bytes[0] == COMPRESSED || bytes[0] == STORED)) {
+            return prefix(STORED, bytes);
+        }
+        return bytes;
+    }
+
+    @Override
+    public T fromBytes(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return serializer.fromBytes(bytes);
+        }
+        if (bytes[0] == COMPRESSED) {
+            return serializer.fromBytes(codec.decompress(strip(bytes)));
+        }
+        if (bytes[0] == STORED) {
+            return serializer.fromBytes(strip(bytes));
+        }
+        return serializer.fromBytes(bytes);
+    }
+
+    private static byte[] prefix(byte header, byte[] bytes) {
+        byte[] result = new byte[bytes.length + 1];
+        result[0] = header;
+        System.arraycopy(bytes, 0, result, 1, bytes.length);
+        return result;
+    }
+
+    private static byte[] strip(byte[] bytes) {
+        byte[] result = new byte[bytes.length - 1];
+        System.arraycopy(bytes, 1, result, 0, result.length);
+        return result;
+    }
+}
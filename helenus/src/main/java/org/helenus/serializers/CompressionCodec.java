@@ -0,0 +1,12 @@
+package org.helenus.serializers;
+
+/**
+ * Compresses column values. Implementations must be thread-safe and have a
+ * public no-argument constructor.
+ */
+public interface CompressionCodec {
+
+    byte[] compress(byte[] data);
+
+    byte[] decompress(byte[] data);
+}
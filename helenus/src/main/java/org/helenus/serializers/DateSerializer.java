@@ -0,0 +1,34 @@
+package org.helenus.serializers;
+
+import java.util.Date;
+
+import me.prettyprint.cassandra.serializers.AbstractSerializer;
+import me.prettyprint.cassandra.serializers.LongSerializer;
+
+/**
+ * Serializes dates as the eight big-endian bytes of their millisecond timestamp.
+ */
+public final class DateSerializer extends AbstractSerializer<Date> {
+
+    private static final DateSerializer instance = new DateSerializer();
+
+    public static DateSerializer get() {
+        return instance;
+    }
+
+    @Override
+    public byte[] toBytes(Date obj) {
+        if (obj == null) {
+            return null;
+        }
+        return LongSerializer.get().toBytes(obj.getTime());
+    }
+
+    @Override
+    public Date fromBytes(byte[] bytes) {
+        if (bytes == null || bytes.length < 8) {
+            return null;
+        }
+        return new Date(LongSerializer.get().fromBytes(bytes));
+    }
+}
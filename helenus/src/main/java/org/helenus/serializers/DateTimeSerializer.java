@@ -0,0 +1,35 @@
+package org.helenus.serializers;
+
+import me.prettyprint.cassandra.serializers.AbstractSerializer;
+import me.prettyprint.cassandra.serializers.LongSerializer;
+
+import org.joda.time.DateTime;
+
+/**
+ * Serializes joda-time instants as the eight big-endian bytes of their millisecond
+ * timestamp. The time zone is not stored - values are read in the default zone.
+ */
+public final class DateTimeSerializer extends AbstractSerializer<DateTime> {
+
+    private static final DateTimeSerializer instance = new DateTimeSerializer();
+
+    public static DateTimeSerializer get() {
+        return instance;
+    }
+
+    @Override
+    public byte[] toBytes(DateTime obj) {
+        if (obj == null) {
+            return null;
+        }
+        return LongSerializer.get().toBytes(obj.getMillis());
+    }
+
+    @Override
+    public DateTime fromBytes(byte[] bytes) {
+        if (bytes == null || bytes.length < 8) {
+            return null;
+        }
+        return new DateTime(LongSerializer.get().fromBytes(bytes).longValue());
+    }
+}
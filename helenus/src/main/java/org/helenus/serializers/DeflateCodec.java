@@ -0,0 +1,73 @@
+package org.helenus.serializers;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses values with the JDK's {@link Deflater}. Each thread reuses its
+ * own deflater, inflater and buffer, so no native compressor state is
+ * allocated per value.
+ */
+public class DeflateCodec implements CompressionCodec {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.BEST_SPEED);
+        }
+    };
+
+    private static final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater();
+        }
+    };
+
+    private static final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    @Override
+    public byte[] compress(byte[] data) {
+        Deflater deflater = deflaters.get();
+        byte[] buffer = buffers.get();
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 16);
+        while (!deflater.finished()) {
+            int length = deflater.deflate(buffer);
+            out.write(buffer, 0, length);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public byte[] decompress(byte[] data) {
+        Inflater inflater = inflaters.get();
+        byte[] buffer = buffers.get();
+        inflater.reset();
+        inflater.setInput(data);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 3);
+        try {
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated compressed value");
+                }
+                out.write(buffer, 0, length);
+            }
+        } catch (DataFormatException ex) {
+            throw new IllegalArgumentException("Invalid compressed value", ex);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,32 @@
+package org.helenus.serializers;
+
+import me.prettyprint.cassandra.serializers.AbstractSerializer;
+import me.prettyprint.cassandra.serializers.LongSerializer;
+
+/**
+ * Serializes doubles as the eight big-endian bytes of their IEEE 754 representation.
+ */
+public final class DoubleSerializer extends AbstractSerializer<Double> {
+
+    private static final DoubleSerializer instance = new DoubleSerializer();
+
+    public static DoubleSerializer get() {
+        return instance;
+    }
+
+    @Override
+    public byte[] toBytes(Double obj) {
+        if (obj == null) {
+            return null;
+        }
+        return LongSerializer.get().toBytes(Double.doubleToRawLongBits(obj.doubleValue()));
+    }
+
+    @Override
+    public Double fromBytes(byte[] bytes) {
+        if (bytes == null || bytes.length < 8) {
+            return null;
+        }
+        return Double.valueOf(Double.longBitsToDouble(LongSerializer.get().fromBytes(bytes)));
+    }
+}
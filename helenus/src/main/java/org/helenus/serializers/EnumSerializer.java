@@ -0,0 +1,33 @@
+package org.helenus.serializers;
+
+import me.prettyprint.cassandra.serializers.AbstractSerializer;
+import me.prettyprint.cassandra.serializers.StringSerializer;
+
+/**
+ * Serializes enum constants by name, so that reordering the constants
+ * does not change the meaning of stored values.
+ */
+public final class EnumSerializer<E extends Enum<E>> extends AbstractSerializer<E> {
+
+    private final Class<E> enumClass;
+
+    public EnumSerializer(Class<E> enumClass) {
+        this.enumClass = enumClass;
+    }
+
+    @Override
+    public byte[] toBytes(E obj) {
+        if (obj == null) {
+            return null;
+        }
+        return StringSerializer.get().toBytes(obj.name());
+    }
+
+    @Override
+    public E fromBytes(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        return Enum.valueOf(enumClass, StringSerializer.get().fromBytes(bytes));
+    }
+}
@@ -0,0 +1,32 @@
+package org.helenus.serializers;
+
+import me.prettyprint.cassandra.serializers.AbstractSerializer;
+import me.prettyprint.cassandra.serializers.IntegerSerializer;
+
+/**
+ * Serializes floats as the four big-endian bytes of their IEEE 754 representation.
+ */
+public final class FloatSerializer extends AbstractSerializer<Float> {
+
+    private static final FloatSerializer instance = new FloatSerializer();
+
+    public static FloatSerializer get() {
+        return instance;
+    }
+
+    @Override
+    public byte[] toBytes(Float obj) {
+        if (obj == null) {
+            return null;
+        }
+        return IntegerSerializer.get().toBytes(Float.floatToRawIntBits(obj.floatValue()));
+    }
+
+    @Override
+    public Float fromBytes(byte[] bytes) {
+        if (bytes == null || bytes.length < 4) {
+            return null;
+        }
+        return Float.valueOf(Float.intBitsToFloat(IntegerSerializer.get().fromBytes(bytes)));
+    }
+}
@@ -0,0 +1,74 @@
+package org.helenus.serializers;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import me.prettyprint.cassandra.model.Serializer;
+import me.prettyprint.cassandra.serializers.BooleanSerializer;
+import me.prettyprint.cassandra.serializers.BytesSerializer;
+import me.prettyprint.cassandra.serializers.IntegerSerializer;
+import me.prettyprint.cassandra.serializers.LongSerializer;
+import me.prettyprint.cassandra.serializers.ObjectSerializer;
+import me.prettyprint.cassandra.serializers.StringSerializer;
+import me.prettyprint.cassandra.serializers.UUIDSerializer;
+
+import org.joda.time.DateTime;
+
+/**
+ * Holds the serializers used for mapped fields and keys. The serializer of
+ * each field is resolved once, when the entity metadata is built, so that
+ * no type inference happens when reading or writing.
+ *
+ * Numbers, dates and UUIDs are written in fixed-width binary form, enums by
+ * name, and types without a registered serializer fall back to java
+ * serialization. Custom serializers can be registered for any type before
+ * the registry is passed to the entity manager.
+ */
+public class SerializerRegistry {
+
+    private final Map<Class<?>, Serializer<?>> serializers = new HashMap<Class<?>, Serializer<?>>();
+
+    public SerializerRegistry() {
+        register(String.class, StringSerializer.get());
+        register(UUID.class, UUIDSerializer.get());
+        register(byte[].class, BytesSerializer.get());
+        register(Long.class, LongSerializer.get());
+        register(Integer.class, IntegerSerializer.get());
+        register(Short.class, ShortSerializer.get());
+        register(Byte.class, ByteSerializer.get());
+        register(Character.class, CharacterSerializer.get());
+        register(Boolean.class, BooleanSerializer.get());
+        register(Double.class, DoubleSerializer.get());
+        register(Float.class, FloatSerializer.get());
+        register(Date.class, DateSerializer.get());
+        register(DateTime.class, DateTimeSerializer.get());
+
+        serializers.put(long.class, LongSerializer.get());
+        serializers.put(int.class, IntegerSerializer.get());
+        serializers.put(short.class, ShortSerializer.get());
+        serializers.put(byte.class, ByteSerializer.get());
+        serializers.put(char.class, CharacterSerializer.get());
+        serializers.put(boolean.class, BooleanSerializer.get());
+        serializers.put(double.class, DoubleSerializer.get());
+        serializers.put(float.class, FloatSerializer.get());
+    }
+
+    public <T> void register(Class<T> type, Serializer<T> serializer) {
+        serializers.put(type, serializer);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public <T> Serializer<T> getSerializer(Class<T> type) {
+        Serializer<?> serializer = serializers.get(type);
+        if (serializer == null) {
+            if (type.isEnum()) {
+                serializer = new EnumSerializer(type);
+            } else {
+                serializer = ObjectSerializer.get();
+            }
+        }
+        return (Serializer<T>) serializer;
+    }
+}
@@ -0,0 +1,32 @@
+package org.helenus.serializers;
+
+import me.prettyprint.cassandra.serializers.AbstractSerializer;
+
+/**
+ * Serializes shorts as two big-endian bytes.
+ */
+public final class ShortSerializer extends AbstractSerializer<Short> {
+
+    private static final ShortSerializer instance = new ShortSerializer();
+
+    public static ShortSerializer get() {
+        return instance;
+    }
+
+    @Override
+    public byte[] toBytes(Short obj) {
+        if (obj == null) {
+            return null;
+        }
+        short value = obj.shortValue();
+        return new byte[] {(byte) (value >>> 8), (byte) value};
+    }
+
+    @Override
+    public Short fromBytes(byte[] bytes) {
+        if (bytes == null || bytes.length < 2) {
+            return null;
+        }
+        return Short.valueOf((short) (((bytes[0] & 0xFF) << 8) | (bytes[1] & 0xFF)));
+    }
+}
@@ -0,0 +1,226 @@
+package org.helenus.storage;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import me.prettyprint.cassandra.model.ConfigurableConsistencyLevel;
+import me.prettyprint.cassandra.model.ConsistencyLevelPolicy;
+import me.prettyprint.cassandra.model.ConsistencyLevelPolicy.OperationType;
+import me.prettyprint.cassandra.model.NotFoundException;
+import me.prettyprint.cassandra.service.CassandraClient;
+import me.prettyprint.cassandra.service.Cluster;
+import me.prettyprint.cassandra.service.Keyspace;
+import me.prettyprint.cassandra.service.spring.HectorTemplate;
+import me.prettyprint.cassandra.service.spring.HectorTemplateImpl;
+
+import org.apache.cassandra.thrift.CfDef;
+import org.apache.cassandra.thrift.Clock;
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.ColumnParent;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.IndexClause;
+import org.apache.cassandra.thrift.KsDef;
+import org.apache.cassandra.thrift.Mutation;
+import org.apache.cassandra.thrift.SlicePredicate;
+import org.apache.cassandra.thrift.SuperColumn;
+
+/**
+ * A backend that executes the operations with hector, using the cluster,
+ * keyspace and consistency levels of the given template. Reads use the read
+ * consistency level of the column family, and writes the default write
+ * consistency level.
+ */
+public class HectorStorageBackend implements StorageBackend {
+
+    private final HectorTemplate hectorTemplate;
+    private final ConsistencyLevelPolicy consistencyLevelPolicy;
+
+    public HectorStorageBackend(HectorTemplate hectorTemplate) {
+        this.hectorTemplate = hectorTemplate;
+        if (hectorTemplate instanceof HectorTemplateImpl
+                && ((HectorTemplateImpl) hectorTemplate).getConfigurableConsistencyLevelPolicy() != null) {
+            this.consistencyLevelPolicy = ((HectorTemplateImpl) hectorTemplate).getConfigurableConsistencyLevelPolicy();
+        } else {
+            this.consistencyLevelPolicy = new ConfigurableConsistencyLevel();
+        }
+    }
+
+    public HectorTemplate getHectorTemplate() {
+        return hectorTemplate;
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.storage.StorageBackend#getKeyspaceName()
+     */
+    @Override
+    public String getKeyspaceName() {
+        return hectorTemplate.getKeyspace();
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.storage.StorageBackend#createClock()
+     */
+    @Override
+    public Clock createClock() {
+        return hectorTemplate.createClock();
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.storage.StorageBackend#getSlice(java.lang.String, byte[], org.apache.cassandra.thrift.SlicePredicate)
+     */
+    @Override
+    public List<Column> getSlice(final String columnFamily, final byte[] key, final SlicePredicate predicate) {
+        return execute(read(columnFamily), new KeyspaceCallback<List<Column>>() {
+            @Override
+            public List<Column> execute(Keyspace keyspace) {
+                return keyspace.getSlice(key, new ColumnParent(columnFamily), predicate);
+            }
+        });
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.storage.StorageBackend#getSuperSlice(java.lang.String, byte[], org.apache.cassandra.thrift.SlicePredicate)
+     */
+    @Override
+    public List<SuperColumn> getSuperSlice(final String columnFamily, final byte[] key, final SlicePredicate predicate) {
+        return execute(read(columnFamily), new KeyspaceCallback<List<SuperColumn>>() {
+            @Override
+            public List<SuperColumn> execute(Keyspace keyspace) {
+                return keyspace.getSuperSlice(key, new ColumnParent(columnFamily), predicate);
+            }
+        });
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.storage.StorageBackend#multigetSlice(java.lang.String, java.util.List, org.apache.cassandra.thrift.SlicePredicate)
+     */
+    @Override
+    public Map<byte[], List<Column>> multigetSlice(final String columnFamily, final List<byte[]> keys,
+            final SlicePredicate predicate) {
+        return execute(read(columnFamily), new KeyspaceCallback<Map<byte[], List<Column>>>() {
+            @Override
+            public Map<byte[], List<Column>> execute(Keyspace keyspace) {
+                return keyspace.multigetSlice(new LinkedHashSet<byte[]>(keys), new ColumnParent(columnFamily), predicate);
+            }
+        });
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.storage.StorageBackend#multigetSuperSlice(java.lang.String, java.util.List, org.apache.cassandra.thrift.SlicePredicate)
+     */
+    @Override
+    public Map<byte[], List<SuperColumn>> multigetSuperSlice(final String columnFamily, final List<byte[]> keys,
+            final SlicePredicate predicate) {
+        return execute(read(columnFamily), new KeyspaceCallback<Map<byte[], List<SuperColumn>>>() {
+            @Override
+            public Map<byte[], List<SuperColumn>> execute(Keyspace keyspace) {
+                return keyspace.multigetSuperSlice(new LinkedHashSet<byte[]>(keys), new ColumnParent(columnFamily), predicate);
+            }
+        });
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.storage.StorageBackend#getIndexedSlices(java.lang.String, org.apache.cassandra.thrift.IndexClause, org.apache.cassandra.thrift.SlicePredicate)
+     */
+    @Override
+    public Map<byte[], List<Column>> getIndexedSlices(final String columnFamily, final IndexClause clause,
+            final SlicePredicate predicate) {
+        return execute(read(columnFamily), new KeyspaceCallback<Map<byte[], List<Column>>>() {
+            @Override
+            public Map<byte[], List<Column>> execute(Keyspace keyspace) {
+                return keyspace.getIndexedSlices(new ColumnParent(columnFamily), clause, predicate);
+            }
+        });
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.storage.StorageBackend#batchMutate(java.util.Map)
+     */
+    @Override
+    public void batchMutate(final Map<byte[], Map<String, List<Mutation>>> mutations) {
+        execute(consistencyLevelPolicy.get(OperationType.WRITE), new KeyspaceCallback<Void>() {
+            @Override
+            public Void execute(Keyspace keyspace) {
+                keyspace.batchMutate(mutations);
+                return null;
+            }
+        });
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.storage.StorageBackend#keyspaceExists()
+     */
+    @Override
+    public boolean keyspaceExists() {
+        Cluster cluster = hectorTemplate.getCluster();
+        CassandraClient client = cluster.borrowClient();
+        try {
+            client.getKeyspace(getKeyspaceName());
+            return true;
+        } catch (NotFoundException ex) {
+            return false;
+        } finally {
+            cluster.releaseClient(client);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.storage.StorageBackend#createKeyspace(java.util.List)
+     */
+    @Override
+    public void createKeyspace(List<CfDef> columnFamilies) {
+        KsDef def = new KsDef();
+        def.setName(getKeyspaceName());
+        def.setStrategy_class(hectorTemplate.getReplicationStrategyClass());
+        def.setReplication_factor(hectorTemplate.getReplicationFactor());
+        def.setCf_defs(columnFamilies);
+
+        Cluster cluster = hectorTemplate.getCluster();
+        CassandraClient client = cluster.borrowClient();
+        try {
+            client.getCassandra().system_add_keyspace(def);
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        } finally {
+            cluster.releaseClient(client);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.storage.StorageBackend#dropKeyspace()
+     */
+    @Override
+    public void dropKeyspace() {
+        Cluster cluster = hectorTemplate.getCluster();
+        CassandraClient client = cluster.borrowClient();
+        try {
+            client.getCassandra().system_drop_keyspace(getKeyspaceName());
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        } finally {
+            cluster.releaseClient(client);
+        }
+    }
+
+    private ConsistencyLevel read(String columnFamily) {
+        return consistencyLevelPolicy.get(OperationType.READ, columnFamily);
+    }
+
+    private <T> T execute(ConsistencyLevel consistencyLevel, KeyspaceCallback<T> callback) {
+        Cluster cluster = hectorTemplate.getCluster();
+        CassandraClient client = cluster.borrowClient();
+        Keyspace keyspace = null;
+        try {
+            keyspace = client.getKeyspace(getKeyspaceName(), consistencyLevel);
+            return callback.execute(keyspace);
+        } finally {
+            // on failover the keyspace switches to another client
+            cluster.releaseClient(keyspace != null ? keyspace.getClient() : client);
+        }
+    }
+
+    private interface KeyspaceCallback<T> {
+        T execute(Keyspace keyspace);
+    }
+}
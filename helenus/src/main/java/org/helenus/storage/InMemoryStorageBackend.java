@@ -0,0 +1,540 @@
+package org.helenus.storage;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.cassandra.thrift.CfDef;
+import org.apache.cassandra.thrift.Clock;
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.ColumnDef;
+import org.apache.cassandra.thrift.ColumnOrSuperColumn;
+import org.apache.cassandra.thrift.Deletion;
+import org.apache.cassandra.thrift.IndexClause;
+import org.apache.cassandra.thrift.IndexExpression;
+import org.apache.cassandra.thrift.IndexOperator;
+import org.apache.cassandra.thrift.Mutation;
+import org.apache.cassandra.thrift.SlicePredicate;
+import org.apache.cassandra.thrift.SliceRange;
+import org.apache.cassandra.thrift.SuperColumn;
+
+/**
+ * A backend that keeps the whole keyspace in memory, in sorted maps. Rows
+ * are ordered by key and (super) columns by name, both compared as unsigned
+ * bytes - as with the byte ordered partitioner and the BytesType comparator.
+ * Meant for integration tests, load tests and local development.
+ *
+ * Writes are resolved by timestamp, like in Cassandra, but deletions leave
+ * no tombstones. Secondary indexes are maintained for the indexed columns of
+ * the column families created with {@link #createKeyspace(List)}. Column
+ * families that were not created are created, without indexes, on first
+ * use. All data is guarded by a single read-write lock.
+ */
+public class InMemoryStorageBackend implements StorageBackend {
+
+    /**
+     * Compares byte arrays as unsigned bytes, like the BytesType comparator
+     */
+    public static final Comparator<byte[]> BYTES_COMPARATOR = new Comparator<byte[]>() {
+        @Override
+        public int compare(byte[] a, byte[] b) {
+            int length = Math.min(a.length, b.length);
+            for (int i = 0; i < length; i++) {
+                int diff = (a[i] & 0xff) - (b[i] & 0xff);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return a.length - b.length;
+        }
+    };
+
+    private final String keyspaceName;
+    private final Map<String, ColumnFamily> columnFamilies = new HashMap<String, ColumnFamily>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private boolean keyspaceCreated;
+
+    public InMemoryStorageBackend() {
+        this("helenus");
+    }
+
+    public InMemoryStorageBackend(String keyspaceName) {
+        this.keyspaceName = keyspaceName;
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.storage.StorageBackend#getKeyspaceName()
+     */
+    @Override
+    public String getKeyspaceName() {
+        return keyspaceName;
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.storage.StorageBackend#createClock()
+     */
+    @Override
+    public Clock createClock() {
+        // microseconds, as used by hector
+        return new Clock(System.currentTimeMillis() * 1000);
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.storage.StorageBackend#getSlice(java.lang.String, byte[], org.apache.cassandra.thrift.SlicePredicate)
+     */
+    @Override
+    public List<Column> getSlice(String columnFamily, byte[] key, SlicePredicate predicate) {
+        lock.readLock().lock();
+        try {
+            return copyColumns(slice(getRow(columnFamily, key).columns, predicate));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.storage.StorageBackend#getSuperSlice(java.lang.String, byte[], org.apache.cassandra.thrift.SlicePredicate)
+     */
+    @Override
+    public List<SuperColumn> getSuperSlice(String columnFamily, byte[] key, SlicePredicate predicate) {
+        lock.readLock().lock();
+        try {
+            return getSuperSlice(getRow(columnFamily, key), predicate);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.storage.StorageBackend#multigetSlice(java.lang.String, java.util.List, org.apache.cassandra.thrift.SlicePredicate)
+     */
+    @Override
+    public Map<byte[], List<Column>> multigetSlice(String columnFamily, List<byte[]> keys, SlicePredicate predicate) {
+        lock.readLock().lock();
+        try {
+            Map<byte[], List<Column>> result = new LinkedHashMap<byte[], List<Column>>();
+            for (byte[] key : keys) {
+                result.put(key, copyColumns(slice(getRow(columnFamily, key).columns, predicate)));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.storage.StorageBackend#multigetSuperSlice(java.lang.String, java.util.List, org.apache.cassandra.thrift.SlicePredicate)
+     */
+    @Override
+    public Map<byte[], List<SuperColumn>> multigetSuperSlice(String columnFamily, List<byte[]> keys,
+            SlicePredicate predicate) {
+        lock.readLock().lock();
+        try {
+            Map<byte[], List<SuperColumn>> result = new LinkedHashMap<byte[], List<SuperColumn>>();
+            for (byte[] key : keys) {
+                result.put(key, getSuperSlice(getRow(columnFamily, key), predicate));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.storage.StorageBackend#getIndexedSlices(java.lang.String, org.apache.cassandra.thrift.IndexClause, org.apache.cassandra.thrift.SlicePredicate)
+     */
+    @Override
+    public Map<byte[], List<Column>> getIndexedSlices(String columnFamily, IndexClause clause,
+            SlicePredicate predicate) {
+        lock.readLock().lock();
+        try {
+            ColumnFamily cf = columnFamilies.get(columnFamily);
+            // like Cassandra, an equality on an indexed column is required
+            Map<ByteBuffer, TreeSet<byte[]>> index = null;
+            IndexExpression indexedExpression = null;
+            if (cf != null) {
+                for (IndexExpression expression : clause.getExpressions()) {
+                    index = cf.indexes.get(ByteBuffer.wrap(expression.getColumn_name()));
+                    if (expression.getOp() == IndexOperator.EQ && index != null) {
+                        indexedExpression = expression;
+                        break;
+                    }
+                }
+            }
+            if (indexedExpression == null) {
+                throw new IllegalArgumentException("No indexed columns present in index clause with operator EQ");
+            }
+
+            Map<byte[], List<Column>> result = new LinkedHashMap<byte[], List<Column>>();
+            TreeSet<byte[]> keys = index.get(ByteBuffer.wrap(indexedExpression.getValue()));
+            if (keys == null) {
+                return result;
+            }
+            byte[] startKey = clause.getStart_key();
+            Set<byte[]> candidates = isSet(startKey) ? keys.tailSet(startKey, true) : keys;
+            for (byte[] key : candidates) {
+                if (result.size() == clause.getCount()) {
+                    break;
+                }
+                Row row = cf.rows.get(key);
+                if (matches(row, clause.getExpressions())) {
+                    result.put(key, copyColumns(slice(row.columns, predicate)));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean matches(Row row, List<IndexExpression> expressions) {
+        for (IndexExpression expression : expressions) {
+            Column column = row.columns.get(expression.getColumn_name());
+            if (column == null) {
+                return false;
+            }
+            int diff = BYTES_COMPARATOR.compare(column.getValue(), expression.getValue());
+            boolean match;
+            switch (expression.getOp()) {
+            case EQ:
+                match = diff == 0;
+                break;
+            case GT:
+                match = diff > 0;
+                break;
+            case GTE:
+                match = diff >= 0;
+                break;
+            case LT:
+                match = diff < 0;
+                break;
+            case LTE:
+                match = diff <= 0;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported index operator " + expression.getOp());
+            }
+            if (!match) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.storage.StorageBackend#batchMutate(java.util.Map)
+     */
+    @Override
+    public void batchMutate(Map<byte[], Map<String, List<Mutation>>> mutations) {
+        lock.writeLock().lock();
+        try {
+            for (Map.Entry<byte[], Map<String, List<Mutation>>> rowMutations : mutations.entrySet()) {
+                byte[] key = rowMutations.getKey();
+                for (Map.Entry<String, List<Mutation>> cfMutations : rowMutations.getValue().entrySet()) {
+                    ColumnFamily cf = getOrCreateColumnFamily(cfMutations.getKey());
+                    Row row = cf.rows.get(key);
+                    if (row == null) {
+                        row = new Row();
+                        cf.rows.put(key.clone(), row);
+                    }
+                    for (Mutation mutation : cfMutations.getValue()) {
+                        if (mutation.isSetColumn_or_supercolumn()) {
+                            insert(cf, key, row, mutation.getColumn_or_supercolumn());
+                        } else if (mutation.isSetDeletion()) {
+                            delete(cf, key, row, mutation.getDeletion());
+                        }
+                    }
+                    if (row.isEmpty()) {
+                        cf.rows.remove(key);
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void insert(ColumnFamily cf, byte[] key, Row row, ColumnOrSuperColumn cosc) {
+        if (cosc.isSetColumn()) {
+            Column column = cosc.getColumn();
+            Column existing = row.columns.get(column.getName());
+            if (put(row.columns, column)) {
+                if (existing != null) {
+                    cf.unindex(key, existing);
+                }
+                cf.index(key, column);
+            }
+        } else if (cosc.isSetSuper_column()) {
+            SuperColumn superColumn = cosc.getSuper_column();
+            TreeMap<byte[], Column> columns = row.superColumns.get(superColumn.getName());
+            if (columns == null) {
+                columns = new TreeMap<byte[], Column>(BYTES_COMPARATOR);
+                row.superColumns.put(superColumn.getName(), columns);
+            }
+            for (Column column : superColumn.getColumns()) {
+                put(columns, column);
+            }
+        }
+    }
+
+    /**
+     * Stores the column, unless a newer version is already stored
+     */
+    private boolean put(TreeMap<byte[], Column> columns, Column column) {
+        Column existing = columns.get(column.getName());
+        if (existing != null && getTimestamp(existing) > getTimestamp(column)) {
+            return false;
+        }
+        columns.put(column.getName(), new Column(column));
+        return true;
+    }
+
+    private void delete(ColumnFamily cf, byte[] key, Row row, Deletion deletion) {
+        long timestamp = deletion.isSetClock() ? deletion.getClock().getTimestamp() : Long.MAX_VALUE;
+        SlicePredicate predicate = deletion.getPredicate();
+        if (predicate != null && predicate.isSetSlice_range()) {
+            throw new IllegalArgumentException("Deletions by slice range are not supported");
+        }
+        if (deletion.isSetSuper_column()) {
+            TreeMap<byte[], Column> columns = row.superColumns.get(deletion.getSuper_column());
+            if (columns == null) {
+                return;
+            }
+            if (predicate == null) {
+                removeOlder(columns, columns.keySet(), timestamp, null, null);
+            } else {
+                removeOlder(columns, predicate.getColumn_names(), timestamp, null, null);
+            }
+            if (columns.isEmpty()) {
+                row.superColumns.remove(deletion.getSuper_column());
+            }
+            return;
+        }
+
+        Collection<byte[]> names = predicate != null ? predicate.getColumn_names() : null;
+        removeOlder(row.columns, names != null ? names : row.columns.keySet(), timestamp, cf, key);
+        for (byte[] name : names != null ? names : new ArrayList<byte[]>(row.superColumns.keySet())) {
+            TreeMap<byte[], Column> columns = row.superColumns.get(name);
+            if (columns != null) {
+                removeOlder(columns, columns.keySet(), timestamp, null, null);
+                if (columns.isEmpty()) {
+                    row.superColumns.remove(name);
+                }
+            }
+        }
+    }
+
+    private void removeOlder(TreeMap<byte[], Column> columns, Collection<byte[]> names, long timestamp,
+            ColumnFamily cf, byte[] key) {
+        for (byte[] name : new ArrayList<byte[]>(names)) {
+            Column column = columns.get(name);
+            if (column != null && getTimestamp(column) <= timestamp) {
+                columns.remove(name);
+                if (cf != null) {
+                    cf.unindex(key, column);
+                }
+            }
+        }
+    }
+
+    private long getTimestamp(Column column) {
+        return column.isSetClock() ? column.getClock().getTimestamp() : 0;
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.storage.StorageBackend#keyspaceExists()
+     */
+    @Override
+    public boolean keyspaceExists() {
+        lock.readLock().lock();
+        try {
+            return keyspaceCreated;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.storage.StorageBackend#createKeyspace(java.util.List)
+     */
+    @Override
+    public void createKeyspace(List<CfDef> cfDefs) {
+        lock.writeLock().lock();
+        try {
+            if (keyspaceCreated) {
+                throw new IllegalStateException("Keyspace " + keyspaceName + " already exists");
+            }
+            for (CfDef cfDef : cfDefs) {
+                ColumnFamily cf = getOrCreateColumnFamily(cfDef.getName());
+                if (cfDef.getColumn_metadata() == null) {
+                    continue;
+                }
+                for (ColumnDef columnDef : cfDef.getColumn_metadata()) {
+                    if (columnDef.isSetIndex_type()) {
+                        cf.addIndex(columnDef.getName());
+                    }
+                }
+            }
+            keyspaceCreated = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.helenus.storage.StorageBackend#dropKeyspace()
+     */
+    @Override
+    public void dropKeyspace() {
+        lock.writeLock().lock();
+        try {
+            columnFamilies.clear();
+            keyspaceCreated = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private ColumnFamily getOrCreateColumnFamily(String name) {
+        ColumnFamily cf = columnFamilies.get(name);
+        if (cf == null) {
+            cf = new ColumnFamily();
+            columnFamilies.put(name, cf);
+        }
+        return cf;
+    }
+
+    private Row getRow(String columnFamily, byte[] key) {
+        ColumnFamily cf = columnFamilies.get(columnFamily);
+        Row row = cf != null ? cf.rows.get(key) : null;
+        return row != null ? row : Row.EMPTY;
+    }
+
+    private List<SuperColumn> getSuperSlice(Row row, SlicePredicate predicate) {
+        List<SuperColumn> result = new ArrayList<SuperColumn>();
+        for (Map.Entry<byte[], TreeMap<byte[], Column>> entry : sliceEntries(row.superColumns, predicate)) {
+            result.add(new SuperColumn(entry.getKey().clone(), copyColumns(entry.getValue().values())));
+        }
+        return result;
+    }
+
+    private static <V> Collection<V> slice(TreeMap<byte[], V> columns, SlicePredicate predicate) {
+        List<V> result = new ArrayList<V>();
+        for (Map.Entry<byte[], V> entry : sliceEntries(columns, predicate)) {
+            result.add(entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Selects the entries that match the predicate - either the named ones, or
+     * up to count entries of the range, in comparator (or reversed) order
+     */
+    private static <V> Collection<Map.Entry<byte[], V>> sliceEntries(TreeMap<byte[], V> columns,
+            SlicePredicate predicate) {
+        if (predicate.isSetColumn_names()) {
+            TreeMap<byte[], V> named = new TreeMap<byte[], V>(BYTES_COMPARATOR);
+            for (byte[] name : predicate.getColumn_names()) {
+                V value = columns.get(name);
+                if (value != null) {
+                    named.put(name, value);
+                }
+            }
+            return named.entrySet();
+        }
+
+        SliceRange range = predicate.getSlice_range();
+        NavigableMap<byte[], V> selected = range.isReversed() ? columns.descendingMap() : columns;
+        if (isSet(range.getStart())) {
+            selected = selected.tailMap(range.getStart(), true);
+        }
+        if (isSet(range.getFinish())) {
+            selected = selected.headMap(range.getFinish(), true);
+        }
+        List<Map.Entry<byte[], V>> result = new ArrayList<Map.Entry<byte[], V>>();
+        for (Map.Entry<byte[], V> entry : selected.entrySet()) {
+            if (result.size() == range.getCount()) {
+                break;
+            }
+            result.add(entry);
+        }
+        return result;
+    }
+
+    private static boolean isSet(byte[] bound) {
+        return bound != null && bound.length > 0;
+    }
+
+    /**
+     * Returned columns are copies, so callers can't modify the stored ones
+     */
+    private static List<Column> copyColumns(Collection<Column> columns) {
+        List<Column> result = new ArrayList<Column>(columns.size());
+        for (Column column : columns) {
+            result.add(new Column(column));
+        }
+        return result;
+    }
+
+    private static class ColumnFamily {
+        private final TreeMap<byte[], Row> rows = new TreeMap<byte[], Row>(BYTES_COMPARATOR);
+        // indexed column name -> value -> keys of the rows with that value
+        private final Map<ByteBuffer, Map<ByteBuffer, TreeSet<byte[]>>> indexes =
+            new HashMap<ByteBuffer, Map<ByteBuffer, TreeSet<byte[]>>>();
+
+        void addIndex(byte[] columnName) {
+            indexes.put(ByteBuffer.wrap(columnName), new HashMap<ByteBuffer, TreeSet<byte[]>>());
+        }
+
+        void index(byte[] key, Column column) {
+            Map<ByteBuffer, TreeSet<byte[]>> index = indexes.get(ByteBuffer.wrap(column.getName()));
+            if (index == null) {
+                return;
+            }
+            ByteBuffer value = ByteBuffer.wrap(column.getValue().clone());
+            TreeSet<byte[]> keys = index.get(value);
+            if (keys == null) {
+                keys = new TreeSet<byte[]>(BYTES_COMPARATOR);
+                index.put(value, keys);
+            }
+            keys.add(key.clone());
+        }
+
+        void unindex(byte[] key, Column column) {
+            Map<ByteBuffer, TreeSet<byte[]>> index = indexes.get(ByteBuffer.wrap(column.getName()));
+            if (index == null) {
+                return;
+            }
+            TreeSet<byte[]> keys = index.get(ByteBuffer.wrap(column.getValue()));
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    index.remove(ByteBuffer.wrap(column.getValue()));
+                }
+            }
+        }
+    }
+
+    private static class Row {
+        private static final Row EMPTY = new Row();
+
+        private final TreeMap<byte[], Column> columns = new TreeMap<byte[], Column>(BYTES_COMPARATOR);
+        private final TreeMap<byte[], TreeMap<byte[], Column>> superColumns =
+            new TreeMap<byte[], TreeMap<byte[], Column>>(BYTES_COMPARATOR);
+
+        boolean isEmpty() {
+            return columns.isEmpty() && superColumns.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.helenus.storage;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.cassandra.thrift.CfDef;
+import org.apache.cassandra.thrift.Clock;
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.IndexClause;
+import org.apache.cassandra.thrift.Mutation;
+import org.apache.cassandra.thrift.SlicePredicate;
+import org.apache.cassandra.thrift.SuperColumn;
+
+/**
+ * The operations the entity manager needs from the store, in terms of the
+ * thrift types. All keys and names are passed serialized, so implementations
+ * don't deal with the mapping at all.
+ *
+ * Implementations must be thread-safe.
+ */
+public interface StorageBackend {
+
+    /**
+     * The name of the keyspace all operations are executed against
+     */
+    String getKeyspaceName();
+
+    /**
+     * Creates the clock (timestamp) of a new write
+     */
+    Clock createClock();
+
+    /**
+     * Reads the columns of a single row that match the predicate, in
+     * comparator order. An empty list is returned for missing rows.
+     */
+    List<Column> getSlice(String columnFamily, byte[] key, SlicePredicate predicate);
+
+    /**
+     * Reads the super columns of a single row that match the predicate, in
+     * comparator order. An empty list is returned for missing rows.
+     */
+    List<SuperColumn> getSuperSlice(String columnFamily, byte[] key, SlicePredicate predicate);
+
+    /**
+     * Reads the columns of several rows in one round trip. Rows that don't
+     * exist are returned without columns.
+     */
+    Map<byte[], List<Column>> multigetSlice(String columnFamily, List<byte[]> keys, SlicePredicate predicate);
+
+    /**
+     * Reads the super columns of several rows in one round trip. Rows that
+     * don't exist are returned without super columns.
+     */
+    Map<byte[], List<SuperColumn>> multigetSuperSlice(String columnFamily, List<byte[]> keys, SlicePredicate predicate);
+
+    /**
+     * Reads up to clause.count rows that match the index clause, starting at
+     * (and including) clause.start_key. The returned map iterates in the
+     * order the rows are stored.
+     */
+    Map<byte[], List<Column>> getIndexedSlices(String columnFamily, IndexClause clause, SlicePredicate predicate);
+
+    /**
+     * Applies the given mutations, keyed by row key and column family
+     */
+    void batchMutate(Map<byte[], Map<String, List<Mutation>>> mutations);
+
+    boolean keyspaceExists();
+
+    /**
+     * Creates the keyspace with the given column families
+     */
+    void createKeyspace(List<CfDef> columnFamilies);
+
+    void dropKeyspace();
+}
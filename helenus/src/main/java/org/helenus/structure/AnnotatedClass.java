@@ -1,79 +1,462 @@
 package org.helenus.structure;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
+import me.prettyprint.cassandra.model.Serializer;
+import me.prettyprint.cassandra.serializers.StringSerializer;
+
+/**
+ * The mapping of an entity class. It is collected by a {@link Builder} while
+ * the entity manager is created and is never modified once built, so it can
+ * be shared between threads without synchronization.
+ */
 public class AnnotatedClass {
 
-    private Class<?> clazz;
-    private String columnFamilyName;
-    private Map<String, AnnotatedField> fields = new HashMap<String, AnnotatedField>();
-    private String keyFieldName;
-    private boolean dependentKey;
-    private String dependentKeyFieldName;
-    private boolean inverse;
-    private String inverseColumnNameField;
-    private String inverseColumnFamilySuffix;
-    private boolean hasSuperColumn;
+    private static final Comparator<AnnotatedField.Builder> COLUMN_ORDER = new Comparator<AnnotatedField.Builder>() {
+        @Override
+        public int compare(AnnotatedField.Builder a, AnnotatedField.Builder b) {
+            int result = getSortName(a).compareTo(getSortName(b));
+            return result != 0 ? result : a.getField().getName().compareTo(b.getField().getName());
+        }
+    };
+
+    private final Class<?> clazz;
+    private final String columnFamilyName;
+    private final Map<String, AnnotatedField> fields;
+    private final List<AnnotatedField> fieldList;
+    private final String keyFieldName;
+    private final boolean dependentKey;
+    private final boolean keyGenerated;
+    private final boolean eagerDependentKey;
+    private final String dependentKeyFieldName;
+    private final boolean inverse;
+    private final String inverseColumnNameField;
+    private final String inverseColumnFamilySuffix;
+    private final boolean hasSuperColumn;
+    private final boolean secondaryIndex;
+    private final List<String> columnNames;
+    private final List<String> superColumnNames;
+    private final List<byte[]> columnNameBytes;
+    private final List<byte[]> superColumnNameBytes;
+    private final PropertyAccessor keyAccessor;
+    private final Serializer<Object> keySerializer;
+    private final boolean cached;
+    private final boolean queriesCached;
+    private final Map<String, AnnotatedField> columnFields;
+    private final Map<String, AnnotatedField> superColumnFields;
+    private final NameIndex columnFieldIndex;
+    private final NameIndex superColumnFieldIndex;
+    private final PropertyAccessor dependentKeyAccessor;
+    private final PropertyAccessor inverseColumnNameAccessor;
+    private final Serializer<Object> inverseColumnNameSerializer;
+    private final AnnotatedField sliceField;
+    private final List<AnnotatedField> writeColumns;
+    private final List<AnnotatedField> writeSuperColumns;
+
+    private AnnotatedClass(Builder builder) {
+        this.clazz = builder.clazz;
+        this.columnFamilyName = builder.columnFamilyName;
+        this.keyFieldName = builder.keyFieldName;
+        this.dependentKey = builder.dependentKey;
+        this.keyGenerated = builder.keyGenerated;
+        this.eagerDependentKey = builder.eagerDependentKey;
+        this.dependentKeyFieldName = builder.dependentKeyFieldName;
+        this.inverse = builder.inverse;
+        this.inverseColumnNameField = builder.inverseColumnNameField;
+        this.inverseColumnFamilySuffix = builder.inverseColumnFamilySuffix;
+        this.keyAccessor = builder.keyAccessor;
+        this.keySerializer = builder.keySerializer;
+        this.cached = builder.cached;
+        this.queriesCached = builder.queriesCached;
+        this.dependentKeyAccessor = builder.dependentKeyAccessor;
+        this.inverseColumnNameAccessor = builder.inverseColumnNameAccessor;
+        this.inverseColumnNameSerializer = builder.inverseColumnNameSerializer;
+
+        AnnotatedField[] fieldArray = buildFields(builder);
+        Map<String, AnnotatedField> fields = new LinkedHashMap<String, AnnotatedField>();
+        List<String> columnNames = new ArrayList<String>();
+        List<String> superColumnNames = new ArrayList<String>();
+        Map<String, AnnotatedField> columnFields = new LinkedHashMap<String, AnnotatedField>();
+        Map<String, AnnotatedField> superColumnFields = new LinkedHashMap<String, AnnotatedField>();
+        List<AnnotatedField> topLevelFields = new ArrayList<AnnotatedField>();
+        List<AnnotatedField> dynamicFields = new ArrayList<AnnotatedField>();
+        List<AnnotatedField> writeColumns = new ArrayList<AnnotatedField>();
+        List<AnnotatedField> writeSuperColumns = new ArrayList<AnnotatedField>();
+        boolean hasSuperColumn = false;
+        boolean secondaryIndex = false;
+        for (AnnotatedField field : fieldArray) {
+            fields.put(field.getField().getName(), field);
+            if (field.isSuperColumn() || !field.hasSuperColumnParent()) {
+                topLevelFields.add(field);
+                if (field.getNameAccessor() != null) {
+                    dynamicFields.add(field);
+                }
+            }
+            if (field.isSuperColumn()) {
+                hasSuperColumn = true;
+                writeSuperColumns.add(field);
+            } else if (!field.hasSuperColumnParent()) {
+                writeColumns.add(field);
+            }
+            if (field.getSuperColumnName() != null) {
+                superColumnNames.add(field.getSuperColumnName());
+                superColumnFields.put(field.getSuperColumnName(), field);
+            } else if (field.getColumnName() != null && !field.hasSuperColumnParent()) {
+                columnNames.add(field.getColumnName());
+                columnFields.put(field.getColumnName(), field);
+            }
+            if (field.isSecondaryIndex()) {
+                secondaryIndex = true;
+            }
+        }
+        this.fields = Collections.unmodifiableMap(fields);
+        this.fieldList = Collections.unmodifiableList(Arrays.asList(fieldArray));
+        this.hasSuperColumn = hasSuperColumn;
+        this.secondaryIndex = secondaryIndex;
+        this.columnNames = Collections.unmodifiableList(columnNames);
+        this.superColumnNames = Collections.unmodifiableList(superColumnNames);
+        this.columnNameBytes = toBytes(columnNames);
+        this.superColumnNameBytes = toBytes(superColumnNames);
+        this.columnFields = Collections.unmodifiableMap(columnFields);
+        this.superColumnFields = Collections.unmodifiableMap(superColumnFields);
+        this.columnFieldIndex = new NameIndex(columnFields);
+        this.superColumnFieldIndex = new NameIndex(superColumnFields);
+        this.writeColumns = Collections.unmodifiableList(writeColumns);
+        this.writeSuperColumns = Collections.unmodifiableList(writeSuperColumns);
+
+        // wide rows hold one (super) column per entity, named after a property
+        // of the single dynamically named field (or the only field, for inverse classes)
+        if (dynamicFields.size() == 1) {
+            this.sliceField = dynamicFields.get(0);
+        } else if (dynamicFields.isEmpty() && topLevelFields.size() == 1) {
+            this.sliceField = topLevelFields.get(0);
+        } else {
+            this.sliceField = null;
+        }
+    }
+
+    /**
+     * Builds the fields in column order. The columns of super columns are
+     * built first, so that each super column is built along with them.
+     */
+    private static AnnotatedField[] buildFields(Builder builder) {
+        List<AnnotatedField.Builder> sorted = new ArrayList<AnnotatedField.Builder>(builder.fields.values());
+        Collections.sort(sorted, COLUMN_ORDER);
+        AnnotatedField[] fieldArray = new AnnotatedField[sorted.size()];
+        Map<String, Map<String, AnnotatedField>> children = new HashMap<String, Map<String, AnnotatedField>>();
+        Map<String, AnnotatedField> noChildren = Collections.emptyMap();
+        for (int i = 0; i < fieldArray.length; i++) {
+            AnnotatedField.Builder field = sorted.get(i);
+            if (!field.isChild()) {
+                continue;
+            }
+            String parentName = field.getSuperColumnParentName();
+            AnnotatedField.Builder parent = builder.fields.get(parentName);
+            if (parent == null || !parent.isSuperColumn()) {
+                throw new IllegalStateException("The target super column field must be a mapped super column. Class/Field: " + builder.clazz.getName() + "/" + field.getField().getName());
+            }
+            fieldArray[i] = new AnnotatedField(field, i, noChildren);
+            Map<String, AnnotatedField> siblings = children.get(parentName);
+            if (siblings == null) {
+                siblings = new LinkedHashMap<String, AnnotatedField>();
+                children.put(parentName, siblings);
+            }
+            siblings.put(fieldArray[i].getColumnName(), fieldArray[i]);
+        }
+        for (int i = 0; i < fieldArray.length; i++) {
+            if (fieldArray[i] == null) {
+                AnnotatedField.Builder field = sorted.get(i);
+                Map<String, AnnotatedField> childFields = children.get(field.getField().getName());
+                fieldArray[i] = new AnnotatedField(field, i, childFields != null ? childFields : noChildren);
+            }
+        }
+        return fieldArray;
+    }
 
     public Class<?> getClazz() {
         return clazz;
     }
-    public void setClazz(Class<?> clazz) {
-        this.clazz = clazz;
-    }
     public String getColumnFamilyName() {
         return columnFamilyName;
     }
-    public void setColumnFamilyName(String columnFamilyName) {
-        this.columnFamilyName = columnFamilyName;
-    }
-    public Map<String, AnnotatedField> getFields() {
-        return fields;
+    /**
+     * @return the mapped fields (other than the key), ordered by (super)
+     * column name. The list is unmodifiable.
+     */
+    public List<AnnotatedField> getFields() {
+        return fieldList;
     }
-    public void setFields(Map<String, AnnotatedField> fields) {
-        this.fields = fields;
+    /**
+     * @return the mapped field with the given property name, or null if
+     * there is none
+     */
+    public AnnotatedField getField(String propertyName) {
+        return fields.get(propertyName);
     }
     public String getKeyFieldName() {
         return keyFieldName;
     }
-    public void setKeyFieldName(String keyFieldName) {
-        this.keyFieldName = keyFieldName;
-    }
     public boolean hasDependentKey() {
         return dependentKey;
     }
-    public void setDependentKey(boolean dependentKey) {
-        this.dependentKey = dependentKey;
+    /**
+     * @return whether a key is generated for entities persisted without one
+     */
+    public boolean isKeyGenerated() {
+        return keyGenerated;
+    }
+    public boolean hasEagerDependentKey() {
+        return eagerDependentKey;
     }
     public String getDependentKeyFieldName() {
         return dependentKeyFieldName;
     }
-    public void setDependentKeyFieldName(String dependentKeyFieldName) {
-        this.dependentKeyFieldName = dependentKeyFieldName;
-    }
     public boolean hasInverse() {
         return inverse;
     }
-    public void setInverse(boolean inverse) {
-        this.inverse = inverse;
-    }
     public String getInverseColumnNameField() {
         return inverseColumnNameField;
     }
-    public void setInverseColumnNameField(String inverseColumnNameField) {
-        this.inverseColumnNameField = inverseColumnNameField;
-    }
     public boolean hasSuperColumn() {
         return hasSuperColumn;
     }
-    public void setHasSuperColumn(boolean hasSuperColumn) {
-        this.hasSuperColumn = hasSuperColumn;
+    /**
+     * @return whether any field of the class has a secondary index
+     */
+    public boolean hasSecondaryIndex() {
+        return secondaryIndex;
     }
     public String getInverseColumnFamilySuffix() {
         return inverseColumnFamilySuffix;
     }
-    public void setInverseColumnFamilySuffix(String inverseColumnFamilySuffix) {
-        this.inverseColumnFamilySuffix = inverseColumnFamilySuffix;
+    /**
+     * @return the names of the top-level columns with static names. The
+     * list is unmodifiable.
+     */
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+    /**
+     * @return the names of the super columns with static names. The list is
+     * unmodifiable.
+     */
+    public List<String> getSuperColumnNames() {
+        return superColumnNames;
+    }
+    /**
+     * @return the serialized {@link #getColumnNames() column names}, to be
+     * requested as they are. The list is unmodifiable; the arrays must not
+     * be modified.
+     */
+    public List<byte[]> getColumnNameBytes() {
+        return columnNameBytes;
+    }
+    /**
+     * @return the serialized {@link #getSuperColumnNames() super column
+     * names}, to be requested as they are. The list is unmodifiable; the
+     * arrays must not be modified.
+     */
+    public List<byte[]> getSuperColumnNameBytes() {
+        return superColumnNameBytes;
+    }
+    public PropertyAccessor getKeyAccessor() {
+        return keyAccessor;
+    }
+    public PropertyAccessor getDependentKeyAccessor() {
+        return dependentKeyAccessor;
+    }
+    public PropertyAccessor getInverseColumnNameAccessor() {
+        return inverseColumnNameAccessor;
+    }
+    public Serializer<Object> getKeySerializer() {
+        return keySerializer;
+    }
+    public boolean isCached() {
+        return cached;
+    }
+    public boolean isQueriesCached() {
+        return queriesCached;
+    }
+    /**
+     * @return the fields stored as top-level columns with static names, by
+     * column name. The map is unmodifiable.
+     */
+    public Map<String, AnnotatedField> getColumnFields() {
+        return columnFields;
+    }
+    /**
+     * @return the fields stored as super columns with static names, by super
+     * column name. The map is unmodifiable.
+     */
+    public Map<String, AnnotatedField> getSuperColumnFields() {
+        return superColumnFields;
+    }
+    /**
+     * @return the field stored as the top-level column with the given
+     * serialized name, or null if there is none
+     */
+    public AnnotatedField getColumnField(byte[] name) {
+        return columnFieldIndex.get(name);
+    }
+    /**
+     * @return the field stored as the super column with the given serialized
+     * name, or null if there is none
+     */
+    public AnnotatedField getSuperColumnField(byte[] name) {
+        return superColumnFieldIndex.get(name);
+    }
+    public Serializer<Object> getInverseColumnNameSerializer() {
+        return inverseColumnNameSerializer;
+    }
+    /**
+     * @return the field that each (super) column of a wide row is read into
+     * when slicing, or null if rows of this class can't be sliced
+     */
+    public AnnotatedField getSliceField() {
+        return sliceField;
+    }
+    /**
+     * @return the fields written as top-level columns. The list is
+     * unmodifiable.
+     */
+    public List<AnnotatedField> getWriteColumns() {
+        return writeColumns;
+    }
+    /**
+     * @return the fields written as super columns. The columns of each are
+     * its {@link AnnotatedField#getChildFields() child fields}. The list is
+     * unmodifiable.
+     */
+    public List<AnnotatedField> getWriteSuperColumns() {
+        return writeSuperColumns;
+    }
+
+    private static List<byte[]> toBytes(List<String> names) {
+        List<byte[]> bytes = new ArrayList<byte[]>(names.size());
+        for (String name : names) {
+            bytes.add(StringSerializer.get().toBytes(name));
+        }
+        return Collections.unmodifiableList(bytes);
+    }
+
+    private static String getSortName(AnnotatedField.Builder field) {
+        String name = field.getStaticName();
+        return name != null ? name : field.getField().getName();
+    }
+
+    /**
+     * Collects the mapping of an entity class while the entity manager is
+     * created. The key of a class with a dependent key is resolved from the
+     * builder of the class it depends on, before either is built.
+     */
+    public static class Builder {
+
+        private final Class<?> clazz;
+        private String columnFamilyName;
+        private final Map<String, AnnotatedField.Builder> fields = new HashMap<String, AnnotatedField.Builder>();
+        private String keyFieldName;
+        private boolean dependentKey;
+        private boolean keyGenerated;
+        private boolean eagerDependentKey;
+        private String dependentKeyFieldName;
+        private boolean inverse;
+        private String inverseColumnNameField;
+        private String inverseColumnFamilySuffix;
+        private PropertyAccessor keyAccessor;
+        private Serializer<Object> keySerializer;
+        private boolean cached;
+        private boolean queriesCached;
+        private PropertyAccessor dependentKeyAccessor;
+        private PropertyAccessor inverseColumnNameAccessor;
+        private Serializer<Object> inverseColumnNameSerializer;
+
+        public Builder(Class<?> clazz) {
+            this.clazz = clazz;
+        }
+
+        public Class<?> getClazz() {
+            return clazz;
+        }
+        public void setColumnFamilyName(String columnFamilyName) {
+            this.columnFamilyName = columnFamilyName;
+        }
+        /**
+         * Adds a mapped field (other than the key)
+         */
+        public void addField(AnnotatedField.Builder field) {
+            fields.put(field.getField().getName(), field);
+        }
+        public String getKeyFieldName() {
+            return keyFieldName;
+        }
+        public void setKeyFieldName(String keyFieldName) {
+            this.keyFieldName = keyFieldName;
+        }
+        public boolean hasDependentKey() {
+            return dependentKey;
+        }
+        public void setDependentKey(boolean dependentKey) {
+            this.dependentKey = dependentKey;
+        }
+        public void setKeyGenerated(boolean keyGenerated) {
+            this.keyGenerated = keyGenerated;
+        }
+        public void setEagerDependentKey(boolean eagerDependentKey) {
+            this.eagerDependentKey = eagerDependentKey;
+        }
+        public void setDependentKeyFieldName(String dependentKeyFieldName) {
+            this.dependentKeyFieldName = dependentKeyFieldName;
+        }
+        public void setInverse(boolean inverse) {
+            this.inverse = inverse;
+        }
+        public void setInverseColumnNameField(String inverseColumnNameField) {
+            this.inverseColumnNameField = inverseColumnNameField;
+        }
+        public void setInverseColumnFamilySuffix(String inverseColumnFamilySuffix) {
+            this.inverseColumnFamilySuffix = inverseColumnFamilySuffix;
+        }
+        public PropertyAccessor getKeyAccessor() {
+            return keyAccessor;
+        }
+        public void setKeyAccessor(PropertyAccessor keyAccessor) {
+            this.keyAccessor = keyAccessor;
+        }
+        public Serializer<Object> getKeySerializer() {
+            return keySerializer;
+        }
+        public void setKeySerializer(Serializer<Object> keySerializer) {
+            this.keySerializer = keySerializer;
+        }
+        public void setCached(boolean cached) {
+            this.cached = cached;
+        }
+        public void setQueriesCached(boolean queriesCached) {
+            this.queriesCached = queriesCached;
+        }
+        public void setDependentKeyAccessor(PropertyAccessor dependentKeyAccessor) {
+            this.dependentKeyAccessor = dependentKeyAccessor;
+        }
+        public void setInverseColumnNameAccessor(PropertyAccessor inverseColumnNameAccessor) {
+            this.inverseColumnNameAccessor = inverseColumnNameAccessor;
+        }
+        public void setInverseColumnNameSerializer(Serializer<Object> inverseColumnNameSerializer) {
+            this.inverseColumnNameSerializer = inverseColumnNameSerializer;
+        }
+
+        /**
+         * Builds the mapping, along with the lookup structures used when
+         * reading and writing rows
+         */
+        public AnnotatedClass build() {
+            return new AnnotatedClass(this);
+        }
     }
 }
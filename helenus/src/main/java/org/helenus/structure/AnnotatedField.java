@@ -1,62 +1,132 @@
 package org.helenus.structure;
 
 import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+import me.prettyprint.cassandra.model.Serializer;
+import me.prettyprint.cassandra.serializers.StringSerializer;
+
+/**
+ * The mapping of a field of an entity class. Instances are created through
+ * {@link Builder} by the {@link AnnotatedClass} that owns them and are never
+ * modified afterwards.
+ */
 public class AnnotatedField {
 
-    private Field field;
-    private String columnName;
-    private String superColumnName;
-    private String superColumnParentName;
-    private String secondaryIndexName;
+    private final Field field;
+    private final String columnName;
+    private final String superColumnName;
+    private final String superColumnParentName;
+    private final String secondaryIndexName;
+    private final int indexSelectivity;
+
+    private final String columnNameField;
+    private final String superColumnNameField;
 
-    private String columnNameField;
-    private String superColumnNameField;
+    private final PropertyAccessor accessor;
+    private final PropertyAccessor nameAccessor;
+    private final Serializer<Object> serializer;
+    private final Map<String, AnnotatedField> childFields;
+    private final byte[] nameBytes;
+    private final int index;
+    private final PrimitiveCodec primitiveCodec;
+    private final NameIndex childFieldIndex;
 
+    AnnotatedField(Builder builder, int index, Map<String, AnnotatedField> childFields) {
+        this.field = builder.field;
+        this.columnName = builder.columnName;
+        this.superColumnName = builder.superColumnName;
+        this.superColumnParentName = builder.superColumnParentName;
+        this.secondaryIndexName = builder.secondaryIndexName;
+        this.indexSelectivity = builder.indexSelectivity;
+        this.columnNameField = builder.columnNameField;
+        this.superColumnNameField = builder.superColumnNameField;
+        this.accessor = builder.accessor;
+        this.nameAccessor = builder.nameAccessor;
+        this.serializer = builder.serializer;
+        this.primitiveCodec = builder.primitiveCodec;
+        this.index = index;
+        this.childFields = Collections.unmodifiableMap(new LinkedHashMap<String, AnnotatedField>(childFields));
+        this.childFieldIndex = new NameIndex(this.childFields);
+        String staticName = builder.getStaticName();
+        this.nameBytes = staticName != null ? StringSerializer.get().toBytes(staticName) : null;
+    }
 
     public Field getField() {
         return field;
     }
-    public void setField(Field field) {
-        this.field = field;
-    }
     public String getColumnName() {
         return columnName;
     }
-    public void setColumnName(String columnName) {
-        this.columnName = columnName;
-    }
     public String getSecondaryIndexName() {
         return secondaryIndexName;
     }
-    public void setSecondaryIndexName(String secondaryIndexSuffix) {
-        this.secondaryIndexName = secondaryIndexSuffix;
+    public int getIndexSelectivity() {
+        return indexSelectivity;
     }
     public String getSuperColumnName() {
         return superColumnName;
     }
-    public void setSuperColumnName(String superColumnName) {
-        this.superColumnName = superColumnName;
-    }
     public String getSuperColumnParentName() {
         return superColumnParentName;
     }
-    public void setSuperColumnParentName(String superColumnParentName) {
-        this.superColumnParentName = superColumnParentName;
-    }
 
     public String getColumnNameField() {
         return columnNameField;
     }
-    public void setColumnNameField(String columnNameField) {
-        this.columnNameField = columnNameField;
-    }
     public String getSuperColumnNameField() {
         return superColumnNameField;
     }
-    public void setSuperColumnNameField(String superColumnNameField) {
-        this.superColumnNameField = superColumnNameField;
+    public PropertyAccessor getAccessor() {
+        return accessor;
+    }
+    /**
+     * @return the accessor of the property of this field's value that holds
+     * the dynamic (super) column name, or null if the name is static
+     */
+    public PropertyAccessor getNameAccessor() {
+        return nameAccessor;
+    }
+    public Serializer<Object> getSerializer() {
+        return serializer;
+    }
+    /**
+     * @return the fields stored as columns of this super column, by column
+     * name. The map is unmodifiable.
+     */
+    public Map<String, AnnotatedField> getChildFields() {
+        return childFields;
+    }
+    /**
+     * @return the field stored as the column with the given serialized name
+     * in this super column, or null if there is none
+     */
+    public AnnotatedField getChildField(byte[] name) {
+        return childFieldIndex.get(name);
+    }
+    /**
+     * @return the serialized (super) column name, or null if the name is
+     * taken from the field's value. The array must not be modified.
+     */
+    public byte[] getNameBytes() {
+        return nameBytes;
+    }
+    /**
+     * @return the position of this field among the fields of its class
+     */
+    public int getIndex() {
+        return index;
+    }
+    /**
+     * @return the codec that reads and writes the value of this primitive
+     * field without boxing, or null if the value goes through the serializer
+     */
+    public PrimitiveCodec getPrimitiveCodec() {
+        return primitiveCodec;
     }
+
     public boolean isSuperColumn() {
         return superColumnName != null || superColumnNameField != null;
     }
@@ -68,4 +138,88 @@ public class AnnotatedField {
     public boolean hasSuperColumnParent() {
         return superColumnParentName != null;
     }
+
+    /**
+     * Collects the mapping of a field while its class is being mapped. The
+     * position and the child fields are filled in when the owning
+     * {@link AnnotatedClass.Builder} is built.
+     */
+    public static class Builder {
+
+        private final Field field;
+        private String columnName;
+        private String superColumnName;
+        private String superColumnParentName;
+        private String secondaryIndexName;
+        private int indexSelectivity;
+        private String columnNameField;
+        private String superColumnNameField;
+        private PropertyAccessor accessor;
+        private PropertyAccessor nameAccessor;
+        private Serializer<Object> serializer;
+        private PrimitiveCodec primitiveCodec;
+
+        public Builder(Field field) {
+            this.field = field;
+        }
+
+        public Field getField() {
+            return field;
+        }
+        public void setColumnName(String columnName) {
+            this.columnName = columnName;
+        }
+        public void setSuperColumnName(String superColumnName) {
+            this.superColumnName = superColumnName;
+        }
+        public void setSuperColumnParentName(String superColumnParentName) {
+            this.superColumnParentName = superColumnParentName;
+        }
+        public void setSecondaryIndexName(String secondaryIndexName) {
+            this.secondaryIndexName = secondaryIndexName;
+        }
+        public void setIndexSelectivity(int indexSelectivity) {
+            this.indexSelectivity = indexSelectivity;
+        }
+        public void setColumnNameField(String columnNameField) {
+            this.columnNameField = columnNameField;
+        }
+        public void setSuperColumnNameField(String superColumnNameField) {
+            this.superColumnNameField = superColumnNameField;
+        }
+        public PropertyAccessor getAccessor() {
+            return accessor;
+        }
+        public void setAccessor(PropertyAccessor accessor) {
+            this.accessor = accessor;
+        }
+        public void setNameAccessor(PropertyAccessor nameAccessor) {
+            this.nameAccessor = nameAccessor;
+        }
+        public Serializer<Object> getSerializer() {
+            return serializer;
+        }
+        public void setSerializer(Serializer<Object> serializer) {
+            this.serializer = serializer;
+        }
+        public void setPrimitiveCodec(PrimitiveCodec primitiveCodec) {
+            this.primitiveCodec = primitiveCodec;
+        }
+
+        boolean isSuperColumn() {
+            return superColumnName != null || superColumnNameField != null;
+        }
+
+        boolean isChild() {
+            return superColumnParentName != null && columnName != null;
+        }
+
+        String getSuperColumnParentName() {
+            return superColumnParentName;
+        }
+
+        String getStaticName() {
+            return isSuperColumn() ? superColumnName : columnName;
+        }
+    }
 }
@@ -0,0 +1,64 @@
+package org.helenus.structure;
+
+import java.lang.reflect.Field;
+
+/**
+ * A {@link PropertyAccessor} that reads and writes the underlying field
+ * directly. The field is made accessible once, so each access is a plain
+ * field read/write, without bean introspection, type conversion or
+ * wrapping of exceptions thrown by accessor methods.
+ */
+public class FieldPropertyAccessor implements PropertyAccessor {
+
+    private final Field field;
+    private final boolean primitive;
+
+    public FieldPropertyAccessor(Field field) {
+        this.field = field;
+        this.primitive = field.getType().isPrimitive();
+        field.setAccessible(true);
+    }
+
+    /**
+     * Creates an accessor for the property with the given name, looking it
+     * up in the class and its superclasses
+     */
+    public static FieldPropertyAccessor forProperty(Class<?> clazz, String propertyName) {
+        Class<?> current = clazz;
+        while (current != null && current != Object.class) {
+            try {
+                return new FieldPropertyAccessor(current.getDeclaredField(propertyName));
+            } catch (NoSuchFieldException ex) {
+                current = current.getSuperclass();
+            }
+        }
+        throw new IllegalStateException("No property " + propertyName + " found in class " + clazz.getName());
+    }
+
+    @Override
+    public Object get(Object target) {
+        try {
+            return field.get(target);
+        } catch (IllegalAccessException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Override
+    public void set(Object target, Object value) {
+        // primitives keep their default value when there is nothing to set
+        if (value == null && primitive) {
+            return;
+        }
+        try {
+            field.set(target, value);
+        } catch (IllegalAccessException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Override
+    public Class<?> getType() {
+        return field.getType();
+    }
+}
@@ -0,0 +1,49 @@
+package org.helenus.structure;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import me.prettyprint.cassandra.serializers.StringSerializer;
+
+/**
+ * Finds fields by their serialized (super) column name, so that columns read
+ * from a row can be mapped to fields without decoding each name into a
+ * string. The table is built once, with open addressing over a power of two
+ * sized array, and is never modified afterwards.
+ */
+public final class NameIndex {
+
+    private final byte[][] names;
+    private final AnnotatedField[] fields;
+    private final int mask;
+
+    public NameIndex(Map<String, AnnotatedField> fieldsByName) {
+        int capacity = Integer.highestOneBit(Math.max(fieldsByName.size(), 1) * 4);
+        names = new byte[capacity][];
+        fields = new AnnotatedField[capacity];
+        mask = capacity - 1;
+        for (Map.Entry<String, AnnotatedField> entry : fieldsByName.entrySet()) {
+            byte[] name = StringSerializer.get().toBytes(entry.getKey());
+            int i = Arrays.hashCode(name) & mask;
+            while (names[i] != null) {
+                i = (i + 1) & mask;
+            }
+            names[i] = name;
+            fields[i] = entry.getValue();
+        }
+    }
+
+    /**
+     * @return the field with the given name, or null if there is none
+     */
+    public AnnotatedField get(byte[] name) {
+        int i = Arrays.hashCode(name) & mask;
+        while (names[i] != null) {
+            if (Arrays.equals(names[i], name)) {
+                return fields[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,178 @@
+package org.helenus.structure;
+
+import java.lang.reflect.Field;
+
+import me.prettyprint.cassandra.model.Serializer;
+import me.prettyprint.cassandra.serializers.BooleanSerializer;
+import me.prettyprint.cassandra.serializers.IntegerSerializer;
+import me.prettyprint.cassandra.serializers.LongSerializer;
+
+import org.helenus.serializers.ByteSerializer;
+import org.helenus.serializers.CharacterSerializer;
+import org.helenus.serializers.DoubleSerializer;
+import org.helenus.serializers.FloatSerializer;
+import org.helenus.serializers.ShortSerializer;
+
+/**
+ * Reads and writes primitive fields directly from and to their serialized
+ * form, in the same format as their default serializers, without boxing the
+ * values. Values that are too short to hold the primitive leave the field
+ * unchanged, as with nulls.
+ */
+public enum PrimitiveCodec {
+
+    LONG(long.class, LongSerializer.get(), 8) {
+        @Override
+        byte[] encode(Field field, Object target) throws IllegalAccessException {
+            return encodeLong(field.getLong(target), 8);
+        }
+        @Override
+        void decode(Field field, Object target, byte[] bytes) throws IllegalAccessException {
+            field.setLong(target, decodeLong(bytes, 8));
+        }
+    },
+    INT(int.class, IntegerSerializer.get(), 4) {
+        @Override
+        byte[] encode(Field field, Object target) throws IllegalAccessException {
+            return encodeLong(field.getInt(target), 4);
+        }
+        @Override
+        void decode(Field field, Object target, byte[] bytes) throws IllegalAccessException {
+            field.setInt(target, (int) decodeLong(bytes, 4));
+        }
+    },
+    SHORT(short.class, ShortSerializer.get(), 2) {
+        @Override
+        byte[] encode(Field field, Object target) throws IllegalAccessException {
+            return encodeLong(field.getShort(target), 2);
+        }
+        @Override
+        void decode(Field field, Object target, byte[] bytes) throws IllegalAccessException {
+            field.setShort(target, (short) decodeLong(bytes, 2));
+        }
+    },
+    CHAR(char.class, CharacterSerializer.get(), 2) {
+        @Override
+        byte[] encode(Field field, Object target) throws IllegalAccessException {
+            return encodeLong(field.getChar(target), 2);
+        }
+        @Override
+        void decode(Field field, Object target, byte[] bytes) throws IllegalAccessException {
+            field.setChar(target, (char) decodeLong(bytes, 2));
+        }
+    },
+    BYTE(byte.class, ByteSerializer.get(), 1) {
+        @Override
+        byte[] encode(Field field, Object target) throws IllegalAccessException {
+            return new byte[] {field.getByte(target)};
+        }
+        @Override
+        void decode(Field field, Object target, byte[] bytes) throws IllegalAccessException {
+            field.setByte(target, bytes[0]);
+        }
+    },
+    BOOLEAN(boolean.class, BooleanSerializer.get(), 1) {
+        @Override
+        byte[] encode(Field field, Object target) throws IllegalAccessException {
+            return new byte[] {field.getBoolean(target) ? (byte) 1 : (byte) 0};
+        }
+        @Override
+        void decode(Field field, Object target, byte[] bytes) throws IllegalAccessException {
+            field.setBoolean(target, bytes[0] == 1);
+        }
+    },
+    DOUBLE(double.class, DoubleSerializer.get(), 8) {
+        @Override
+        byte[] encode(Field field, Object target) throws IllegalAccessException {
+            return encodeLong(Double.doubleToRawLongBits(field.getDouble(target)), 8);
+        }
+        @Override
+        void decode(Field field, Object target, byte[] bytes) throws IllegalAccessException {
+            field.setDouble(target, Double.longBitsToDouble(decodeLong(bytes, 8)));
+        }
+    },
+    FLOAT(float.class, FloatSerializer.get(), 4) {
+        @Override
+        byte[] encode(Field field, Object target) throws IllegalAccessException {
+            return encodeLong(Float.floatToRawIntBits(field.getFloat(target)), 4);
+        }
+        @Override
+        void decode(Field field, Object target, byte[] bytes) throws IllegalAccessException {
+            field.setFloat(target, Float.intBitsToFloat((int) decodeLong(bytes, 4)));
+        }
+    };
+
+    private final Class<?> type;
+    private final Serializer<?> serializer;
+    private final int length;
+
+    private PrimitiveCodec(Class<?> type, Serializer<?> serializer, int length) {
+        this.type = type;
+        this.serializer = serializer;
+        this.length = length;
+    }
+
+    /**
+     * @return the codec for a field of the given type that uses the given
+     * serializer, or null if the field is not primitive or uses a custom
+     * serializer
+     */
+    public static PrimitiveCodec forField(Class<?> type, Serializer<?> serializer) {
+        for (PrimitiveCodec codec : values()) {
+            if (codec.type == type && codec.serializer == serializer) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the serialized value of the field, which must be accessible
+     */
+    public byte[] get(Field field, Object target) {
+        try {
+            return encode(field, target);
+        } catch (IllegalAccessException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Sets the field (which must be accessible) to the given serialized
+     * value, unless it is too short to hold the primitive
+     */
+    public void set(Field field, Object target, byte[] bytes) {
+        if (bytes.length < length) {
+            return;
+        }
+        try {
+            decode(field, target, bytes);
+        } catch (IllegalAccessException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    abstract byte[] encode(Field field, Object target) throws IllegalAccessException;
+
+    /**
+     * @param bytes the serialized value, at least as long as the primitive
+     */
+    abstract void decode(Field field, Object target, byte[] bytes) throws IllegalAccessException;
+
+    private static byte[] encodeLong(long value, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (value >>> ((length - i - 1) << 3));
+        }
+        return bytes;
+    }
+
+    // big-endian, in the layout of the default serializers
+    private static long decodeLong(byte[] bytes, int length) {
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            value |= (bytes[i] & 0xFFL) << ((length - i - 1) << 3);
+        }
+        return value;
+    }
+}
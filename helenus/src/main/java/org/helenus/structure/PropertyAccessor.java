@@ -0,0 +1,15 @@
+package org.helenus.structure;
+
+/**
+ * Reads and writes a single property of a mapped entity. Accessors are
+ * resolved once, when the entity metadata is built, so that the mapping
+ * hot path does not need any introspection.
+ */
+public interface PropertyAccessor {
+
+    Object get(Object target);
+
+    void set(Object target, Object value);
+
+    Class<?> getType();
+}
@@ -0,0 +1,124 @@
+package org.helenus.validation;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import javax.validation.ValidatorFactory;
+
+import org.helenus.structure.AnnotatedClass;
+
+/**
+ * The validation stage of the write path. The validator factory is built
+ * only once and classes without any constraints are not validated at all.
+ */
+public class EntityValidator {
+
+    private volatile Validator validator;
+
+    private ValidationMode mode = ValidationMode.ALWAYS;
+
+    private int sampleInterval = 100;
+
+    private final AtomicLong counter = new AtomicLong();
+
+    // whether each class defines any constraints, looked up once per class
+    private final ConcurrentMap<Class<?>, Boolean> constrained = new ConcurrentHashMap<Class<?>, Boolean>();
+
+    public void init() {
+        getValidator();
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Validator getValidator() {
+        if (validator == null) {
+            synchronized (this) {
+                if (validator == null) {
+                    ValidatorFactory factory;
+                    try {
+                        Class clazz = Class.forName("org.hibernate.validator.HibernateValidator");
+                        factory = Validation.byProvider(clazz).configure().buildValidatorFactory();
+                    } catch (ClassNotFoundException ex) {
+                        factory = Validation.buildDefaultValidatorFactory();
+                    }
+                    validator = factory.getValidator();
+                }
+            }
+        }
+        return validator;
+    }
+
+    /**
+     * @return whether the given class defines any constraints
+     */
+    public boolean isConstrained(Class<?> clazz) {
+        Boolean result = constrained.get(clazz);
+        if (result == null) {
+            result = getValidator().getConstraintsForClass(clazz).isBeanConstrained();
+            constrained.put(clazz, result);
+        }
+        return result;
+    }
+
+    public void validate(Object entity, AnnotatedClass meta) {
+        Set<ConstraintViolation<?>> violations = getViolations(entity, meta);
+        if (violations != null && !violations.isEmpty()) {
+            throw new ConstraintViolationException(violations);
+        }
+    }
+
+    /**
+     * Validates all given entities, reporting the violations of all of them
+     * in a single exception. The metadata list holds the metadata of each
+     * entity, at the same position.
+     */
+    public void validateAll(List<?> entities, List<AnnotatedClass> metas) {
+        Set<ConstraintViolation<?>> violations = new HashSet<ConstraintViolation<?>>();
+        for (int i = 0; i < entities.size(); i++) {
+            Set<ConstraintViolation<?>> entityViolations = getViolations(entities.get(i), metas.get(i));
+            if (entityViolations != null) {
+                violations.addAll(entityViolations);
+            }
+        }
+        if (!violations.isEmpty()) {
+            throw new ConstraintViolationException(violations);
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Set<ConstraintViolation<?>> getViolations(Object entity, AnnotatedClass meta) {
+        if (mode == ValidationMode.NONE || !isConstrained(meta.getClazz())) {
+            return null;
+        }
+        if (mode == ValidationMode.SAMPLED && counter.getAndIncrement() % sampleInterval != 0) {
+            return null;
+        }
+        return (Set) getValidator().validate(entity);
+    }
+
+    public ValidationMode getMode() {
+        return mode;
+    }
+
+    public void setMode(ValidationMode mode) {
+        this.mode = mode;
+    }
+
+    public int getSampleInterval() {
+        return sampleInterval;
+    }
+
+    public void setSampleInterval(int sampleInterval) {
+        if (sampleInterval < 1) {
+            throw new IllegalArgumentException("The sample interval must be positive");
+        }
+        this.sampleInterval = sampleInterval;
+    }
+}
@@ -0,0 +1,20 @@
+package org.helenus.validation;
+
+/**
+ * Defines which entities are validated before being written.
+ */
+public enum ValidationMode {
+    /**
+     * Every entity of a class with constraints is validated
+     */
+    ALWAYS,
+    /**
+     * Only one in every N entities is validated, where N is the configured
+     * sample interval
+     */
+    SAMPLED,
+    /**
+     * No validation is performed
+     */
+    NONE
+}
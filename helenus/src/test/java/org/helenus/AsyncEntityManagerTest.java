@@ -0,0 +1,122 @@
+package org.helenus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.helenus.entities.Person;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class AsyncEntityManagerTest {
+
+    private EntityManager em;
+    private AsyncEntityManager async;
+    private final CountDownLatch interrupted = new CountDownLatch(1);
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    @Before
+    public void setUp() {
+        em = mock(EntityManager.class);
+        when(em.getById(eq(Person.class), eq("fast"))).thenReturn(new Person("fast", null, null, null));
+        when(em.getById(eq(Person.class), eq("slow"))).thenAnswer(new Answer<Person>() {
+            @Override
+            public Person answer(InvocationOnMock invocation) {
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException ex) {
+                    interrupted.countDown();
+                }
+                return null;
+            }
+        });
+        when(em.getById(eq(Person.class), eq("blocking"))).thenAnswer(new Answer<Person>() {
+            @Override
+            public Person answer(InvocationOnMock invocation) throws InterruptedException {
+                released.await();
+                return null;
+            }
+        });
+        // keeps its interrupt status, as well-behaved code does
+        when(em.getById(eq(Person.class), eq("stubborn"))).thenAnswer(new Answer<Person>() {
+            @Override
+            public Person answer(InvocationOnMock invocation) {
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }
+        });
+        async = new AsyncEntityManager(em, 2, 10);
+    }
+
+    @After
+    public void tearDown() {
+        released.countDown();
+        async.shutdown();
+    }
+
+    @Test
+    public void operationWithinTimeoutCompletes() throws Exception {
+        Future<Person> future = async.withTimeout(5, TimeUnit.SECONDS).getById(Person.class, "fast");
+        assertEquals("fast", future.get().getId());
+    }
+
+    @Test
+    public void timedOutOperationIsCancelledWithoutWaiting() throws Exception {
+        Future<Person> future = async.withTimeout(50, TimeUnit.MILLISECONDS).getById(Person.class, "slow");
+        // nobody waits on the future, yet the operation is interrupted
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertTrue(future.isCancelled());
+        try {
+            future.get();
+            fail("The operation should have timed out");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof TimeoutException);
+        }
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            fail("The operation should have timed out");
+        } catch (TimeoutException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void timedOutOperationRunByTheCallerLeavesItUninterrupted() throws Exception {
+        AsyncEntityManager full = new AsyncEntityManager(em, 1, 1);
+        try {
+            // one operation runs and one is queued, so the next runs on this thread
+            full.getById(Person.class, "blocking");
+            full.getById(Person.class, "blocking");
+            Future<Person> future = full.withTimeout(50, TimeUnit.MILLISECONDS).getById(Person.class, "stubborn");
+
+            assertFalse(Thread.interrupted());
+            assertTrue(future.isCancelled());
+            try {
+                future.get();
+                fail("The operation should have timed out");
+            } catch (ExecutionException ex) {
+                assertTrue(ex.getCause() instanceof TimeoutException);
+            }
+        } finally {
+            released.countDown();
+            full.shutdown();
+        }
+    }
+}
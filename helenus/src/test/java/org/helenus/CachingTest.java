@@ -0,0 +1,141 @@
+package org.helenus;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.IndexClause;
+import org.apache.cassandra.thrift.SlicePredicate;
+import org.helenus.cache.EntityCache;
+import org.helenus.cache.QueryCache;
+import org.helenus.entities.Person;
+import org.helenus.storage.InMemoryStorageBackend;
+import org.helenus.validation.ValidationMode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the entity and query caches are read through, and never
+ * return rows or lookups that were replaced by a write
+ */
+public class CachingTest {
+
+    private EntityManagerImpl em;
+    private EntityCache cache;
+    private QueryCache queryCache;
+    private int sliceCalls;
+    private int indexedSliceCalls;
+    private Person concurrentWrite;
+
+    @Before
+    public void setUp() {
+        em = new EntityManagerImpl(new HashSet<Class<?>>(Arrays.<Class<?>>asList(Person.class)));
+        em.setStorageBackend(new InMemoryStorageBackend("test") {
+            @Override
+            public List<Column> getSlice(String columnFamily, byte[] key, SlicePredicate predicate) {
+                sliceCalls++;
+                List<Column> columns = super.getSlice(columnFamily, key, predicate);
+                if (concurrentWrite != null) {
+                    // a write that lands between the read and the caching of its row
+                    Person person = concurrentWrite;
+                    concurrentWrite = null;
+                    em.persist(person);
+                }
+                return columns;
+            }
+            @Override
+            public Map<byte[], List<Column>> getIndexedSlices(String columnFamily,
+                    IndexClause clause, SlicePredicate predicate) {
+                indexedSliceCalls++;
+                return super.getIndexedSlices(columnFamily, clause, predicate);
+            }
+        });
+        em.setValidationMode(ValidationMode.NONE);
+        cache = new EntityCache(100);
+        em.setEntityCache(cache);
+        queryCache = new QueryCache(100, 60000);
+        em.setQueryCache(queryCache);
+        em.init();
+    }
+
+    @After
+    public void tearDown() {
+        em.destroy();
+    }
+
+    @Test
+    public void rowsAreReadThroughTheCache() {
+        em.persist(new Person("p", "Sofia", "name", 1L));
+        assertEquals("name", em.getById(Person.class, "p").getName());
+        assertEquals("name", em.getById(Person.class, "p").getName());
+
+        assertEquals(1, sliceCalls);
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void writesInvalidateCachedRows() {
+        em.persist(new Person("p", "Sofia", "name", 1L));
+        em.getById(Person.class, "p");
+        em.persist(new Person("p", "Sofia", "renamed", 1L));
+
+        assertEquals("renamed", em.getById(Person.class, "p").getName());
+        assertEquals(2, sliceCalls);
+    }
+
+    @Test
+    public void rowReplacedDuringReadIsNotCached() {
+        em.persist(new Person("p", "Sofia", "name", 1L));
+        concurrentWrite = new Person("p", "Sofia", "renamed", 1L);
+
+        // the read itself may see the old row, but must not cache it
+        assertEquals("name", em.getById(Person.class, "p").getName());
+        assertEquals("renamed", em.getById(Person.class, "p").getName());
+    }
+
+    @Test
+    public void writesOnlyInvalidateLookupsOfTheirValues() {
+        em.persist(new Person("p1", "Sofia", "n1", 1L));
+        em.persist(new Person("p2", "Varna", "n2", 2L));
+        assertEquals(Arrays.asList("p1"), ids(em.getByPropertyValue(Person.class, "city", "Sofia")));
+        assertEquals(Arrays.asList("p2"), ids(em.getByPropertyValue(Person.class, "city", "Varna")));
+
+        // changes aren't tracked, so the previous values of the entity are unknown
+        em.persist(new Person("p3", "Sofia", "n3", 3L));
+
+        assertEquals(Arrays.asList("p1", "p3"), ids(em.getByPropertyValue(Person.class, "city", "Sofia")));
+        assertEquals(Arrays.asList("p2"), ids(em.getByPropertyValue(Person.class, "city", "Varna")));
+        assertEquals(3, indexedSliceCalls);
+    }
+
+    @Test
+    public void entitiesThatLeftTheValueAreDroppedFromCachedLookups() {
+        em.persist(new Person("p1", "Sofia", "n1", 1L));
+        em.persist(new Person("p2", "Sofia", "n2", 2L));
+        assertEquals(Arrays.asList("p1", "p2"), ids(em.getByPropertyValue(Person.class, "city", "Sofia")));
+
+        em.persist(new Person("p1", "Varna", "n1", 1L));
+
+        Set<String> names = new HashSet<String>(Arrays.asList("name"));
+        assertEquals(Arrays.asList("p2"), ids(em.getByPropertyValue(Person.class, "city", "Sofia", names)));
+        assertEquals(Arrays.asList("p2"), ids(em.getByPropertyValue(Person.class, "city", "Sofia")));
+        assertEquals(Arrays.asList("p1"), ids(em.getByPropertyValue(Person.class, "city", "Varna")));
+    }
+
+    private static List<String> ids(List<Person> people) {
+        List<String> ids = new ArrayList<String>();
+        for (Person person : people) {
+            ids.add(person.getId());
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+}
@@ -0,0 +1,143 @@
+package org.helenus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import me.prettyprint.cassandra.serializers.StringSerializer;
+
+import org.apache.cassandra.thrift.Mutation;
+import org.helenus.entities.Like;
+import org.helenus.entities.Person;
+import org.helenus.storage.InMemoryStorageBackend;
+import org.helenus.validation.ValidationMode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that, with change tracking, updates write only the columns that
+ * changed and delete the ones that were set to null
+ */
+public class ChangeTrackingTest {
+
+    private EntityManagerImpl em;
+    // the columns written and deleted, as "column family/row key/column name"
+    private final List<String> written = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> deleted = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void setUp() {
+        em = new EntityManagerImpl(new HashSet<Class<?>>(
+                Arrays.<Class<?>>asList(Person.class, Like.class)));
+        em.setStorageBackend(new InMemoryStorageBackend("test") {
+            @Override
+            public void batchMutate(Map<byte[], Map<String, List<Mutation>>> mutations) {
+                for (Map.Entry<byte[], Map<String, List<Mutation>>> row : mutations.entrySet()) {
+                    for (Map.Entry<String, List<Mutation>> cf : row.getValue().entrySet()) {
+                        String prefix = cf.getKey() + "/" + string(row.getKey()) + "/";
+                        for (Mutation mutation : cf.getValue()) {
+                            if (mutation.isSetDeletion()) {
+                                for (byte[] name : mutation.getDeletion().getPredicate().getColumn_names()) {
+                                    deleted.add(prefix + string(name));
+                                }
+                            } else {
+                                written.add(prefix + string(mutation.getColumn_or_supercolumn().getColumn().getName()));
+                            }
+                        }
+                    }
+                }
+                super.batchMutate(mutations);
+            }
+        });
+        em.setValidationMode(ValidationMode.NONE);
+        em.setTrackChanges(true);
+        em.init();
+    }
+
+    @After
+    public void tearDown() {
+        em.destroy();
+    }
+
+    @Test
+    public void updateWritesOnlyTheChangedColumns() {
+        Person person = em.persist(new Person("p", "Sofia", "name", 1L));
+        assertEquals(Arrays.asList("people/p/balance", "people/p/city", "people/p/name"), sorted(written));
+        written.clear();
+
+        person.setBalance(2L);
+        em.update(person);
+
+        assertEquals(Arrays.asList("people/p/balance"), written);
+        assertTrue(deleted.isEmpty());
+        assertEquals(Long.valueOf(2), em.getById(Person.class, "p").getBalance());
+    }
+
+    @Test
+    public void loadedEntitiesAreTracked() {
+        em.persist(new Person("p", "Sofia", "name", 1L));
+        written.clear();
+
+        Person person = em.getById(Person.class, "p");
+        person.setName("renamed");
+        em.update(person);
+
+        assertEquals(Arrays.asList("people/p/name"), written);
+        assertEquals("renamed", em.getById(Person.class, "p").getName());
+    }
+
+    @Test
+    public void nulledFieldsAreDeleted() {
+        Person person = em.persist(new Person("p", "Sofia", "name", 1L));
+        written.clear();
+
+        person.setName(null);
+        em.update(person);
+
+        assertTrue(written.isEmpty());
+        assertEquals(Arrays.asList("people/p/name"), deleted);
+        Person loaded = em.getById(Person.class, "p");
+        assertNull(loaded.getName());
+        assertEquals("Sofia", loaded.getCity());
+    }
+
+    @Test
+    public void unchangedEntityIsNotWritten() {
+        Like like = em.persist(new Like("user", "java", "t1"));
+        written.clear();
+
+        em.update(like);
+
+        // not even the inverse entry, whose column name is the same
+        assertTrue(written.isEmpty());
+        assertTrue(deleted.isEmpty());
+    }
+
+    @Test
+    public void untrackedEntityIsWrittenWhole() {
+        em.persist(new Person("p", "Sofia", "name", 1L));
+        written.clear();
+
+        em.update(new Person("p", "Sofia", "name", 2L));
+
+        assertEquals(Arrays.asList("people/p/balance", "people/p/city", "people/p/name"), sorted(written));
+    }
+
+    private static List<String> sorted(List<String> list) {
+        List<String> copy = new ArrayList<String>(list);
+        Collections.sort(copy);
+        return copy;
+    }
+
+    private static String string(byte[] bytes) {
+        return StringSerializer.get().fromBytes(bytes);
+    }
+}
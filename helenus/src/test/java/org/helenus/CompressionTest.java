@@ -0,0 +1,113 @@
+package org.helenus;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.SlicePredicate;
+import org.apache.cassandra.thrift.SliceRange;
+import org.helenus.annotation.CassandraColumn;
+import org.helenus.annotation.CassandraColumnFamily;
+import org.helenus.annotation.CassandraKey;
+import org.helenus.entities.Document;
+import org.helenus.entities.UncompressedDocument;
+import org.helenus.storage.InMemoryStorageBackend;
+import org.helenus.validation.ValidationMode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompressionTest {
+
+    private InMemoryStorageBackend backend;
+    private EntityManagerImpl em;
+
+    @Before
+    public void setUp() {
+        backend = new InMemoryStorageBackend("test");
+        em = createEntityManager(Document.class);
+    }
+
+    @After
+    public void tearDown() {
+        em.destroy();
+    }
+
+    private EntityManagerImpl createEntityManager(Class<?> entityClass) {
+        EntityManagerImpl entityManager = new EntityManagerImpl(new HashSet<Class<?>>(Arrays.<Class<?>>asList(entityClass)));
+        entityManager.setStorageBackend(backend);
+        entityManager.setValidationMode(ValidationMode.NONE);
+        entityManager.init();
+        return entityManager;
+    }
+
+    @Test
+    public void largeValuesAreCompressed() throws Exception {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            body.append("lorem ipsum ");
+        }
+        byte[] content = new byte[100];
+        content[0] = (byte) 0xFF;
+        Document document = new Document();
+        document.setId("d");
+        document.setBody(body.toString());
+        document.setContent(content);
+        em.persist(document);
+
+        Column stored = getColumn("d", "body");
+        assertEquals((byte) 0xFF, stored.getValue()[0]);
+        assertTrue(stored.getValue().length < body.length() / 10);
+        Document read = em.getById(Document.class, "d");
+        assertEquals(body.toString(), read.getBody());
+        assertArrayEquals(content, read.getContent());
+    }
+
+    @Test
+    public void valuesWrittenBeforeCompressionAreRead() {
+        EntityManagerImpl uncompressed = createEntityManager(UncompressedDocument.class);
+        // a negative long starts with 0xFF, like a compressed value
+        uncompressed.persist(new UncompressedDocument("d", "plain text", -1L));
+        uncompressed.destroy();
+
+        Document read = em.getById(Document.class, "d");
+        assertEquals("plain text", read.getBody());
+        assertEquals(Long.valueOf(-1), read.getSize());
+    }
+
+    @Test
+    public void onlyTextAndBinaryColumnsCanBeCompressed() {
+        try {
+            new EntityManagerImpl(new HashSet<Class<?>>(Arrays.<Class<?>>asList(CompressedNumber.class)));
+            fail("Numeric columns can't be compressed");
+        } catch (IllegalStateException ex) {
+            assertTrue(ex.getMessage().contains("value"));
+        }
+    }
+
+    private Column getColumn(String key, String name) throws Exception {
+        SlicePredicate predicate = new SlicePredicate().setSlice_range(new SliceRange(new byte[0], new byte[0], false, 10));
+        List<Column> columns = backend.getSlice("documents", key.getBytes("UTF-8"), predicate);
+        for (Column column : columns) {
+            if (new String(column.getName(), "UTF-8").equals(name)) {
+                return column;
+            }
+        }
+        throw new AssertionError("No column " + name);
+    }
+
+    @CassandraColumnFamily(name = "numbers")
+    public static class CompressedNumber {
+        @CassandraKey
+        private String id;
+
+        @CassandraColumn(compressionThreshold = 0)
+        private Long value;
+    }
+}
@@ -0,0 +1,114 @@
+package org.helenus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.SlicePredicate;
+import org.helenus.entities.Account;
+import org.helenus.entities.Person;
+import org.helenus.storage.InMemoryStorageBackend;
+import org.helenus.validation.ValidationMode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the references of many entities are loaded with one read
+ */
+public class DependentKeyTest {
+
+    private EntityManagerImpl em;
+    // the reads of the referenced column family
+    private final AtomicInteger reads = new AtomicInteger();
+    private final AtomicInteger keysRead = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        em = new EntityManagerImpl(new HashSet<Class<?>>(
+                Arrays.<Class<?>>asList(Person.class, Account.class)));
+        em.setStorageBackend(new InMemoryStorageBackend("test") {
+            @Override
+            public List<Column> getSlice(String columnFamily, byte[] key, SlicePredicate predicate) {
+                if (columnFamily.equals("people")) {
+                    reads.incrementAndGet();
+                    keysRead.incrementAndGet();
+                }
+                return super.getSlice(columnFamily, key, predicate);
+            }
+
+            @Override
+            public Map<byte[], List<Column>> multigetSlice(String columnFamily, List<byte[]> keys,
+                    SlicePredicate predicate) {
+                if (columnFamily.equals("people")) {
+                    reads.incrementAndGet();
+                    keysRead.addAndGet(keys.size());
+                }
+                return super.multigetSlice(columnFamily, keys, predicate);
+            }
+        });
+        em.setValidationMode(ValidationMode.NONE);
+        em.init();
+    }
+
+    @After
+    public void tearDown() {
+        em.destroy();
+    }
+
+    @Test
+    public void referencesAreLoadedWithOneMultiget() {
+        List<String> ids = new ArrayList<String>();
+        for (int i = 0; i < 20; i++) {
+            Person owner = em.persist(new Person("p" + i, "Sofia", "n" + i, (long) i));
+            em.persist(new Account(owner, "plan" + i));
+            ids.add("p" + i);
+        }
+
+        List<Account> accounts = em.getList(Account.class, ids.toArray());
+        assertEquals(20, accounts.size());
+        // not eager, so only the keys are set
+        assertEquals(0, reads.get());
+        assertNull(accounts.get(0).getOwner().getName());
+
+        em.resolveDependentKeys(accounts);
+
+        assertEquals(1, reads.get());
+        assertEquals(20, keysRead.get());
+        for (int i = 0; i < 20; i++) {
+            assertEquals("plan" + i, accounts.get(i).getPlan());
+            assertEquals("n" + i, accounts.get(i).getOwner().getName());
+        }
+    }
+
+    @Test
+    public void sharedReferencesAreReadOnceAndMissingOnesAreKept() {
+        Person owner = em.persist(new Person("p", "Sofia", "name", 1L));
+        Person missing = new Person();
+        missing.setId("missing");
+        List<Account> accounts = Arrays.asList(new Account(owner, "a"), new Account(copy(owner), "b"),
+                new Account(missing, "c"));
+
+        em.resolveDependentKeys(accounts);
+
+        assertEquals(1, reads.get());
+        assertEquals(2, keysRead.get());
+        assertSame(accounts.get(0).getOwner(), accounts.get(1).getOwner());
+        assertEquals("name", accounts.get(1).getOwner().getName());
+        assertSame(missing, accounts.get(2).getOwner());
+    }
+
+    private static Person copy(Person person) {
+        Person copy = new Person();
+        copy.setId(person.getId());
+        return copy;
+    }
+}
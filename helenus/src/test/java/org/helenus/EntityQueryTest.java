@@ -0,0 +1,136 @@
+package org.helenus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import me.prettyprint.cassandra.serializers.StringSerializer;
+
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.IndexClause;
+import org.apache.cassandra.thrift.IndexExpression;
+import org.apache.cassandra.thrift.IndexOperator;
+import org.apache.cassandra.thrift.SlicePredicate;
+import org.helenus.entities.Book;
+import org.helenus.storage.InMemoryStorageBackend;
+import org.helenus.validation.ValidationMode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks how queries order their index expressions, and what they fetch
+ */
+public class EntityQueryTest {
+
+    private EntityManagerImpl em;
+    private IndexClause clause;
+    private SlicePredicate predicate;
+
+    @Before
+    public void setUp() {
+        em = new EntityManagerImpl(new HashSet<Class<?>>(Arrays.<Class<?>>asList(Book.class)));
+        em.setStorageBackend(new InMemoryStorageBackend("test") {
+            @Override
+            public Map<byte[], List<Column>> getIndexedSlices(String columnFamily,
+                    IndexClause clause, SlicePredicate predicate) {
+                EntityQueryTest.this.clause = clause;
+                EntityQueryTest.this.predicate = predicate;
+                return super.getIndexedSlices(columnFamily, clause, predicate);
+            }
+        });
+        em.setValidationMode(ValidationMode.NONE);
+        em.init();
+
+        em.persist(new Book("1", "en", "Tolkien", "The Hobbit", 1937));
+        em.persist(new Book("2", "en", "Tolkien", "The Silmarillion", 1977));
+        em.persist(new Book("3", "bg", "Tolkien", "Hobitat", 1975));
+        em.persist(new Book("4", "en", "Orwell", "1984", 1949));
+    }
+
+    @After
+    public void tearDown() {
+        em.destroy();
+    }
+
+    @Test
+    public void mostSelectiveIndexIsUsedFirst() {
+        List<Book> books = em.createQuery(Book.class).eq("language", "en").eq("author", "Tolkien").list();
+
+        assertEquals(Arrays.asList("1", "2"), isbns(books));
+        assertEquals(Arrays.asList("author", "language"), columnNames());
+        assertEquals(IndexOperator.EQ, clause.getExpressions().get(0).getOp());
+    }
+
+    @Test
+    public void hintedIndexIsUsedFirst() {
+        List<Book> books = em.createQuery(Book.class).eq("author", "Tolkien").eq("language", "en")
+                .useIndex("language").list();
+
+        assertEquals(Arrays.asList("1", "2"), isbns(books));
+        assertEquals(Arrays.asList("language", "author"), columnNames());
+    }
+
+    @Test
+    public void otherExpressionsFollowInTheirOrder() {
+        List<Book> books = em.createQuery(Book.class).lt("year", 1970).eq("author", "Tolkien").list();
+
+        assertEquals(Arrays.asList("1"), isbns(books));
+        assertEquals(Arrays.asList("author", "year"), columnNames());
+        assertEquals(IndexOperator.LT, clause.getExpressions().get(1).getOp());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void queryWithoutAnIndexedEqualityIsRejected() {
+        em.createQuery(Book.class).eq("title", "1984").gt("year", 1900).list();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rangeOnAnIndexedPropertyIsNotEnough() {
+        em.createQuery(Book.class).gt("author", "A").list();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void hintWithoutAnEqualityIsRejected() {
+        em.createQuery(Book.class).eq("author", "Tolkien").useIndex("language").list();
+    }
+
+    @Test
+    public void filteredColumnsAreFetchedWithAProjection() {
+        List<Book> books = em.createQuery(Book.class).eq("author", "Tolkien").gt("year", 1970)
+                .properties(Collections.singleton("title")).list();
+
+        assertEquals(Arrays.asList("2", "3"), isbns(books));
+        List<String> fetched = new ArrayList<String>();
+        for (byte[] name : predicate.getColumn_names()) {
+            fetched.add(StringSerializer.get().fromBytes(name));
+        }
+        assertEquals(Arrays.asList("title", "author", "year"), fetched);
+        assertEquals("The Silmarillion", books.get(0).getTitle());
+        // fetched for the filter only
+        assertNull(books.get(0).getYear());
+        assertNull(books.get(0).getLanguage());
+    }
+
+    private List<String> columnNames() {
+        List<String> names = new ArrayList<String>();
+        for (IndexExpression expression : clause.getExpressions()) {
+            names.add(StringSerializer.get().fromBytes(expression.getColumn_name()));
+        }
+        return names;
+    }
+
+    private static List<String> isbns(List<Book> books) {
+        List<String> isbns = new ArrayList<String>();
+        for (Book book : books) {
+            isbns.add(book.getIsbn());
+        }
+        return isbns;
+    }
+}
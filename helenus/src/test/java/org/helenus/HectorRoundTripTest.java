@@ -0,0 +1,147 @@
+package org.helenus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import me.prettyprint.cassandra.serializers.LongSerializer;
+import me.prettyprint.cassandra.serializers.StringSerializer;
+import me.prettyprint.cassandra.service.CassandraClient;
+import me.prettyprint.cassandra.service.CassandraClientPool;
+import me.prettyprint.cassandra.service.Cluster;
+import me.prettyprint.cassandra.service.Keyspace;
+import me.prettyprint.cassandra.service.spring.HectorTemplate;
+
+import org.apache.cassandra.thrift.Clock;
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.ColumnParent;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.Mutation;
+import org.apache.cassandra.thrift.SlicePredicate;
+import org.apache.cassandra.thrift.SuperColumn;
+import org.helenus.entities.Address;
+import org.helenus.entities.Person;
+import org.helenus.validation.ValidationMode;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Matchers;
+import org.mockito.MockitoAnnotations;
+
+/**
+ * Checks, with a mocked hector template, that reading or writing an entity
+ * costs a single call to the cluster, whatever the number of its columns
+ */
+public class HectorRoundTripTest {
+
+    private Keyspace keyspace;
+    private EntityManagerImpl entityManager;
+
+    @Captor
+    private ArgumentCaptor<Map<byte[], Map<String, List<Mutation>>>> mutations;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        keyspace = mock(Keyspace.class);
+        CassandraClient client = mock(CassandraClient.class);
+        when(client.getKeyspace(anyString(), any(ConsistencyLevel.class))).thenReturn(keyspace);
+        when(keyspace.getClient()).thenReturn(client);
+        CassandraClientPool pool = mock(CassandraClientPool.class);
+        when(pool.borrowClient()).thenReturn(client);
+
+        HectorTemplate template = mock(HectorTemplate.class);
+        when(template.getCluster()).thenReturn(new Cluster("test", pool));
+        when(template.getKeyspace()).thenReturn("test");
+        when(template.createClock()).thenReturn(new Clock(1));
+
+        entityManager = new EntityManagerImpl(new HashSet<Class<?>>(
+                Arrays.<Class<?>>asList(Person.class, Address.class)));
+        entityManager.setHectorTemplate(template);
+        entityManager.setValidationMode(ValidationMode.NONE);
+    }
+
+    @Test
+    public void getByIdReadsAllColumnsWithOneSlice() {
+        List<Column> columns = new ArrayList<Column>();
+        columns.add(column("balance", LongSerializer.get().toBytes(25L)));
+        columns.add(column("city", StringSerializer.get().toBytes("Sofia")));
+        columns.add(column("name", StringSerializer.get().toBytes("John")));
+        when(keyspace.getSlice(any(byte[].class), any(ColumnParent.class), any(SlicePredicate.class)))
+                .thenReturn(columns);
+
+        Person person = entityManager.getById(Person.class, "p1");
+
+        ArgumentCaptor<SlicePredicate> predicate = ArgumentCaptor.forClass(SlicePredicate.class);
+        verify(keyspace, times(1)).getSlice(any(byte[].class), any(ColumnParent.class), predicate.capture());
+        assertEquals(3, predicate.getValue().getColumn_names().size());
+        assertEquals("p1", person.getId());
+        assertEquals("Sofia", person.getCity());
+        assertEquals("John", person.getName());
+        assertEquals(Long.valueOf(25), person.getBalance());
+    }
+
+    @Test
+    public void getByIdOfMissingRowReturnsNull() {
+        when(keyspace.getSlice(any(byte[].class), any(ColumnParent.class), any(SlicePredicate.class)))
+                .thenReturn(Collections.<Column>emptyList());
+
+        assertNull(entityManager.getById(Person.class, "missing"));
+        verify(keyspace, times(1)).getSlice(any(byte[].class), any(ColumnParent.class), any(SlicePredicate.class));
+    }
+
+    @Test
+    public void getByIdReadsSuperColumnsWithOneSuperSlice() {
+        List<Column> columns = new ArrayList<Column>();
+        columns.add(column("city", StringSerializer.get().toBytes("Varna")));
+        List<SuperColumn> superColumns = Collections.singletonList(
+                new SuperColumn(StringSerializer.get().toBytes("home"), columns));
+        when(keyspace.getSuperSlice(any(byte[].class), any(ColumnParent.class), any(SlicePredicate.class)))
+                .thenReturn(superColumns);
+
+        Address address = entityManager.getById(Address.class, "a1");
+
+        verify(keyspace, times(1)).getSuperSlice(any(byte[].class), any(ColumnParent.class), any(SlicePredicate.class));
+        assertEquals("Varna", address.getCity());
+        assertNull(address.getZip());
+    }
+
+    @Test
+    public void persistWritesAllColumnsWithOneBatchMutate() {
+        entityManager.persist(new Person("p1", "Sofia", "John", 25L));
+
+        verify(keyspace, times(1)).batchMutate(mutations.capture());
+        Map<byte[], Map<String, List<Mutation>>> rows = mutations.getValue();
+        assertEquals(1, rows.size());
+        Map<String, List<Mutation>> row = rows.values().iterator().next();
+        assertEquals(3, row.get("people").size());
+    }
+
+    @Test
+    public void persistAllWritesSmallBatchesWithOneBatchMutate() {
+        List<Person> people = new ArrayList<Person>();
+        for (int i = 0; i < 10; i++) {
+            people.add(new Person("p" + i, "Sofia", "John", (long) i));
+        }
+        entityManager.persistAll(people);
+
+        verify(keyspace, times(1)).batchMutate(Matchers.<Map<byte[], Map<String, List<Mutation>>>>anyObject());
+    }
+
+    private static Column column(String name, byte[] value) {
+        return new Column(StringSerializer.get().toBytes(name), value, new Clock(1));
+    }
+}
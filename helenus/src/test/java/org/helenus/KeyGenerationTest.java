@@ -0,0 +1,58 @@
+package org.helenus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.helenus.entities.Event;
+import org.helenus.entities.Person;
+import org.helenus.storage.InMemoryStorageBackend;
+import org.helenus.validation.ValidationMode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class KeyGenerationTest {
+
+    private EntityManagerImpl em;
+
+    @Before
+    public void setUp() {
+        em = new EntityManagerImpl(new HashSet<Class<?>>(
+                Arrays.<Class<?>>asList(Person.class, Event.class)));
+        em.setStorageBackend(new InMemoryStorageBackend("test"));
+        em.setValidationMode(ValidationMode.NONE);
+        em.init();
+    }
+
+    @After
+    public void tearDown() {
+        em.destroy();
+    }
+
+    @Test
+    public void stringKeyIsGenerated() {
+        Person person = em.persist(new Person(null, "Sofia", "name", 1L));
+        assertNotNull(person.getId());
+        assertEquals("name", em.getById(Person.class, person.getId()).getName());
+    }
+
+    @Test
+    public void numericKeyMustBeSet() {
+        em.persist(new Event(1L, "set"));
+        assertEquals("set", em.getById(Event.class, 1L).getName());
+        try {
+            em.persistAll(Arrays.asList(new Event(2L, "before"), new Event(null, "unset")));
+            fail("Numeric keys can't be generated");
+        } catch (IllegalStateException ex) {
+            assertTrue(ex.getMessage().contains(Event.class.getName()));
+        }
+        // nothing of the failed batch is written
+        assertNull(em.getById(Event.class, 2L));
+    }
+}
@@ -0,0 +1,182 @@
+package org.helenus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.management.MBeanServerFactory;
+
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.SlicePredicate;
+import org.helenus.entities.Book;
+import org.helenus.entities.Person;
+import org.helenus.metrics.JmxMetricsListener;
+import org.helenus.metrics.MetricsListener;
+import org.helenus.metrics.Operation;
+import org.helenus.metrics.Perf4jMetricsListener;
+import org.helenus.storage.InMemoryStorageBackend;
+import org.helenus.validation.ValidationMode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+
+/**
+ * Checks that every operation of the entity manager is measured once
+ */
+public class MetricsTest {
+
+    private EntityManagerImpl em;
+    private boolean failReads;
+
+    @Before
+    public void setUp() {
+        em = new EntityManagerImpl(new HashSet<Class<?>>(Arrays.<Class<?>>asList(Person.class, Book.class)));
+        em.setStorageBackend(new InMemoryStorageBackend("test") {
+            @Override
+            public List<Column> getSlice(String columnFamily, byte[] key, SlicePredicate predicate) {
+                if (failReads) {
+                    throw new IllegalStateException("unavailable");
+                }
+                return super.getSlice(columnFamily, key, predicate);
+            }
+        });
+        em.setValidationMode(ValidationMode.NONE);
+        em.init();
+    }
+
+    @After
+    public void tearDown() {
+        em.destroy();
+    }
+
+    @Test
+    public void everyOperationIsMeasured() {
+        RecordingListener listener = new RecordingListener();
+        em.setMetricsListener(listener);
+
+        performAllOperations();
+
+        Set<Operation> measured = EnumSet.noneOf(Operation.class);
+        for (Measurement measurement : listener.measurements) {
+            measured.add(measurement.operation);
+            assertTrue(measurement.elapsedNanos > 0);
+        }
+        assertEquals(EnumSet.allOf(Operation.class), measured);
+        // nested operations, such as the pages of a query, are not measured on their own
+        assertEquals(8, listener.measurements.size());
+    }
+
+    @Test
+    public void writesAndReadsAreCounted() {
+        RecordingListener listener = new RecordingListener();
+        em.setMetricsListener(listener);
+
+        em.persist(new Book("1", "en", "Tolkien", "The Hobbit", 1937));
+        em.getById(Book.class, "1");
+
+        Measurement persist = listener.measurements.get(0);
+        assertEquals(Operation.PERSIST, persist.operation);
+        assertEquals(Book.class, persist.entityClass);
+        assertEquals(1, persist.rows);
+        assertEquals(4, persist.columns);
+        assertTrue(persist.bytes > 0);
+        Measurement read = listener.measurements.get(1);
+        assertEquals(Operation.GET_BY_ID, read.operation);
+        assertEquals(1, read.rows);
+    }
+
+    @Test
+    public void failedOperationsAreMarked() {
+        RecordingListener listener = new RecordingListener();
+        em.setMetricsListener(listener);
+        failReads = true;
+
+        // getById logs the failure and returns null
+        em.getById(Book.class, "1");
+
+        assertEquals(1, listener.measurements.size());
+        assertTrue(listener.measurements.get(0).failed);
+    }
+
+    @Test
+    public void jmxListenerRecordsTheOperations() {
+        JmxMetricsListener listener = new JmxMetricsListener(MBeanServerFactory.newMBeanServer(), "test");
+        em.setMetricsListener(listener);
+        try {
+            performAllOperations();
+
+            assertEquals(2, listener.getMetrics(Operation.PERSIST, Book.class).getCount());
+            assertEquals(1, listener.getMetrics(Operation.GET_BY_ID, Book.class).getCount());
+            assertEquals(1, listener.getMetrics(Operation.PERSIST_ALL, null).getCount());
+            assertEquals(2, listener.getMetrics(Operation.GET_LIST, Book.class).getRows());
+        } finally {
+            listener.destroy();
+        }
+    }
+
+    @Test
+    public void perf4jListenerLogsTheOperations() {
+        Logger logger = mock(Logger.class);
+        when(logger.isInfoEnabled()).thenReturn(true);
+        em.setMetricsListener(new Perf4jMetricsListener(logger));
+
+        em.persist(new Book("1", "en", "Tolkien", "The Hobbit", 1937));
+        em.getById(Book.class, "1");
+
+        verify(logger, atLeastOnce()).info(contains("tag[helenus.persist.Book]"));
+        verify(logger, atLeastOnce()).info(contains("tag[helenus.getById.Book]"));
+    }
+
+    private void performAllOperations() {
+        Book book = em.persist(new Book("1", "en", "Tolkien", "The Hobbit", 1937));
+        em.persistAll(Arrays.asList(new Book("2", "en", "Orwell", "1984", 1949),
+                new Person("p", "Sofia", "name", 1L)));
+        em.update(book);
+        em.getById(Book.class, "1");
+        em.getList(Book.class, "1", "2");
+        em.getByPropertyValue(Person.class, "city", "Sofia");
+        em.createQuery(Book.class).eq("author", "Tolkien").list();
+        em.persist(book);
+    }
+
+    private static class Measurement {
+        Operation operation;
+        Class<?> entityClass;
+        long elapsedNanos;
+        int rows;
+        int columns;
+        long bytes;
+        boolean failed;
+    }
+
+    private static class RecordingListener implements MetricsListener {
+        final List<Measurement> measurements = Collections.synchronizedList(new ArrayList<Measurement>());
+
+        @Override
+        public void operationCompleted(Operation operation, Class<?> entityClass, long startTime,
+                long elapsedNanos, int rows, int columns, long bytes, boolean failed) {
+            Measurement measurement = new Measurement();
+            measurement.operation = operation;
+            measurement.entityClass = entityClass;
+            measurement.elapsedNanos = elapsedNanos;
+            measurement.rows = rows;
+            measurement.columns = columns;
+            measurement.bytes = bytes;
+            measurement.failed = failed;
+            measurements.add(measurement);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package org.helenus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import me.prettyprint.cassandra.serializers.StringSerializer;
+
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.SlicePredicate;
+import org.helenus.entities.Book;
+import org.helenus.storage.InMemoryStorageBackend;
+import org.helenus.validation.ValidationMode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that getList splits its keys in chunks, and merges them back in
+ * the order the keys were given
+ */
+public class MultigetTest {
+
+    private EntityManagerImpl em;
+    // the keys requested by each multiget_slice call
+    private final List<List<String>> chunks = Collections.synchronizedList(new ArrayList<List<String>>());
+    // the number of calls, containing the key "5", that fail
+    private final AtomicInteger failures = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        em = new EntityManagerImpl(new HashSet<Class<?>>(Arrays.<Class<?>>asList(Book.class)));
+        em.setStorageBackend(new InMemoryStorageBackend("test") {
+            @Override
+            public Map<byte[], List<Column>> multigetSlice(String columnFamily, List<byte[]> keys,
+                    SlicePredicate predicate) {
+                List<String> chunk = new ArrayList<String>();
+                for (byte[] key : keys) {
+                    chunk.add(StringSerializer.get().fromBytes(key));
+                }
+                chunks.add(chunk);
+                if (chunk.contains("5") && failures.getAndDecrement() > 0) {
+                    throw new IllegalStateException("unavailable");
+                }
+                return super.multigetSlice(columnFamily, keys, predicate);
+            }
+        });
+        em.setValidationMode(ValidationMode.NONE);
+        em.setMultigetChunkSize(3);
+        em.init();
+
+        for (int i = 0; i < 10; i++) {
+            em.persist(new Book(String.valueOf(i), "en", "author" + i, "title" + i, 1900 + i));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        em.destroy();
+    }
+
+    @Test
+    public void keysAreSplitInChunks() {
+        List<Book> books = em.getList(Book.class, "0", "1", "2", "3", "4", "5", "6", "7", "8", "9");
+
+        assertEquals(10, books.size());
+        List<Integer> sizes = new ArrayList<Integer>();
+        List<String> requested = new ArrayList<String>();
+        for (List<String> chunk : chunks) {
+            sizes.add(chunk.size());
+            requested.addAll(chunk);
+        }
+        Collections.sort(sizes);
+        Collections.sort(requested);
+        assertEquals(Arrays.asList(1, 3, 3, 3), sizes);
+        assertEquals(Arrays.asList("0", "1", "2", "3", "4", "5", "6", "7", "8", "9"), requested);
+    }
+
+    @Test
+    public void orderOfTheKeysIsKeptAcrossChunks() {
+        List<Book> books = em.getList(Book.class, "9", "2", "7", "0", "5", "3", "8");
+
+        assertEquals(3, chunks.size());
+        assertEquals(Arrays.asList("9", "2", "7", "0", "5", "3", "8"), isbns(books));
+        assertEquals("title9", books.get(0).getTitle());
+    }
+
+    @Test
+    public void missingAndRepeatedKeysAreLeftOut() {
+        List<Book> books = em.getList(Book.class, "1", "missing", "2", "1", "other", "3");
+
+        assertEquals(Arrays.asList("1", "2", "3"), isbns(books));
+        // each key is only requested once
+        assertEquals(2, chunks.size());
+    }
+
+    @Test
+    public void failedChunkIsRetried() {
+        failures.set(1);
+
+        List<Book> books = em.getList(Book.class, "0", "1", "2", "3", "4", "5", "6");
+
+        assertEquals(Arrays.asList("0", "1", "2", "3", "4", "5", "6"), isbns(books));
+        assertEquals(4, chunks.size());
+    }
+
+    @Test
+    public void readFailsOnceTheRetriesAreExhausted() {
+        failures.set(2);
+        try {
+            em.getList(Book.class, "0", "1", "2", "3", "4", "5", "6");
+            fail("The read should have failed");
+        } catch (IllegalStateException ex) {
+            assertEquals("unavailable", ex.getMessage());
+        }
+    }
+
+    private static List<String> isbns(List<Book> books) {
+        List<String> isbns = new ArrayList<String>();
+        for (Book book : books) {
+            isbns.add(book.getIsbn());
+        }
+        return isbns;
+    }
+}
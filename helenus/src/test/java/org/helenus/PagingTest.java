@@ -0,0 +1,150 @@
+package org.helenus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.IndexClause;
+import org.apache.cassandra.thrift.SlicePredicate;
+import org.helenus.entities.Like;
+import org.helenus.entities.Person;
+import org.helenus.storage.InMemoryStorageBackend;
+import org.helenus.validation.ValidationMode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the iterators read their rows and columns a page at a time
+ */
+public class PagingTest {
+
+    private EntityManagerImpl em;
+    private int indexedSliceCalls;
+    private int sliceCalls;
+
+    @Before
+    public void setUp() {
+        em = new EntityManagerImpl(new HashSet<Class<?>>(
+                Arrays.<Class<?>>asList(Person.class, Like.class)));
+        em.setStorageBackend(new InMemoryStorageBackend("test") {
+            @Override
+            public Map<byte[], List<Column>> getIndexedSlices(String columnFamily,
+                    IndexClause clause, SlicePredicate predicate) {
+                indexedSliceCalls++;
+                return super.getIndexedSlices(columnFamily, clause, predicate);
+            }
+            @Override
+            public List<Column> getSlice(String columnFamily, byte[] key,
+                    SlicePredicate predicate) {
+                sliceCalls++;
+                return super.getSlice(columnFamily, key, predicate);
+            }
+        });
+        em.setValidationMode(ValidationMode.NONE);
+        em.init();
+    }
+
+    @After
+    public void tearDown() {
+        em.destroy();
+    }
+
+    @Test
+    public void iterateByPropertyValueReadsOnePageAtATime() {
+        for (int i = 0; i < 7; i++) {
+            em.persist(new Person("p" + i, i % 2 == 0 ? "Sofia" : "Varna", "n" + i, (long) i));
+        }
+
+        Iterator<Person> iterator = em.iterateByPropertyValue(Person.class, "city", "Sofia", 2);
+        List<String> ids = new ArrayList<String>();
+        ids.add(iterator.next().getId());
+        assertEquals(1, indexedSliceCalls);
+        while (iterator.hasNext()) {
+            ids.add(iterator.next().getId());
+        }
+
+        assertEquals(Arrays.asList("p0", "p2", "p4", "p6"), sorted(ids));
+        assertEquals(3, indexedSliceCalls);
+    }
+
+    @Test
+    public void iterateByPropertyValueOfMissingValueIsEmpty() {
+        em.persist(new Person("p0", "Sofia", "n0", 0L));
+        assertFalse(em.iterateByPropertyValue(Person.class, "city", "Rome", 2).hasNext());
+    }
+
+    @Test
+    public void iterateListWalksWideRowInSlices() {
+        for (int i = 0; i < 7; i++) {
+            em.persist(new Like("u", "tag" + i, "t" + i));
+        }
+        em.persist(new Like("other", "tag0", "t9"));
+        sliceCalls = 0;
+
+        Iterator<Like> iterator = em.iterateList(Like.class, "u", false, null, false, 3);
+        List<String> tags = new ArrayList<String>();
+        while (iterator.hasNext()) {
+            Like like = iterator.next();
+            assertEquals("u", like.getUserId());
+            tags.add(like.getTag().getName());
+        }
+
+        assertEquals(Arrays.asList("tag0", "tag1", "tag2", "tag3", "tag4", "tag5", "tag6"), tags);
+        assertEquals(3, sliceCalls);
+    }
+
+    @Test
+    public void iterateListInReverse() {
+        for (int i = 0; i < 4; i++) {
+            em.persist(new Like("u", "tag" + i, "t" + i));
+        }
+
+        Iterator<Like> iterator = em.iterateList(Like.class, "u", false, null, true, 3);
+        List<String> tags = new ArrayList<String>();
+        while (iterator.hasNext()) {
+            tags.add(iterator.next().getTag().getName());
+        }
+
+        assertEquals(Arrays.asList("tag3", "tag2", "tag1", "tag0"), tags);
+    }
+
+    @Test
+    public void iterateByInverseStreamsReferencedEntities() {
+        for (int i = 0; i < 7; i++) {
+            em.persist(new Like("user" + i, "java", "t" + i));
+        }
+        em.persist(new Like("user1", "scala", "t9"));
+
+        List<Like> slice = em.findByInverse(Like.class, "java", "t2", "t4", 10);
+        assertEquals(Arrays.asList("user2", "user3", "user4"), userIds(slice.iterator()));
+
+        sliceCalls = 0;
+        Iterator<Like> iterator = em.iterateByInverse(Like.class, "java", null, null, true, 3);
+        assertEquals(Arrays.asList("user6", "user5", "user4", "user3", "user2", "user1", "user0"),
+                userIds(iterator));
+        assertEquals(3, sliceCalls);
+    }
+
+    private static List<String> userIds(Iterator<Like> likes) {
+        List<String> ids = new ArrayList<String>();
+        while (likes.hasNext()) {
+            ids.add(likes.next().getUserId());
+        }
+        return ids;
+    }
+
+    private static List<String> sorted(List<String> values) {
+        List<String> copy = new ArrayList<String>(values);
+        Collections.sort(copy);
+        return copy;
+    }
+}
@@ -0,0 +1,109 @@
+package org.helenus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import me.prettyprint.cassandra.serializers.StringSerializer;
+
+import org.apache.cassandra.thrift.Mutation;
+import org.helenus.entities.Like;
+import org.helenus.entities.Person;
+import org.helenus.storage.InMemoryStorageBackend;
+import org.helenus.validation.ValidationMode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that persistAll splits large writes into bounded batch_mutate
+ * calls, without losing or repeating any column
+ */
+public class PersistAllTest {
+
+    private EntityManagerImpl em;
+    private final AtomicInteger batchMutateCalls = new AtomicInteger();
+    // the columns written, as "column family/row key/column name"
+    private final List<String> written = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void setUp() {
+        em = new EntityManagerImpl(new HashSet<Class<?>>(
+                Arrays.<Class<?>>asList(Person.class, Like.class)));
+        em.setStorageBackend(new InMemoryStorageBackend("test") {
+            @Override
+            public void batchMutate(Map<byte[], Map<String, List<Mutation>>> mutations) {
+                batchMutateCalls.incrementAndGet();
+                for (Map.Entry<byte[], Map<String, List<Mutation>>> row : mutations.entrySet()) {
+                    for (Map.Entry<String, List<Mutation>> cf : row.getValue().entrySet()) {
+                        for (Mutation mutation : cf.getValue()) {
+                            written.add(cf.getKey() + "/" + string(row.getKey()) + "/"
+                                    + string(mutation.getColumn_or_supercolumn().getColumn().getName()));
+                        }
+                    }
+                }
+                super.batchMutate(mutations);
+            }
+        });
+        em.setValidationMode(ValidationMode.NONE);
+        em.init();
+    }
+
+    @After
+    public void tearDown() {
+        em.destroy();
+    }
+
+    @Test
+    public void columnLimitSplitsTheWrite() {
+        em.setBatchMaxColumns(4);
+        List<Person> people = new ArrayList<Person>();
+        for (int i = 0; i < 10; i++) {
+            people.add(new Person("p" + i, "Sofia", "n" + i, (long) i));
+        }
+        em.persistAll(people);
+
+        assertTrue(batchMutateCalls.get() >= 8);
+        assertWrittenOnce(30);
+        for (int i = 0; i < 10; i++) {
+            Person person = em.getById(Person.class, "p" + i);
+            assertEquals("n" + i, person.getName());
+            assertEquals(Long.valueOf(i), person.getBalance());
+        }
+    }
+
+    @Test
+    public void byteLimitSplitsTheWriteWithItsInverseEntries() {
+        em.setBatchMaxBytes(40);
+        List<Like> likes = new ArrayList<Like>();
+        for (int i = 0; i < 6; i++) {
+            likes.add(new Like("user" + i, "java", "t" + i));
+        }
+        em.persistAll(likes);
+
+        assertTrue(batchMutateCalls.get() > 1);
+        // a column in the user's row and one in the tag's inverse row per like
+        assertWrittenOnce(12);
+        for (int i = 0; i < 6; i++) {
+            assertTrue(written.contains("likes/user" + i + "/java"));
+            assertTrue(written.contains("likesInverse/java/t" + i));
+        }
+        assertEquals(6, em.findByInverse(Like.class, "java", null, null, 10).size());
+    }
+
+    private void assertWrittenOnce(int columns) {
+        assertEquals(columns, written.size());
+        assertEquals(columns, new HashSet<String>(written).size());
+    }
+
+    private static String string(byte[] bytes) {
+        return StringSerializer.get().fromBytes(bytes);
+    }
+}
@@ -0,0 +1,124 @@
+package org.helenus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import me.prettyprint.cassandra.serializers.StringSerializer;
+
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.SlicePredicate;
+import org.helenus.entities.Book;
+import org.helenus.storage.InMemoryStorageBackend;
+import org.helenus.validation.ValidationMode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that projection reads ask only for the requested columns and set
+ * only the requested fields
+ */
+public class ProjectionTest {
+
+    private EntityManagerImpl em;
+    private SlicePredicate predicate;
+
+    @Before
+    public void setUp() {
+        em = new EntityManagerImpl(new HashSet<Class<?>>(Arrays.<Class<?>>asList(Book.class)));
+        em.setStorageBackend(new InMemoryStorageBackend("test") {
+            @Override
+            public List<Column> getSlice(String columnFamily, byte[] key, SlicePredicate predicate) {
+                ProjectionTest.this.predicate = predicate;
+                return super.getSlice(columnFamily, key, predicate);
+            }
+
+            @Override
+            public Map<byte[], List<Column>> multigetSlice(String columnFamily, List<byte[]> keys,
+                    SlicePredicate predicate) {
+                ProjectionTest.this.predicate = predicate;
+                return super.multigetSlice(columnFamily, keys, predicate);
+            }
+        });
+        em.setValidationMode(ValidationMode.NONE);
+        em.init();
+
+        em.persist(new Book("1", "en", "Tolkien", "The Hobbit", 1937));
+        em.persist(new Book("2", "en", "Orwell", "1984", 1949));
+    }
+
+    @After
+    public void tearDown() {
+        em.destroy();
+    }
+
+    @Test
+    public void getByIdFetchesOnlyTheRequestedColumns() {
+        Book book = em.getById(Book.class, "1", properties("title", "year"));
+
+        assertEquals(Arrays.asList("title", "year"), columnNames());
+        assertEquals("1", book.getIsbn());
+        assertEquals("The Hobbit", book.getTitle());
+        assertEquals(Integer.valueOf(1937), book.getYear());
+        assertNull(book.getAuthor());
+        assertNull(book.getLanguage());
+    }
+
+    @Test
+    public void getListFetchesOnlyTheRequestedColumns() {
+        List<Book> books = em.getList(Book.class, properties("isbn", "author"), "1", "2");
+
+        // the key is not a column
+        assertEquals(Arrays.asList("author"), columnNames());
+        assertEquals(2, books.size());
+        for (Book book : books) {
+            assertNull(book.getTitle());
+            assertNull(book.getYear());
+        }
+        assertEquals("Tolkien", books.get(0).getAuthor());
+        assertEquals("Orwell", books.get(1).getAuthor());
+    }
+
+    @Test
+    public void withoutAProjectionAllColumnsAreFetched() {
+        em.getById(Book.class, "1");
+
+        assertEquals(4, predicate.getColumn_names().size());
+    }
+
+    @Test
+    public void persistingAProjectedEntityKeepsTheOtherColumns() {
+        Book book = em.getById(Book.class, "1", properties("title"));
+        em.persist(book);
+
+        Book stored = em.getById(Book.class, "1");
+        assertEquals("The Hobbit", stored.getTitle());
+        assertEquals("Tolkien", stored.getAuthor());
+        assertEquals(Integer.valueOf(1937), stored.getYear());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unmappedPropertiesAreRejected() {
+        em.getById(Book.class, "1", properties("publisher"));
+    }
+
+    private static Set<String> properties(String... names) {
+        return new LinkedHashSet<String>(Arrays.asList(names));
+    }
+
+    private List<String> columnNames() {
+        List<String> names = new ArrayList<String>();
+        for (byte[] name : predicate.getColumn_names()) {
+            names.add(StringSerializer.get().fromBytes(name));
+        }
+        return names;
+    }
+}
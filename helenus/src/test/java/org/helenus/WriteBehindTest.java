@@ -0,0 +1,209 @@
+package org.helenus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.cassandra.thrift.Mutation;
+import org.helenus.cache.EntityCache;
+import org.helenus.entities.Person;
+import org.helenus.storage.InMemoryStorageBackend;
+import org.helenus.validation.ValidationMode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WriteBehindTest {
+
+    private EntityManagerImpl em;
+    private int batchMutateCalls;
+    private boolean failWrites;
+    // when set, writes wait for it, after counting down writeStarted
+    private volatile CountDownLatch writesReleased;
+    private final CountDownLatch writeStarted = new CountDownLatch(1);
+
+    @Before
+    public void setUp() {
+        em = new EntityManagerImpl(new HashSet<Class<?>>(Arrays.<Class<?>>asList(Person.class)));
+        em.setStorageBackend(new InMemoryStorageBackend("test") {
+            @Override
+            public void batchMutate(Map<byte[], Map<String, List<Mutation>>> mutations) {
+                if (failWrites) {
+                    throw new IllegalStateException("unavailable");
+                }
+                CountDownLatch latch = writesReleased;
+                if (latch != null) {
+                    writeStarted.countDown();
+                    try {
+                        latch.await();
+                    } catch (InterruptedException ex) {
+                        throw new RuntimeException(ex);
+                    }
+                }
+                batchMutateCalls++;
+                super.batchMutate(mutations);
+            }
+        });
+        em.setValidationMode(ValidationMode.NONE);
+        em.setEntityCache(new EntityCache(100));
+        // flushed explicitly by the tests
+        em.setWriteBehindFlushInterval(100000);
+        em.init();
+    }
+
+    @After
+    public void tearDown() {
+        failWrites = false;
+        em.destroy();
+    }
+
+    @Test
+    public void repeatedWritesAreCoalesced() {
+        em.setWriteBehind(true);
+        Person person = new Person("p", "Sofia", null, null);
+        for (long i = 0; i < 50; i++) {
+            person.setName("n" + i);
+            person.setBalance(i);
+            em.persist(person);
+        }
+
+        assertEquals(0, batchMutateCalls);
+        assertEquals(3, em.getWriteBehindPendingCount());
+        assertEquals(49 * 3, em.getWriteBehindCoalescedCount());
+        em.flush();
+
+        assertEquals(1, batchMutateCalls);
+        assertEquals(0, em.getWriteBehindPendingCount());
+        Person read = em.getById(Person.class, "p");
+        assertEquals("n49", read.getName());
+        assertEquals(Long.valueOf(49), read.getBalance());
+    }
+
+    @Test
+    public void rowsCachedBeforeTheFlushAreInvalidatedByIt() {
+        em.persist(new Person("p", "Sofia", "old", 1L));
+        em.setWriteBehind(true);
+        em.persist(new Person("p", "Sofia", "new", 1L));
+
+        // the queued write is not visible yet, and the read caches the old row
+        assertEquals("old", em.getById(Person.class, "p").getName());
+        em.flush();
+
+        assertEquals("new", em.getById(Person.class, "p").getName());
+    }
+
+    @Test
+    public void writesQueuedWhenDisablingFailsAreKept() {
+        em.setWriteBehind(true);
+        em.persist(new Person("p1", "Sofia", "n1", 1L));
+        failWrites = true;
+        try {
+            em.setWriteBehind(false);
+            fail("The failed flush should be reported");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+        failWrites = false;
+
+        assertFalse(em.isWriteBehind());
+        assertEquals(3, em.getWriteBehindPendingCount());
+        // the closed buffer no longer accepts writes, which are sent directly
+        em.persist(new Person("p2", "Varna", "n2", 2L));
+        assertEquals("n2", em.getById(Person.class, "p2").getName());
+        assertNull(em.getById(Person.class, "p1"));
+
+        em.setWriteBehind(false);
+        assertEquals(0, em.getWriteBehindPendingCount());
+        assertEquals("n1", em.getById(Person.class, "p1").getName());
+    }
+
+    @Test(timeout = 20000)
+    public void writersGiveUpWhenFailedFlushesKeepTheQueueFull() {
+        em.setWriteBehindMaxPending(3);
+        em.setWriteBehindMaxWait(200);
+        em.setWriteBehindFlushInterval(10);
+        em.setWriteBehind(true);
+        failWrites = true;
+        em.persist(new Person("p1", "Sofia", "n1", 1L));
+        try {
+            em.persist(new Person("p2", "Varna", "n2", 2L));
+            fail("The write should time out while the queue is full");
+        } catch (IllegalStateException ex) {
+            assertEquals("unavailable", ex.getCause().getMessage());
+        }
+        failWrites = false;
+
+        em.flush();
+        assertEquals("n1", em.getById(Person.class, "p1").getName());
+        assertNull(em.getById(Person.class, "p2"));
+    }
+
+    @Test(timeout = 20000)
+    public void disablingWhileTheFlusherSendsSeveralBatchesCompletes() throws Exception {
+        // every flush is split into one batch per column, sent by the workers
+        em.setBatchMaxColumns(1);
+        em.setWriteBehindFlushSize(4);
+        em.setWriteBehind(true);
+        em.persist(new Person("p1", "Sofia", "n1", 1L));
+
+        // an explicit flush holds the buffer while its writes are stalled
+        writesReleased = new CountDownLatch(1);
+        Thread flushing = start(new Runnable() {
+            @Override
+            public void run() {
+                em.flush();
+            }
+        });
+        writeStarted.await();
+
+        // the flusher wakes up for the new columns, and waits for the explicit flush
+        em.persist(new Person("p2", "Varna", "n2", 2L));
+        em.persist(new Person("p3", "Rome", "n3", 3L));
+        waitForState("helenus-write-behind", Thread.State.BLOCKED);
+
+        Thread disabling = start(new Runnable() {
+            @Override
+            public void run() {
+                em.setWriteBehind(false);
+            }
+        });
+        while (em.isWriteBehind()) {
+            Thread.sleep(10);
+        }
+        writesReleased.countDown();
+
+        flushing.join(10000);
+        disabling.join(10000);
+        assertFalse(flushing.isAlive());
+        assertFalse(disabling.isAlive());
+        assertEquals(0, em.getWriteBehindPendingCount());
+        for (int i = 1; i <= 3; i++) {
+            assertEquals("n" + i, em.getById(Person.class, "p" + i).getName());
+        }
+    }
+
+    private static Thread start(Runnable runnable) {
+        Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void waitForState(String namePrefix, Thread.State state) throws InterruptedException {
+        while (true) {
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.getName().startsWith(namePrefix) && thread.getState() == state) {
+                    return;
+                }
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.helenus.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class EntityCacheTest {
+
+    private static final byte[] KEY = {1};
+    private static final byte[] OTHER_KEY = {2};
+
+    private static CachedRow row(String value) {
+        return CachedRow.forColumns(new String[] {"name"}, new byte[][] {value.getBytes()});
+    }
+
+    @Test
+    public void rowReadBeforeInvalidationIsNotStored() {
+        EntityCache cache = new EntityCache(10);
+        long generation = cache.getGeneration(String.class);
+        cache.invalidate(String.class, KEY);
+        cache.put(String.class, KEY, row("stale"), generation);
+
+        assertNull(cache.get(String.class, KEY));
+        assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    public void rowReadAfterInvalidationIsStored() {
+        EntityCache cache = new EntityCache(10);
+        cache.invalidate(String.class, KEY);
+        CachedRow row = row("fresh");
+        cache.put(String.class, KEY, row, cache.getGeneration(String.class));
+
+        assertSame(row, cache.get(String.class, KEY));
+        // other classes keep their own generation
+        cache.put(Integer.class, KEY, row, cache.getGeneration(Integer.class));
+        assertSame(row, cache.get(Integer.class, KEY));
+    }
+
+    @Test
+    public void weightFollowsPutsReplacementsAndRemovals() {
+        EntityCache cache = new EntityCache(10);
+        CachedRow first = row("a");
+        CachedRow second = row("abcdef");
+        cache.put(String.class, KEY, first, 0);
+        assertEquals(first.getWeight(), cache.getWeight());
+        cache.put(String.class, KEY, second, 0);
+        assertEquals(second.getWeight(), cache.getWeight());
+        cache.put(String.class, OTHER_KEY, first, 0);
+        assertEquals(first.getWeight() + second.getWeight(), cache.getWeight());
+        cache.invalidate(String.class, KEY);
+        assertEquals(first.getWeight(), cache.getWeight());
+        cache.clear();
+        assertEquals(0, cache.getWeight());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void leastRecentlyUsedRowsAreEvictedByWeight() {
+        CachedRow row = row("value");
+        EntityCache cache = new EntityCache(10, row.getWeight() * 2);
+        for (byte i = 0; i < 3; i++) {
+            cache.put(String.class, new byte[] {i}, row, 0);
+        }
+
+        assertEquals(2, cache.getSize());
+        assertEquals(row.getWeight() * 2, cache.getWeight());
+        assertNull(cache.get(String.class, new byte[] {0}));
+        assertEquals(1, cache.getEvictionCount());
+    }
+}
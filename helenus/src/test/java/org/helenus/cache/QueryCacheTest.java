@@ -0,0 +1,51 @@
+package org.helenus.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class QueryCacheTest {
+
+    private static final byte[] SOFIA = "Sofia".getBytes();
+    private static final byte[] VARNA = "Varna".getBytes();
+    private static final List<byte[]> KEYS = Arrays.asList(new byte[] {1}, new byte[] {2});
+
+    @Test
+    public void invalidatingValueKeepsOtherValues() {
+        QueryCache cache = new QueryCache(10, 60000);
+        cache.put(String.class, "city", SOFIA, KEYS, cache.getGeneration(String.class, "city", SOFIA));
+        cache.put(String.class, "city", VARNA, KEYS, cache.getGeneration(String.class, "city", VARNA));
+
+        cache.invalidate(String.class, "city", SOFIA);
+
+        assertNull(cache.get(String.class, "city", SOFIA));
+        assertNotNull(cache.get(String.class, "city", VARNA));
+    }
+
+    @Test
+    public void lookupStartedBeforeInvalidationIsNotStored() {
+        QueryCache cache = new QueryCache(10, 60000);
+        long generation = cache.getGeneration(String.class, "city", SOFIA);
+        cache.invalidate(String.class, "city", SOFIA);
+        cache.put(String.class, "city", SOFIA, KEYS, generation);
+
+        assertNull(cache.get(String.class, "city", SOFIA));
+    }
+
+    @Test
+    public void invalidatingClassDropsAllItsValues() {
+        QueryCache cache = new QueryCache(10, 60000);
+        cache.put(String.class, "city", SOFIA, KEYS, cache.getGeneration(String.class, "city", SOFIA));
+        cache.put(Integer.class, "city", SOFIA, KEYS, cache.getGeneration(Integer.class, "city", SOFIA));
+
+        cache.invalidate(String.class);
+
+        assertNull(cache.get(String.class, "city", SOFIA));
+        assertEquals(2, cache.get(Integer.class, "city", SOFIA).size());
+    }
+}
@@ -0,0 +1,33 @@
+package org.helenus.entities;
+
+import org.helenus.annotation.CassandraColumn;
+import org.helenus.annotation.CassandraColumnFamily;
+import org.helenus.annotation.CassandraDependentKey;
+
+/**
+ * Keyed by the person owning it
+ */
+@CassandraColumnFamily(name = "accounts")
+public class Account {
+
+    @CassandraDependentKey
+    private Person owner;
+
+    @CassandraColumn
+    private String plan;
+
+    public Account() {
+    }
+
+    public Account(Person owner, String plan) {
+        this.owner = owner;
+        this.plan = plan;
+    }
+
+    public Person getOwner() {
+        return owner;
+    }
+    public String getPlan() {
+        return plan;
+    }
+}
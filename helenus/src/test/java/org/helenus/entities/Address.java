@@ -0,0 +1,41 @@
+package org.helenus.entities;
+
+import org.helenus.annotation.CassandraColumn;
+import org.helenus.annotation.CassandraColumnFamily;
+import org.helenus.annotation.CassandraKey;
+import org.helenus.annotation.CassandraSuperColumn;
+
+@CassandraColumnFamily(name = "addresses")
+public class Address {
+
+    @CassandraKey
+    private String id;
+
+    @CassandraSuperColumn(name = "home")
+    private String home;
+
+    @CassandraColumn(name = "city", targetSuperColumnField = "home")
+    private String city;
+
+    @CassandraColumn(name = "zip", targetSuperColumnField = "home")
+    private Integer zip;
+
+    public String getId() {
+        return id;
+    }
+    public void setId(String id) {
+        this.id = id;
+    }
+    public String getCity() {
+        return city;
+    }
+    public void setCity(String city) {
+        this.city = city;
+    }
+    public Integer getZip() {
+        return zip;
+    }
+    public void setZip(Integer zip) {
+        this.zip = zip;
+    }
+}
@@ -0,0 +1,54 @@
+package org.helenus.entities;
+
+import org.helenus.annotation.CassandraColumn;
+import org.helenus.annotation.CassandraColumnFamily;
+import org.helenus.annotation.CassandraKey;
+import org.helenus.annotation.CassandraSecondaryIndex;
+
+@CassandraColumnFamily(name = "books")
+public class Book {
+
+    @CassandraKey
+    private String isbn;
+
+    @CassandraColumn
+    @CassandraSecondaryIndex(selectivity = 1)
+    private String language;
+
+    @CassandraColumn
+    @CassandraSecondaryIndex(selectivity = 10)
+    private String author;
+
+    @CassandraColumn
+    private String title;
+
+    @CassandraColumn
+    private Integer year;
+
+    public Book() {
+    }
+
+    public Book(String isbn, String language, String author, String title, Integer year) {
+        this.isbn = isbn;
+        this.language = language;
+        this.author = author;
+        this.title = title;
+        this.year = year;
+    }
+
+    public String getIsbn() {
+        return isbn;
+    }
+    public String getLanguage() {
+        return language;
+    }
+    public String getAuthor() {
+        return author;
+    }
+    public String getTitle() {
+        return title;
+    }
+    public Integer getYear() {
+        return year;
+    }
+}
@@ -0,0 +1,49 @@
+package org.helenus.entities;
+
+import org.helenus.annotation.CassandraColumn;
+import org.helenus.annotation.CassandraColumnFamily;
+import org.helenus.annotation.CassandraKey;
+
+/**
+ * A column family with compression enabled for all its text columns
+ */
+@CassandraColumnFamily(name = "documents", compressionThreshold = 0)
+public class Document {
+
+    @CassandraKey
+    private String id;
+
+    @CassandraColumn
+    private String body;
+
+    @CassandraColumn
+    private Long size;
+
+    @CassandraColumn(compressionThreshold = 16)
+    private byte[] content;
+
+    public String getId() {
+        return id;
+    }
+    public void setId(String id) {
+        this.id = id;
+    }
+    public String getBody() {
+        return body;
+    }
+    public void setBody(String body) {
+        this.body = body;
+    }
+    public Long getSize() {
+        return size;
+    }
+    public void setSize(Long size) {
+        this.size = size;
+    }
+    public byte[] getContent() {
+        return content;
+    }
+    public void setContent(byte[] content) {
+        this.content = content;
+    }
+}
@@ -0,0 +1,33 @@
+package org.helenus.entities;
+
+import org.helenus.annotation.CassandraColumn;
+import org.helenus.annotation.CassandraColumnFamily;
+import org.helenus.annotation.CassandraKey;
+
+/**
+ * An entity with a numeric key, which must always be set by the caller
+ */
+@CassandraColumnFamily(name = "events")
+public class Event {
+
+    @CassandraKey
+    private Long id;
+
+    @CassandraColumn
+    private String name;
+
+    public Event() {
+    }
+
+    public Event(Long id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    public Long getId() {
+        return id;
+    }
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,44 @@
+package org.helenus.entities;
+
+import org.helenus.annotation.CassandraColumnFamily;
+import org.helenus.annotation.CassandraColumnName;
+import org.helenus.annotation.CassandraInverseColumnFamily;
+import org.helenus.annotation.CassandraInverseColumnName;
+import org.helenus.annotation.CassandraKey;
+
+/**
+ * A wide row per user, with one column per liked tag, and an inverse row
+ * per tag with one column per like
+ */
+@CassandraColumnFamily(name = "likes")
+@CassandraInverseColumnFamily
+public class Like {
+
+    @CassandraKey
+    private String userId;
+
+    @CassandraColumnName(field = "name")
+    private Tag tag;
+
+    @CassandraInverseColumnName
+    private String at;
+
+    public Like() {
+    }
+
+    public Like(String userId, String tag, String at) {
+        this.userId = userId;
+        this.tag = new Tag(tag);
+        this.at = at;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+    public Tag getTag() {
+        return tag;
+    }
+    public String getAt() {
+        return at;
+    }
+}
@@ -0,0 +1,58 @@
+package org.helenus.entities;
+
+import org.helenus.annotation.CassandraColumn;
+import org.helenus.annotation.CassandraColumnFamily;
+import org.helenus.annotation.CassandraKey;
+import org.helenus.annotation.CassandraSecondaryIndex;
+
+@CassandraColumnFamily(name = "people", cached = true, cacheQueries = true)
+public class Person {
+
+    @CassandraKey
+    private String id;
+
+    @CassandraColumn
+    @CassandraSecondaryIndex
+    private String city;
+
+    @CassandraColumn
+    private String name;
+
+    @CassandraColumn
+    private Long balance;
+
+    public Person() {
+    }
+
+    public Person(String id, String city, String name, Long balance) {
+        this.id = id;
+        this.city = city;
+        this.name = name;
+        this.balance = balance;
+    }
+
+    public String getId() {
+        return id;
+    }
+    public void setId(String id) {
+        this.id = id;
+    }
+    public String getCity() {
+        return city;
+    }
+    public void setCity(String city) {
+        this.city = city;
+    }
+    public String getName() {
+        return name;
+    }
+    public void setName(String name) {
+        this.name = name;
+    }
+    public Long getBalance() {
+        return balance;
+    }
+    public void setBalance(Long balance) {
+        this.balance = balance;
+    }
+}
@@ -0,0 +1,21 @@
+package org.helenus.entities;
+
+import java.io.Serializable;
+
+public class Tag implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String name;
+
+    public Tag() {
+    }
+
+    public Tag(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
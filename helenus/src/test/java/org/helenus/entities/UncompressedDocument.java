@@ -0,0 +1,30 @@
+package org.helenus.entities;
+
+import org.helenus.annotation.CassandraColumn;
+import org.helenus.annotation.CassandraColumnFamily;
+import org.helenus.annotation.CassandraKey;
+
+/**
+ * The mapping of {@link Document} before compression was enabled
+ */
+@CassandraColumnFamily(name = "documents")
+public class UncompressedDocument {
+
+    @CassandraKey
+    private String id;
+
+    @CassandraColumn
+    private String body;
+
+    @CassandraColumn
+    private Long size;
+
+    public UncompressedDocument() {
+    }
+
+    public UncompressedDocument(String id, String body, Long size) {
+        this.id = id;
+        this.body = body;
+        this.size = size;
+    }
+}
@@ -0,0 +1,73 @@
+package org.helenus.index;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.helenus.entities.Person;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EntityIndexTest {
+
+    private File indexedRoot;
+    private File unindexedRoot;
+
+    @Before
+    public void setUp() throws IOException {
+        indexedRoot = createDirectory("indexed");
+        unindexedRoot = createDirectory("unindexed");
+        File index = new File(indexedRoot, EntityIndex.RESOURCE_NAME);
+        index.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(index);
+        try {
+            out.write(("# entities\n" + Person.class.getName() + "\n").getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        delete(indexedRoot);
+        delete(unindexedRoot);
+    }
+
+    @Test
+    public void onlyRootsWithoutIndexAreScanned() throws IOException {
+        URL[] classPath = {indexedRoot.toURI().toURL(), unindexedRoot.toURI().toURL()};
+        ClassLoader classLoader = new URLClassLoader(classPath, getClass().getClassLoader());
+
+        Set<Class<?>> classes = EntityIndex.load(classLoader);
+        List<URL> unindexed = EntityIndex.findUnindexedRoots(classPath, classLoader);
+
+        assertEquals(Collections.<Class<?>>singleton(Person.class), classes);
+        assertEquals(Arrays.asList(unindexedRoot.toURI().toURL()), unindexed);
+    }
+
+    private static File createDirectory(String prefix) throws IOException {
+        File dir = File.createTempFile(prefix, "");
+        dir.delete();
+        dir.mkdirs();
+        return dir;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,72 @@
+package org.helenus.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JmxMetricsListenerTest {
+
+    private MBeanServer mbeanServer;
+    private JmxMetricsListener listener;
+
+    @Before
+    public void setUp() {
+        mbeanServer = MBeanServerFactory.newMBeanServer();
+        listener = new JmxMetricsListener(mbeanServer, "test");
+    }
+
+    @After
+    public void tearDown() {
+        listener.destroy();
+    }
+
+    @Test
+    public void metricsAreRegisteredOnFirstUseAndUnregistered() throws Exception {
+        ObjectName name = new ObjectName("test:type=Metrics,operation=getById,entity=\"java.lang.String\"");
+        assertFalse(mbeanServer.isRegistered(name));
+
+        listener.operationCompleted(Operation.GET_BY_ID, String.class, 0, 2000000, 1, 3, 30, false);
+        listener.operationCompleted(Operation.GET_BY_ID, String.class, 0, 4000000, 1, 3, 30, true);
+
+        assertTrue(mbeanServer.isRegistered(name));
+        assertEquals(2L, mbeanServer.getAttribute(name, "Count"));
+        assertEquals(1L, mbeanServer.getAttribute(name, "ErrorCount"));
+        assertEquals(6L, mbeanServer.getAttribute(name, "Columns"));
+        assertEquals(3.0, (Double) mbeanServer.getAttribute(name, "MeanLatency"), 0.001);
+        assertEquals(4.0, (Double) mbeanServer.getAttribute(name, "MaxLatency"), 0.001);
+        assertSame(listener.getMetrics(Operation.GET_BY_ID, String.class), listener.getMetrics(Operation.GET_BY_ID, String.class));
+
+        listener.destroy();
+        assertFalse(mbeanServer.isRegistered(name));
+    }
+
+    @Test
+    public void operationsOnSeveralClassesHaveTheirOwnMetrics() throws Exception {
+        listener.operationCompleted(Operation.PERSIST_ALL, null, 0, 1000, 2, 4, 40, false);
+
+        ObjectName name = new ObjectName("test:type=Metrics,operation=persistAll,entity=" + ObjectName.quote("*"));
+        assertTrue(mbeanServer.isRegistered(name));
+        assertEquals(2L, mbeanServer.getAttribute(name, "Rows"));
+    }
+
+    @Test
+    public void resetClearsTheMetrics() {
+        OperationMetrics metrics = listener.getMetrics(Operation.PERSIST, String.class);
+        metrics.record(1000000, 1, 2, 20, false);
+
+        metrics.reset();
+
+        assertEquals(0, metrics.getCount());
+        assertEquals(0, metrics.getBytes());
+        assertEquals(0.0, metrics.getP99Latency(), 0);
+    }
+}
@@ -0,0 +1,44 @@
+package org.helenus.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsBoundTheirDurationsWithinAQuarter() {
+        for (long micros = 0; micros < 1000000; micros = micros * 5 / 4 + 1) {
+            long upperBound = LatencyHistogram.upperBound(LatencyHistogram.bucket(micros));
+            assertTrue(micros + " > " + upperBound, micros <= upperBound);
+            assertTrue(micros + " << " + upperBound, upperBound <= micros * 5 / 4 + 1);
+        }
+    }
+
+    @Test
+    public void largestDurationsFitTheLastBucket() {
+        assertTrue(LatencyHistogram.bucket(Long.MAX_VALUE) < 248);
+    }
+
+    @Test
+    public void percentilesAreTheBoundsOfTheirBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(50));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000);
+        }
+
+        assertAround(50000, histogram.getPercentile(50));
+        assertAround(95000, histogram.getPercentile(95));
+        assertAround(100000, histogram.getPercentile(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.getPercentile(99));
+    }
+
+    private static void assertAround(long expected, long actual) {
+        assertTrue(expected + " > " + actual, expected <= actual);
+        assertTrue(expected + " << " + actual, actual <= expected * 5 / 4);
+    }
+}
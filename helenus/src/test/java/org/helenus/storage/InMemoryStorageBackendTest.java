@@ -0,0 +1,256 @@
+package org.helenus.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import me.prettyprint.cassandra.serializers.StringSerializer;
+
+import org.apache.cassandra.thrift.CfDef;
+import org.apache.cassandra.thrift.Clock;
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.ColumnDef;
+import org.apache.cassandra.thrift.ColumnOrSuperColumn;
+import org.apache.cassandra.thrift.Deletion;
+import org.apache.cassandra.thrift.IndexClause;
+import org.apache.cassandra.thrift.IndexExpression;
+import org.apache.cassandra.thrift.IndexOperator;
+import org.apache.cassandra.thrift.IndexType;
+import org.apache.cassandra.thrift.Mutation;
+import org.apache.cassandra.thrift.SlicePredicate;
+import org.apache.cassandra.thrift.SliceRange;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the in-memory backend behaves like Cassandra with the byte
+ * ordered partitioner and the BytesType comparator
+ */
+public class InMemoryStorageBackendTest {
+
+    private static final byte[] KEY = bytes("row");
+
+    private InMemoryStorageBackend backend;
+
+    @Before
+    public void setUp() {
+        backend = new InMemoryStorageBackend("test");
+        CfDef people = new CfDef("test", "people");
+        ColumnDef city = new ColumnDef(bytes("city"), "BytesType");
+        city.setIndex_type(IndexType.KEYS);
+        people.setColumn_metadata(Collections.singletonList(city));
+        backend.createKeyspace(Collections.singletonList(people));
+    }
+
+    @Test
+    public void columnsAreOrderedAsUnsignedBytes() {
+        write("cf", KEY, column(new byte[] {(byte) 0x80}, 1), column(new byte[] {0x7f}, 1),
+                column(new byte[] {0x7f, 0}, 1), column(new byte[] {(byte) 0xff}, 1));
+
+        List<Column> columns = backend.getSlice("cf", KEY, range(null, null, false, 10));
+
+        assertEquals(Arrays.asList("7f", "7f00", "80", "ff"), hexNames(columns));
+    }
+
+    @Test
+    public void rangeSlicesIncludeTheirBoundsUpToTheCount() {
+        write("cf", KEY, column("a", 1), column("b", 1), column("c", 1), column("d", 1), column("e", 1));
+
+        assertEquals(Arrays.asList("b", "c", "d"), strings(backend.getSlice("cf", KEY, range("b", "d", false, 10))));
+        assertEquals(Arrays.asList("b", "c"), strings(backend.getSlice("cf", KEY, range("b", null, false, 2))));
+        assertEquals(Arrays.asList("a", "b"), strings(backend.getSlice("cf", KEY, range(null, "b", false, 10))));
+        assertEquals(Arrays.asList("c"), strings(backend.getSlice("cf", KEY, range("c", "c", false, 10))));
+    }
+
+    @Test
+    public void reversedSlicesStartFromTheEnd() {
+        write("cf", KEY, column("a", 1), column("b", 1), column("c", 1), column("d", 1));
+
+        assertEquals(Arrays.asList("d", "c"), strings(backend.getSlice("cf", KEY, range(null, null, true, 2))));
+        assertEquals(Arrays.asList("c", "b", "a"), strings(backend.getSlice("cf", KEY, range("c", null, true, 10))));
+        assertEquals(Arrays.asList("c", "b"), strings(backend.getSlice("cf", KEY, range("c", "b", true, 10))));
+    }
+
+    @Test
+    public void namedSlicesReturnTheExistingColumnsInOrder() {
+        write("cf", KEY, column("a", 1), column("b", 1), column("c", 1));
+
+        SlicePredicate predicate = new SlicePredicate();
+        predicate.setColumn_names(Arrays.asList(bytes("c"), bytes("x"), bytes("a")));
+
+        assertEquals(Arrays.asList("a", "c"), strings(backend.getSlice("cf", KEY, predicate)));
+        assertTrue(backend.getSlice("cf", bytes("missing"), predicate).isEmpty());
+    }
+
+    @Test
+    public void newerWritesWin() {
+        write("cf", KEY, column("a", "new", 2));
+        write("cf", KEY, column("a", "old", 1));
+
+        assertEquals("new", string(backend.getSlice("cf", KEY, range(null, null, false, 10)).get(0).getValue()));
+    }
+
+    @Test
+    public void deletionsRemoveOnlyOlderColumns() {
+        write("cf", KEY, column("a", 1), column("b", 3));
+
+        delete("cf", KEY, 2, "a", "b");
+
+        assertEquals(Arrays.asList("b"), strings(backend.getSlice("cf", KEY, range(null, null, false, 10))));
+    }
+
+    @Test
+    public void rowDeletionsRemoveOnlyOlderColumns() {
+        write("cf", KEY, column("a", 1), column("b", 3));
+
+        delete("cf", KEY, 2);
+
+        assertEquals(Arrays.asList("b"), strings(backend.getSlice("cf", KEY, range(null, null, false, 10))));
+    }
+
+    @Test
+    public void indexesFollowOverwrites() {
+        write("people", bytes("p1"), column("city", "Sofia", 1));
+        write("people", bytes("p2"), column("city", "Sofia", 1));
+        write("people", bytes("p1"), column("city", "Varna", 2));
+
+        assertEquals(Arrays.asList("p2"), findByCity("Sofia"));
+        assertEquals(Arrays.asList("p1"), findByCity("Varna"));
+
+        // an older write changes neither the row nor the index
+        write("people", bytes("p2"), column("city", "Varna", 0));
+        assertEquals(Arrays.asList("p2"), findByCity("Sofia"));
+    }
+
+    @Test
+    public void indexesFollowDeletions() {
+        write("people", bytes("p1"), column("city", "Sofia", 1), column("name", 1));
+        write("people", bytes("p2"), column("city", "Sofia", 1));
+        write("people", bytes("p3"), column("city", "Sofia", 5));
+
+        delete("people", bytes("p1"), 2, "city");
+        delete("people", bytes("p2"), 2);
+        // too old to delete the column, so it stays indexed
+        delete("people", bytes("p3"), 2, "city");
+
+        assertEquals(Arrays.asList("p3"), findByCity("Sofia"));
+        assertEquals(Arrays.asList("name"), strings(backend.getSlice("people", bytes("p1"), range(null, null, false, 10))));
+    }
+
+    @Test
+    public void indexedSlicesArePagedByKey() {
+        for (String key : Arrays.asList("p3", "p1", "p4", "p2")) {
+            write("people", bytes(key), column("city", "Sofia", 1));
+        }
+
+        IndexClause clause = cityClause("Sofia", 2);
+        assertEquals(Arrays.asList("p1", "p2"), keys(backend.getIndexedSlices("people", clause, range(null, null, false, 10))));
+        clause.setStart_key(bytes("p2"));
+        assertEquals(Arrays.asList("p2", "p3"), keys(backend.getIndexedSlices("people", clause, range(null, null, false, 10))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void indexedSlicesRequireAnIndexedEquality() {
+        IndexClause clause = new IndexClause(Collections.singletonList(
+                new IndexExpression(bytes("name"), IndexOperator.EQ, bytes("x"))), new byte[0], 10);
+        backend.getIndexedSlices("people", clause, range(null, null, false, 10));
+    }
+
+    private List<String> findByCity(String city) {
+        return keys(backend.getIndexedSlices("people", cityClause(city, 10), range(null, null, false, 10)));
+    }
+
+    private static IndexClause cityClause(String city, int count) {
+        return new IndexClause(Collections.singletonList(
+                new IndexExpression(bytes("city"), IndexOperator.EQ, bytes(city))), new byte[0], count);
+    }
+
+    private void write(String columnFamily, byte[] key, Column... columns) {
+        List<Mutation> mutations = new ArrayList<Mutation>();
+        for (Column column : columns) {
+            mutations.add(new Mutation().setColumn_or_supercolumn(new ColumnOrSuperColumn().setColumn(column)));
+        }
+        mutate(columnFamily, key, mutations);
+    }
+
+    private void delete(String columnFamily, byte[] key, long timestamp, String... names) {
+        Deletion deletion = new Deletion(new Clock(timestamp));
+        if (names.length > 0) {
+            SlicePredicate predicate = new SlicePredicate();
+            for (String name : names) {
+                predicate.addToColumn_names(bytes(name));
+            }
+            deletion.setPredicate(predicate);
+        }
+        mutate(columnFamily, key, Collections.singletonList(new Mutation().setDeletion(deletion)));
+    }
+
+    private void mutate(String columnFamily, byte[] key, List<Mutation> mutations) {
+        Map<String, List<Mutation>> cfMutations = new HashMap<String, List<Mutation>>();
+        cfMutations.put(columnFamily, mutations);
+        Map<byte[], Map<String, List<Mutation>>> rowMutations = new HashMap<byte[], Map<String, List<Mutation>>>();
+        rowMutations.put(key, cfMutations);
+        backend.batchMutate(rowMutations);
+    }
+
+    private static SlicePredicate range(String start, String finish, boolean reversed, int count) {
+        SlicePredicate predicate = new SlicePredicate();
+        predicate.setSlice_range(new SliceRange(start != null ? bytes(start) : new byte[0],
+                finish != null ? bytes(finish) : new byte[0], reversed, count));
+        return predicate;
+    }
+
+    private static Column column(String name, long timestamp) {
+        return column(bytes(name), timestamp);
+    }
+
+    private static Column column(byte[] name, long timestamp) {
+        return new Column(name, new byte[0], new Clock(timestamp));
+    }
+
+    private static Column column(String name, String value, long timestamp) {
+        return new Column(bytes(name), bytes(value), new Clock(timestamp));
+    }
+
+    private static List<String> strings(List<Column> columns) {
+        List<String> names = new ArrayList<String>();
+        for (Column column : columns) {
+            names.add(string(column.getName()));
+        }
+        return names;
+    }
+
+    private static List<String> hexNames(List<Column> columns) {
+        List<String> names = new ArrayList<String>();
+        for (Column column : columns) {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : column.getName()) {
+                hex.append(String.format("%02x", b & 0xff));
+            }
+            names.add(hex.toString());
+        }
+        return names;
+    }
+
+    private static List<String> keys(Map<byte[], List<Column>> rows) {
+        List<String> keys = new ArrayList<String>();
+        for (byte[] key : rows.keySet()) {
+            keys.add(string(key));
+        }
+        return keys;
+    }
+
+    private static byte[] bytes(String s) {
+        return StringSerializer.get().toBytes(s);
+    }
+
+    private static String string(byte[] bytes) {
+        return StringSerializer.get().fromBytes(bytes);
+    }
+}
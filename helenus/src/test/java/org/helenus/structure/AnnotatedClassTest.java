@@ -0,0 +1,90 @@
+package org.helenus.structure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class AnnotatedClassTest {
+
+    private static class Mapped {
+        private String name;
+        private String address;
+        private String street;
+        private String zip;
+    }
+
+    private static AnnotatedField.Builder field(String name) throws Exception {
+        return new AnnotatedField.Builder(Mapped.class.getDeclaredField(name));
+    }
+
+    private static AnnotatedClass build() throws Exception {
+        AnnotatedClass.Builder builder = new AnnotatedClass.Builder(Mapped.class);
+        builder.setColumnFamilyName("mapped");
+        AnnotatedField.Builder name = field("name");
+        name.setColumnName("name");
+        builder.addField(name);
+        AnnotatedField.Builder address = field("address");
+        address.setSuperColumnName("address");
+        builder.addField(address);
+        AnnotatedField.Builder street = field("street");
+        street.setColumnName("street");
+        street.setSuperColumnParentName("address");
+        builder.addField(street);
+        AnnotatedField.Builder zip = field("zip");
+        zip.setColumnName("zip");
+        zip.setSuperColumnParentName("address");
+        builder.addField(zip);
+        return builder.build();
+    }
+
+    @Test
+    public void fieldsAreOrderedAndLinkedToTheirSuperColumns() throws Exception {
+        AnnotatedClass meta = build();
+
+        assertEquals(4, meta.getFields().size());
+        for (int i = 0; i < meta.getFields().size(); i++) {
+            assertEquals(i, meta.getFields().get(i).getIndex());
+        }
+        assertEquals(Arrays.asList("name"), meta.getColumnNames());
+        assertEquals(Arrays.asList("address"), meta.getSuperColumnNames());
+        assertTrue(meta.hasSuperColumn());
+
+        AnnotatedField address = meta.getField("address");
+        assertEquals(Arrays.asList(address), meta.getWriteSuperColumns());
+        assertEquals(Arrays.asList(meta.getField("name")), meta.getWriteColumns());
+        assertEquals(Arrays.asList("street", "zip"), Arrays.asList(address.getChildFields().keySet().toArray()));
+        assertSame(meta.getField("zip"), address.getChildField("zip".getBytes("UTF-8")));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void fieldsAreUnmodifiable() throws Exception {
+        build().getFields().clear();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void columnNamesAreUnmodifiable() throws Exception {
+        build().getColumnNames().set(0, "other");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void childFieldsAreUnmodifiable() throws Exception {
+        build().getField("address").getChildFields().clear();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void columnsCanOnlyTargetSuperColumns() throws Exception {
+        AnnotatedClass.Builder builder = new AnnotatedClass.Builder(Mapped.class);
+        AnnotatedField.Builder name = field("name");
+        name.setColumnName("name");
+        builder.addField(name);
+        AnnotatedField.Builder zip = field("zip");
+        zip.setColumnName("zip");
+        zip.setSuperColumnParentName("name");
+        builder.addField(zip);
+        builder.build();
+    }
+}
@@ -0,0 +1,90 @@
+package org.helenus.structure;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.lang.reflect.Field;
+
+import me.prettyprint.cassandra.model.Serializer;
+
+import org.helenus.serializers.SerializerRegistry;
+import org.junit.Test;
+
+public class PrimitiveCodecTest {
+
+    private final SerializerRegistry registry = new SerializerRegistry();
+
+    private static class Primitives {
+        private long longValue;
+        private int intValue;
+        private short shortValue;
+        private char charValue;
+        private byte byteValue;
+        private boolean booleanValue;
+        private double doubleValue;
+        private float floatValue;
+
+        static Primitives filled() {
+            Primitives primitives = new Primitives();
+            primitives.longValue = -2;
+            primitives.intValue = -3;
+            primitives.shortValue = -4;
+            primitives.charValue = 'x';
+            primitives.byteValue = -5;
+            primitives.booleanValue = true;
+            primitives.doubleValue = -6.5;
+            primitives.floatValue = 7.25f;
+            return primitives;
+        }
+    }
+
+    @Test
+    public void valuesHaveTheLayoutOfTheirSerializers() throws Exception {
+        Primitives source = Primitives.filled();
+        for (Field field : Primitives.class.getDeclaredFields()) {
+            if (field.isSynthetic()) {
+                continue;
+            }
+            field.setAccessible(true);
+            Serializer<Object> serializer = serializer(field);
+            PrimitiveCodec codec = PrimitiveCodec.forField(field.getType(), serializer);
+            assertNotNull(field.getName(), codec);
+
+            byte[] bytes = codec.get(field, source);
+            assertArrayEquals(field.getName(), serializer.toBytes(field.get(source)), bytes);
+            Primitives target = new Primitives();
+            codec.set(field, target, bytes);
+            assertEquals(field.getName(), field.get(source), field.get(target));
+        }
+    }
+
+    @Test
+    public void valuesTooShortForThePrimitiveLeaveTheFieldUnchanged() throws Exception {
+        Primitives target = Primitives.filled();
+        for (Field field : Primitives.class.getDeclaredFields()) {
+            if (field.isSynthetic()) {
+                continue;
+            }
+            field.setAccessible(true);
+            PrimitiveCodec codec = PrimitiveCodec.forField(field.getType(), serializer(field));
+            Object before = field.get(target);
+            int length = codec.get(field, target).length;
+            codec.set(field, target, new byte[0]);
+            codec.set(field, target, new byte[length - 1]);
+            assertEquals(field.getName(), before, field.get(target));
+        }
+    }
+
+    @Test
+    public void customSerializersAndBoxedTypesAreNotHandled() {
+        assertNull(PrimitiveCodec.forField(Long.class, registry.getSerializer(Long.class)));
+        assertNull(PrimitiveCodec.forField(long.class, registry.getSerializer(String.class)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Serializer<Object> serializer(Field field) {
+        return (Serializer<Object>) registry.getSerializer(field.getType());
+    }
+}